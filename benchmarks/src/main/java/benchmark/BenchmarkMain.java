@@ -0,0 +1,34 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Runs JMH with the allocation profiler
+ * (-prof gc) turned on, so every result reports the bytes allocated per
+ * operation next to its time. Takes the same arguments as JMH, e.g.<br>
+ * <br>
+ * 	java -jar benchmarks/target/benchmarks.jar TurnBenchmark -p mapLength=1000
+ * @author Matthew Zane
+ *
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (!hasProfiler(args, "gc")) {
+			jmhArgs.add("-prof");
+			jmhArgs.add("gc");
+		}
+		org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+	}
+
+	private static boolean hasProfiler(String[] args, String profiler) {
+		for (int i = 0; i < args.length - 1; i++) {
+			if (args[i].equals("-prof") && args[i + 1].startsWith(profiler)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entity.Civilization;
+import world.Tile;
+
+/**
+ * Decisions and bookkeeping of a single civilization. None of these
+ * change who owns a tile, so the World stays the same between
+ * invocations.
+ * @author Matthew Zane
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CivilizationBenchmark {
+	@State(Scope.Thread)
+	public static class CivilizationState {
+		public Civilization civ;
+
+		//tiles the civilization could expand into
+		public int[] frontierTiles;
+
+		public Tile borderTile;
+
+		@Setup(Level.Trial)
+		public void chooseCivilization(WorldState state) {
+			civ = state.getLiveCivilization();
+			frontierTiles = new int[civ.getFrontier().size()];
+			civ.getFrontier().getTiles(frontierTiles);
+			//a tile next to the frontier is on the border
+			int[] neighbors = new int[4];
+			int numNeighbors = state.world.getTileGrid().getNeighbors(frontierTiles[0], neighbors);
+			for (int i = 0; i < numNeighbors && borderTile == null; i++) {
+				if (civ.ownsTile(neighbors[i])) {
+					borderTile = state.world.getTile(neighbors[i]);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int takeTurn(CivilizationState civState) {
+		return civState.civ.takeTurn();
+	}
+
+	/**
+	 * Scores every tile of the frontier
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int calculateTileValue(CivilizationState civState) {
+		int total = 0;
+		for (int tile : civState.frontierTiles) {
+			total += civState.civ.calculateTileValue(tile);
+		}
+		return total;
+	}
+
+	@Benchmark
+	public void updateBorders(CivilizationState civState) {
+		civState.civ.updateBorders(civState.borderTile);
+	}
+}
@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.awt.Dimension;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import world.Biome;
+import world.BiomeGenerator;
+import world.TileGrid;
+import world.World;
+
+/**
+ * Creation of a World and its parts. Each invocation builds a new map,
+ * so these are timed one shot at a time.
+ * @author Matthew Zane
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerationBenchmark {
+	@Param({"200", "1000"})
+	public int mapLength;
+
+	@Param({"5", "20"})
+	public int numCivs;
+
+	//world whose biomes are grown again by expandBiomes
+	private World world;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void createSharedWorld() {
+		world = new World(new Dimension(mapLength, mapLength), numCivs, WorldState.SEED);
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdownPool() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Uncovers every tile except the starting tiles of the biomes
+	 */
+	@Setup(Level.Invocation)
+	public void uncoverTiles() {
+		TileGrid grid = world.getTileGrid();
+		for (int i = 0; i < grid.getSize(); i++) {
+			grid.setType(i, null);
+		}
+		for (Biome biome : world.getBiomes()) {
+			grid.setType(biome.getStartingTile(), biome.getType());
+		}
+	}
+
+	/**
+	 * Grid, biomes and civilizations
+	 */
+	@Benchmark
+	public World createWorld() {
+		return new World(new Dimension(mapLength, mapLength), numCivs, WorldState.SEED);
+	}
+
+	@Benchmark
+	public TileGrid instantiateGrid() {
+		return new TileGrid(mapLength, mapLength, 0);
+	}
+
+	@Benchmark
+	public void expandBiomes() {
+		new BiomeGenerator(world.getTileGrid(), world.getBiomes(), world.getRandomGenerator(),
+				pool).expandBiomes();
+	}
+}
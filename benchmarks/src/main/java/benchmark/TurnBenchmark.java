@@ -0,0 +1,99 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entity.Civilization;
+import helper.ReseedableRandom;
+
+/**
+ * A whole turn of the World and the resolution of the moves made in it.
+ * The World keeps running between invocations, so these measure a
+ * simulation in progress rather than a single fixed state.
+ * @author Matthew Zane
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TurnBenchmark {
+	/**
+	 * Moves of every live civilization for the current turn, picked
+	 * into the move buffers of the World before each resolveMoves 
+	 * invocation
+	 */
+	@State(Scope.Thread)
+	public static class MoveState {
+		@Setup(Level.Invocation)
+		public void gatherMoves(WorldState state) {
+			state.world.takeTurns();
+		}
+	}
+
+	/**
+	 * A tile attacked by every other civilization at once
+	 */
+	@State(Scope.Thread)
+	public static class AttackState {
+		public int target;
+		public int[] attackerIds;
+		public int numAttackers;
+		public int[] strengths;
+		public ReseedableRandom random = new ReseedableRandom(WorldState.SEED);
+
+		@Setup(Level.Trial)
+		public void chooseTarget(WorldState state) {
+			Civilization defender = state.getLiveCivilization();
+			target = defender.getCapital().getIndex();
+			attackerIds = new int[state.world.getCivilizations().size()];
+			for (Civilization civ : state.world.getCivilizations()) {
+				if (civ != defender) {
+					attackerIds[numAttackers++] = civ.getId();
+				}
+			}
+			strengths = new int[numAttackers + 1];
+		}
+	}
+
+	@Benchmark
+	public void runSingleTurn(WorldState state) {
+		state.world.runTurns(1);
+	}
+
+	/**
+	 * Picks the moves of every civilization without resolving them
+	 */
+	@Benchmark
+	public int takeTurns(WorldState state) {
+		state.world.takeTurns();
+		return state.world.getNumMoves();
+	}
+
+	@Benchmark
+	public void resolveMoves(WorldState state, MoveState moveState) {
+		state.world.resolveMoves();
+	}
+
+	/**
+	 * resolveAttack runs resolveCombat between the attackers and the
+	 * owner of the target
+	 */
+	@Benchmark
+	public int resolveCombat(WorldState state, AttackState attackState) {
+		return state.world.resolveAttack(attackState.target, attackState.attackerIds,
+				attackState.numAttackers, attackState.strengths, attackState.random);
+	}
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.awt.Dimension;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import entity.Civilization;
+import world.World;
+
+/**
+ * World shared by the benchmarks of a trial, created from a fixed seed
+ * and run for a number of turns so civilizations have borders and
+ * neighbors before anything is measured.
+ * @author Matthew Zane
+ *
+ */
+@State(Scope.Benchmark)
+public class WorldState {
+	public static final long SEED = 1;
+
+	/**
+	 * Turns run before measuring
+	 */
+	public static final int SETUP_TURNS = 200;
+
+	@Param({"200", "1000"})
+	public int mapLength;
+
+	@Param({"5", "20"})
+	public int numCivs;
+
+	public World world;
+
+	@Setup(Level.Trial)
+	public void createWorld() {
+		world = new World(new Dimension(mapLength, mapLength), numCivs, SEED);
+		world.runTurns(SETUP_TURNS);
+	}
+
+	/**
+	 * @return a civilization that still owns territory
+	 */
+	public Civilization getLiveCivilization() {
+		for (Civilization civ : world.getCivilizations()) {
+			if (civ.getTerritorySize() > 0) {
+				return civ;
+			}
+		}
+		throw new IllegalStateException("Every civilization has been defeated");
+	}
+}
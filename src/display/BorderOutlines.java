@@ -0,0 +1,260 @@
+package display;
+
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+import world.ChunkMap;
+
+/**
+ * Border lines of every civilization as paths in tile coordinates, so
+ * a frame draws them with a single transform instead of converting
+ * every edge to the screen. The World is split into square chunks, and
+ * every chunk keeps one path per civilization bordering in it, made of
+ * runs: lines along a row or column of tile edges that all separate the
+ * civilization from another owner. A changed tile only marks the chunks
+ * its edges belong to, whose paths are rebuilt the next time they are
+ * drawn, so drawing scales with the number of runs and updating with
+ * the number of changed chunks.<br>
+ * <br>
+ * The edge above a tile and the edge to its left belong to the chunk of
+ * the tile. Edges on the outside of the World are never borders.
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class BorderOutlines {
+	public static final int CHUNK_SIZE = ChunkMap.CHUNK_SIZE;
+
+	private int width;
+	private int height;
+	private int chunksWide;
+
+	//owner of every tile, shared with the WorldPanel
+	private int[] owners;
+
+	//[chunk] -> owner ids and paths of the civilizations bordering in it
+	private int[][] chunkOwners;
+	private Path2D.Float[][] chunkOutlines;
+	private int[] numChunkOutlines;
+	private boolean[] dirtyChunks;
+
+	//owner id -> position in the chunk being rebuilt, -1 if not in it
+	private int[] outlineOfOwner = new int[16];
+
+	//start of the run being built for the owner on either side of a
+	//line of edges, and that owner, or -1 if there is none
+	private int firstOwner;
+	private int firstStart;
+	private int secondOwner;
+	private int secondStart;
+
+	public int getNumChunks() { return chunkOwners.length; }
+
+	/**
+	 * @param chunk
+	 * @return number of civilizations with a path in the chunk
+	 */
+	public int getNumOutlines(int chunk) { return numChunkOutlines[chunk]; }
+	public int getOwner(int chunk, int i) { return chunkOwners[chunk][i]; }
+	public Path2D.Float getOutline(int chunk, int i) { return chunkOutlines[chunk][i]; }
+
+	/**
+	 * @param widthIn - width of the World in tiles
+	 * @param heightIn - height of the World in tiles
+	 * @param ownersIn - owner of every tile, read when a chunk is rebuilt
+	 */
+	public BorderOutlines(int widthIn, int heightIn, int[] ownersIn) {
+		width = widthIn;
+		height = heightIn;
+		owners = ownersIn;
+		chunksWide = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int numChunks = chunksWide * ((height + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		chunkOwners = new int[numChunks][];
+		chunkOutlines = new Path2D.Float[numChunks][];
+		numChunkOutlines = new int[numChunks];
+		dirtyChunks = new boolean[numChunks];
+		Arrays.fill(outlineOfOwner, -1);
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			chunkOwners[chunk] = new int[4];
+			chunkOutlines[chunk] = new Path2D.Float[4];
+		}
+		markAll();
+	}
+
+	/**
+	 * Marks the chunks of the edges of a tile whose owner changed
+	 * @param index
+	 */
+	public void markTile(int index) {
+		int x = index % width;
+		int y = index / width;
+		dirtyChunks[chunkAt(x, y)] = true;
+		//the edge below and the edge to the right belong to the next tiles
+		if (y + 1 < height) {
+			dirtyChunks[chunkAt(x, y + 1)] = true;
+		}
+		if (x + 1 < width) {
+			dirtyChunks[chunkAt(x + 1, y)] = true;
+		}
+	}
+
+	/**
+	 * Marks every chunk, after the owner of every tile was replaced
+	 */
+	public void markAll() {
+		Arrays.fill(dirtyChunks, true);
+	}
+
+	/**
+	 * Range of chunks with at least one tile in a range of tiles
+	 * @param tiles - rectangle in tile coordinates
+	 * @return rectangle in chunk coordinates
+	 */
+	public Rectangle getChunks(Rectangle tiles) {
+		int x1 = tiles.x / CHUNK_SIZE;
+		int y1 = tiles.y / CHUNK_SIZE;
+		int x2 = (tiles.x + tiles.width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int y2 = (tiles.y + tiles.height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+	}
+
+	public int chunkIndex(int chunkX, int chunkY) {
+		return chunkY * chunksWide + chunkX;
+	}
+
+	/**
+	 * Rebuilds the paths of a chunk if any of its edges changed
+	 * @param chunk
+	 */
+	public void update(int chunk) {
+		if (!dirtyChunks[chunk]) {
+			return;
+		}
+		dirtyChunks[chunk] = false;
+
+		numChunkOutlines[chunk] = 0;
+		int x1 = (chunk % chunksWide) * CHUNK_SIZE;
+		int y1 = (chunk / chunksWide) * CHUNK_SIZE;
+		int x2 = Math.min(x1 + CHUNK_SIZE, width);
+		int y2 = Math.min(y1 + CHUNK_SIZE, height);
+
+		//edges above each row of tiles
+		for (int y = Math.max(y1, 1); y < y2; y++) {
+			startLine();
+			for (int x = x1; x < x2; x++) {
+				addEdge(chunk, owners[(y - 1) * width + x], owners[y * width + x], x,
+						y, true);
+			}
+			endLine(chunk, x2, y, true);
+		}
+		//edges left of each column of tiles
+		for (int x = Math.max(x1, 1); x < x2; x++) {
+			startLine();
+			for (int y = y1; y < y2; y++) {
+				addEdge(chunk, owners[y * width + x - 1], owners[y * width + x], y,
+						x, false);
+			}
+			endLine(chunk, y2, x, false);
+		}
+
+		for (int i = 0; i < numChunkOutlines[chunk]; i++) {
+			outlineOfOwner[chunkOwners[chunk][i]] = -1;
+		}
+	}
+
+	private int chunkAt(int x, int y) {
+		return (y / CHUNK_SIZE) * chunksWide + x / CHUNK_SIZE;
+	}
+
+	private void startLine() {
+		firstOwner = -1;
+		secondOwner = -1;
+	}
+
+	/**
+	 * Extends the runs of the owners on both sides of an edge, or ends
+	 * them if the edge is no border
+	 * @param chunk
+	 * @param first - owner above or left of the edge
+	 * @param second - owner below or right of the edge
+	 * @param position - position of the edge along the line
+	 * @param line - row or column of the line
+	 * @param horizontal
+	 */
+	private void addEdge(int chunk, int first, int second, int position, int line,
+			boolean horizontal) {
+		if (first == second) {
+			first = -1;
+			second = -1;
+		}
+		if (first != firstOwner) {
+			if (firstOwner >= 0) {
+				addRun(chunk, firstOwner, firstStart, position, line, horizontal);
+			}
+			firstOwner = first;
+			firstStart = position;
+		}
+		if (second != secondOwner) {
+			if (secondOwner >= 0) {
+				addRun(chunk, secondOwner, secondStart, position, line, horizontal);
+			}
+			secondOwner = second;
+			secondStart = position;
+		}
+	}
+
+	private void endLine(int chunk, int end, int line, boolean horizontal) {
+		if (firstOwner >= 0) {
+			addRun(chunk, firstOwner, firstStart, end, line, horizontal);
+		}
+		if (secondOwner >= 0) {
+			addRun(chunk, secondOwner, secondStart, end, line, horizontal);
+		}
+	}
+
+	private void addRun(int chunk, int owner, int start, int end, int line,
+			boolean horizontal) {
+		Path2D.Float outline = outlineOf(chunk, owner);
+		if (horizontal) {
+			outline.moveTo(start, line);
+			outline.lineTo(end, line);
+		}
+		else {
+			outline.moveTo(line, start);
+			outline.lineTo(line, end);
+		}
+	}
+
+	/**
+	 * Path of an owner in the chunk being rebuilt, emptied the first time
+	 * it is asked for. Paths are reused between rebuilds.
+	 * @param chunk
+	 * @param owner
+	 * @return
+	 */
+	private Path2D.Float outlineOf(int chunk, int owner) {
+		if (owner >= outlineOfOwner.length) {
+			int oldLength = outlineOfOwner.length;
+			outlineOfOwner = Arrays.copyOf(outlineOfOwner, Math.max(owner + 1, oldLength * 2));
+			Arrays.fill(outlineOfOwner, oldLength, outlineOfOwner.length, -1);
+		}
+		int i = outlineOfOwner[owner];
+		if (i >= 0) {
+			return chunkOutlines[chunk][i];
+		}
+
+		i = numChunkOutlines[chunk]++;
+		if (i == chunkOwners[chunk].length) {
+			chunkOwners[chunk] = Arrays.copyOf(chunkOwners[chunk], i * 2);
+			chunkOutlines[chunk] = Arrays.copyOf(chunkOutlines[chunk], i * 2);
+		}
+		if (chunkOutlines[chunk][i] == null) {
+			chunkOutlines[chunk][i] = new Path2D.Float();
+		}
+		chunkOutlines[chunk][i].reset();
+		chunkOwners[chunk][i] = owner;
+		outlineOfOwner[owner] = i;
+		return chunkOutlines[chunk][i];
+	}
+}
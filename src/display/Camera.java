@@ -1,12 +1,13 @@
 package display;
 
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.Timer;
 
-import world.World;
+import world.SnapshotSource;
 
 /**
  * Represents the position of the world that the user can see
@@ -19,7 +20,7 @@ import world.World;
  */
 public class Camera {
 
-	private World world;
+	private SnapshotSource source;
 	private WorldPanel panel;
 
 	//Variable used to fit view into panel
@@ -33,8 +34,8 @@ public class Camera {
 	//Activates the CameraInitialCenterListener every 0.1 sec
 	private Timer centerTimer = new Timer(100, new CameraInitialCenterListener());;
 
-	public World getWorld() { return world; }
-	public void setWorld(World worldIn) { world = worldIn; }
+	public SnapshotSource getSource() { return source; }
+	public void setSource(SnapshotSource sourceIn) { source = sourceIn; }
 	public WorldPanel getPanel() { return panel; }
 	public void setPanel(WorldPanel panelIn) { panel = panelIn; }
 	
@@ -50,11 +51,11 @@ public class Camera {
 	/**
 	 * Creates a camera and uses the World and WorldPanel to center
 	 * the camera
-	 * @param worldIn
+	 * @param sourceIn - World or replay the panel displays
 	 * @param panelIn
 	 */
-	public Camera(World worldIn, WorldPanel panelIn) {
-		world = worldIn;
+	public Camera(SnapshotSource sourceIn, WorldPanel panelIn) {
+		source = sourceIn;
 		panel = panelIn;
 		//centerTimer.start();
 	}
@@ -66,7 +67,8 @@ public class Camera {
 		//actualPanelWidth = panel.getWidth();
 		//actualPanelHeight = panel.getHeight();
 
-		cameraPosition = world.getBounds();
+		cameraPosition = new Rectangle(0, 0, WorldPanel.getGridScale() * source.getWidth(), 
+				WorldPanel.getGridScale() * source.getHeight());
 
 		updateCamera();
 	}
@@ -117,6 +119,41 @@ public class Camera {
 		cameraPosition.translate((int)(4.5 / scaleX), 0);
 	}
 	
+	/**
+	 * Range of tiles that are at least partly inside the camera
+	 * @return rectangle in tile coordinates, clipped to the World
+	 */
+	public Rectangle getVisibleTiles() {
+		int gridScale = WorldPanel.getGridScale();
+		int x1 = (int) Math.floor(xalign / gridScale);
+		int y1 = (int) Math.floor(yalign / gridScale);
+		int x2 = (int) Math.ceil((xalign + panel.getWidth() / scaleX) / gridScale);
+		int y2 = (int) Math.ceil((yalign + panel.getHeight() / scaleY) / gridScale);
+		Rectangle visible = new Rectangle(x1, y1, x2 - x1, y2 - y1);
+		return visible.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+	}
+
+	/**
+	 * Transform from tile coordinates to the panel, so shapes in tile
+	 * coordinates can be drawn without converting every point
+	 * @return
+	 */
+	public AffineTransform getTileTransform() {
+		int gridScale = WorldPanel.getGridScale();
+		AffineTransform transform = AffineTransform.getScaleInstance(scaleX, scaleY);
+		transform.translate(-xalign, -yalign);
+		transform.scale(gridScale, gridScale);
+		return transform;
+	}
+
+	/**
+	 * Width of a tile on screen in pixels
+	 * @return
+	 */
+	public double getTileWidth() {
+		return scaleX * WorldPanel.getGridScale();
+	}
+
 	/**
 	 * Uses cameraPosition to update scaling and translating variables.
 	 * Note: Not sure why there is a width vs. height comparison.
@@ -4,28 +4,84 @@ import java.awt.Graphics;
 import javax.swing.JLabel;
 
 import helper.Utility;
-import world.World;
+import world.SimulationClock;
+import world.SnapshotSource;
+import world.WorldSnapshot;
 
+/**
+ * Shows the time in the World, the turns run per second and, for a
+ * running World, the mode of its SimulationClock
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
 public class ClockLabel extends JLabel {
 	private static final long serialVersionUID = 1L;
+
+	//nanoseconds between measurements of the turn rate
+	private static final long RATE_INTERVAL = 500000000L;
 	
-	private World world;
+	private SnapshotSource source;
+
+	//null when the source is not a running World
+	private SimulationClock clock;
+
+	//turn and time of the last measurement of the turn rate
+	private long lastTurn = -1;
+	private long lastMeasurement;
+	private double turnRate = 0;
 
-	public ClockLabel(World worldIn) {
+	public ClockLabel(SnapshotSource sourceIn) {
+		this(sourceIn, null);
+	}
+
+	/**
+	 * @param sourceIn
+	 * @param clockIn - clock of the World, null if there is none
+	 */
+	public ClockLabel(SnapshotSource sourceIn, SimulationClock clockIn) {
 		super();
-		world = worldIn;
+		source = sourceIn;
+		clock = clockIn;
 		setHorizontalAlignment(JLabel.CENTER);
 	}
 
 	public void paint(Graphics g) {
 		super.paint(g);
-		double time = world.getTime();
+		WorldSnapshot snapshot = source.getLatestSnapshot();
+		measureTurnRate(snapshot.getTurn());
+
+		double time = snapshot.getTime();
+		String text;
 		if (time > 365.25) {
 			time /= 365.2422;
-			setText("Time:   " + Utility.getEngineeringNotation(time, 3) + "Y");
+			text = "Time:   " + Utility.getEngineeringNotation(time, 3) + "Y";
 		}
 		else {
-			setText("Time:   " + Utility.getEngineeringNotation(time, 3) + "d");
+			text = "Time:   " + Utility.getEngineeringNotation(time, 3) + "d";
+		}
+		text += String.format("   %.0f turns/s", turnRate);
+		if (clock != null) {
+			text += "   " + clock.getMode().toString().toLowerCase();
+		}
+		setText(text);
+	}
+
+	/**
+	 * Updates the turn rate from the turns published since the last
+	 * measurement
+	 * @param turn - turn of the latest snapshot
+	 */
+	private void measureTurnRate(long turn) {
+		long now = System.nanoTime();
+		if (lastTurn < 0 || turn < lastTurn) {
+			lastTurn = turn;
+			lastMeasurement = now;
+		}
+		else if (now - lastMeasurement >= RATE_INTERVAL) {
+			turnRate = (turn - lastTurn) * 1e9 / (now - lastMeasurement);
+			lastTurn = turn;
+			lastMeasurement = now;
 		}
 	}
 }
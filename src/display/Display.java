@@ -1,12 +1,19 @@
 package display;
 
 import java.awt.Color;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 import net.miginfocom.swing.MigLayout;
+import profiling.TurnProfiler;
+import sharding.ShardedWorld;
+import world.ReplayPlayer;
+import world.SimulationClock;
+import world.SnapshotSource;
 import world.World;
 
 /**
@@ -20,20 +27,29 @@ import world.World;
  * @since 2017-09-15
  */
 public class Display extends JFrame {
+
+	/**
+	 * Percentage of the width of the Display taken by the leaderboard
+	 */
+	public static final int LEADERBOARD_PCT = 20;
 	
-	private World world;
+	private SnapshotSource source;
 
-	public World getWorld() { return world; }
+	public SnapshotSource getSource() { return source; }
 
-	public void setWorld(World worldIn) { world = worldIn; }
+	public void setSource(SnapshotSource sourceIn) { source = sourceIn; }
 
 	public Display() {
 		super();
 	}
 
-	public Display(World worldIn) {
+	/**
+	 * @param sourceIn - World to display, or a ReplayPlayer to play
+	 * back a logged one
+	 */
+	public Display(SnapshotSource sourceIn) {
 		super();
-		world = worldIn;
+		source = sourceIn;
 	}
 
 	public void init() throws Exception {
@@ -41,19 +57,38 @@ public class Display extends JFrame {
 		setLayout(new MigLayout());
 
 		//Panel from which the world will be displayed
-		if (world == null) {
+		if (source == null) {
 			throw new Exception("World was not instantiated");
 		}
 		
-		WorldPanel panel = new WorldPanel(world);
-		ClockLabel clockLabel = new ClockLabel(world);
+		//pauses and speeds up a running World, see SimulationClock
+		SimulationClock clock = null;
+		if (source instanceof World) {
+			clock = ((World) source).getClock();
+		}
+		else if (source instanceof ShardedWorld) {
+			clock = ((ShardedWorld) source).getClock();
+		}
+
+		WorldPanel panel = new WorldPanel(source);
+		panel.setClock(clock);
+		ClockLabel clockLabel = new ClockLabel(source, clock);
 		
 		panel.createCamera();
 		clockLabel.setBorder(BorderFactory.createLineBorder(Color.black));
 		
+		//statistics are only kept by a World running in this process
+		LeaderboardPanel leaderboard = null;
+		if (source instanceof World) {
+			leaderboard = new LeaderboardPanel(((World) source).getStatistics());
+		}
+		int sideWidth = (100 - WorldPanel.PCT_OF_PARENT) / 2;
+		int eastWidth = leaderboard == null ? sideWidth : LEADERBOARD_PCT;
+
 		//WorldPanel centered in JFrame with a height and width
-		//equal to a certain percent of the Display
-		add(panel, "w " + WorldPanel.PCT_OF_PARENT + "%, h " + 
+		//equal to a certain percent of the Display, narrower when
+		//the leaderboard takes part of its width
+		add(panel, "w " + (WorldPanel.PCT_OF_PARENT - eastWidth + sideWidth) + "%, h " + 
 				WorldPanel.PCT_OF_PARENT + "%, align center");
 
 		//Border Panels placed around World Panel
@@ -66,11 +101,38 @@ public class Display extends JFrame {
 		
 		add(northPanel, "north, h " + (100 - WorldPanel.PCT_OF_PARENT) / 2 + "%");
 		add(southPanel, "south, h " + (100 - WorldPanel.PCT_OF_PARENT) / 2 + "%");
-		add(westPanel, "west, w " + (100 - WorldPanel.PCT_OF_PARENT) / 2 + "%");
-		add(eastPanel, "east, w " + (100 - WorldPanel.PCT_OF_PARENT) / 2 + "%");
+		add(westPanel, "west, w " + sideWidth + "%");
+		add(eastPanel, "east, w " + eastWidth + "%");
+
+		if (leaderboard != null) {
+			eastPanel.setLayout(new MigLayout());
+			eastPanel.add(leaderboard, "h " + 100 + "%, w " + 100 + "%");
+		}
 		
 		northPanel.setLayout(new MigLayout());
-		northPanel.add(clockLabel, "h " + 100 + "%, w " + 25 + "%");
+		northPanel.add(clockLabel, "h " + 100 + "%, w " + 40 + "%");
+
+		//hidden until toggled with H
+		TurnProfiler turnProfiler = null;
+		if (source instanceof World) {
+			turnProfiler = ((World) source).getProfiler();
+		}
+		else if (source instanceof ShardedWorld) {
+			turnProfiler = ((ShardedWorld) source).getProfiler();
+		}
+		PerformanceHud hud = new PerformanceHud(source, turnProfiler, panel.getProfiler());
+		hud.setVisible(false);
+		southPanel.setLayout(new MigLayout());
+		southPanel.add(hud, "h " + 100 + "%, w " + 100 + "%");
+		panel.addKeyListener(new HudKeyHandler(hud));
+
+		if (source instanceof ReplayPlayer) {
+			ReplayPlayer player = (ReplayPlayer) source;
+			ReplayLabel replayLabel = new ReplayLabel(player);
+			replayLabel.setBorder(BorderFactory.createLineBorder(Color.black));
+			northPanel.add(replayLabel, "h " + 100 + "%, w " + 40 + "%");
+			panel.addKeyListener(new ReplayKeyHandler(player));
+		}
 		
 		setVisible(true);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -79,6 +141,31 @@ public class Display extends JFrame {
 		panel.requestFocus();
 	}
 	
+	/**
+	 * Shows or hides the PerformanceHud when H is pressed
+	 */
+	private class HudKeyHandler implements KeyListener {
+		private PerformanceHud hud;
+
+		public HudKeyHandler(PerformanceHud hudIn) {
+			hud = hudIn;
+		}
+
+		public void keyPressed(KeyEvent e) {
+			if (e.getKeyCode() == KeyEvent.VK_H) {
+				hud.setVisible(!hud.isVisible());
+			}
+		}
+
+		public void keyReleased(KeyEvent e) {
+
+		}
+
+		public void keyTyped(KeyEvent e) {
+
+		}
+	}
+	
 	/**
 	 * 
 	 */
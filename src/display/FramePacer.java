@@ -0,0 +1,173 @@
+package display;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Repaints a component at a target frame rate. A frame is only
+ * scheduled on the event dispatch thread if the previous one has
+ * finished painting, otherwise it is skipped, so a slow paint lowers the
+ * frame rate instead of queueing up work. Between frames the pacer
+ * thread sleeps, leaving the CPU to the simulation.<br>
+ * <br>
+ * How to use:<br>
+ * 	FramePacer pacer = new FramePacer(display.getRootPane(), 60);<br>
+ * 	pacer.start();
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class FramePacer {
+	//number of recent paint times percentiles are taken from
+	private static final int PAINT_SAMPLES = 256;
+
+	private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	private JComponent component;
+	private int targetFps;
+
+	private ScheduledExecutorService scheduler;
+	private AtomicBoolean framePending = new AtomicBoolean(false);
+	private FrameTask frameTask = new FrameTask();
+
+	//only touched on the event dispatch thread
+	private long[] paintTimes = new long[PAINT_SAMPLES];
+	private int numPaintTimes = 0;
+	private int framesSinceReport = 0;
+	private long lastReport = System.nanoTime();
+
+	//counted on the scheduler thread
+	private volatile long skippedFrames = 0;
+
+	//results of the last report
+	private volatile double fps;
+	private volatile double[] paintTimePercentiles = new double[3];
+
+	//off unless asked for with --fps-report
+	private boolean printReports = false;
+
+	public int getTargetFps() { return targetFps; }
+	public long getSkippedFrames() { return skippedFrames; }
+
+	/**
+	 * @return frames painted per second over the last report interval
+	 */
+	public double getFps() { return fps; }
+
+	/**
+	 * @return 50th, 95th and 99th percentile of recent paint times,
+	 * in milliseconds
+	 */
+	public double[] getPaintTimePercentiles() { return paintTimePercentiles.clone(); }
+
+	public void setPrintReports(boolean printReportsIn) { printReports = printReportsIn; }
+
+	/**
+	 * @param componentIn - component repainted every frame, usually the
+	 * root pane of the Display
+	 * @param targetFpsIn - frames per second
+	 */
+	public FramePacer(JComponent componentIn, int targetFpsIn) {
+		if (targetFpsIn < 1) {
+			throw new IllegalArgumentException("Target FPS must be at least 1");
+		}
+		component = componentIn;
+		targetFps = targetFpsIn;
+	}
+
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(new PacerThreadFactory());
+		scheduler.scheduleAtFixedRate(new TickTask(), 0, 1000000000L / targetFps,
+				TimeUnit.NANOSECONDS);
+	}
+
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Queues a frame unless the previous one is still being painted
+	 */
+	private class TickTask implements Runnable {
+		public void run() {
+			if (framePending.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(frameTask);
+			}
+			else {
+				skippedFrames++;
+			}
+		}
+	}
+
+	/**
+	 * Paints a frame on the event dispatch thread
+	 */
+	private class FrameTask implements Runnable {
+		public void run() {
+			try {
+				long start = System.nanoTime();
+				component.paintImmediately(0, 0, component.getWidth(), component.getHeight());
+				long end = System.nanoTime();
+
+				paintTimes[numPaintTimes++ % PAINT_SAMPLES] = end - start;
+				framesSinceReport++;
+				if (end - lastReport >= REPORT_INTERVAL) {
+					report(end);
+				}
+			} finally {
+				framePending.set(false);
+			}
+		}
+	}
+
+	private void report(long now) {
+		fps = framesSinceReport * 1e9 / (now - lastReport);
+		framesSinceReport = 0;
+		lastReport = now;
+
+		long[] sorted = Arrays.copyOf(paintTimes, Math.min(numPaintTimes, PAINT_SAMPLES));
+		Arrays.sort(sorted);
+		paintTimePercentiles = new double[] {
+				percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99)
+		};
+
+		if (printReports) {
+			System.out.printf("FPS: %.1f / %d, paint p50 %.2f ms, p95 %.2f ms, " +
+					"p99 %.2f ms, skipped %d%n", fps, targetFps, paintTimePercentiles[0],
+					paintTimePercentiles[1], paintTimePercentiles[2], skippedFrames);
+		}
+	}
+
+	/**
+	 * @param sorted - nanoseconds in ascending order
+	 * @param fraction
+	 * @return milliseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(i, 0)] / 1e6;
+	}
+
+	/**
+	 * Names the pacer thread and keeps it from holding the JVM open
+	 */
+	private static class PacerThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "FramePacer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package display;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+
+import statistics.CivilizationStatistics;
+import statistics.StatisticsSnapshot;
+
+/**
+ * Shows the largest civilizations, with their territory size, share
+ * of plains, border length and wars, from the latest StatisticsSnapshot.
+ * The text is only rebuilt when a new snapshot was published, at most
+ * every UPDATE_INTERVAL.
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class LeaderboardPanel extends JLabel {
+	private static final long serialVersionUID = 1L;
+
+	private static final long UPDATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private CivilizationStatistics statistics;
+
+	private long lastUpdate;
+	private StatisticsSnapshot lastSnapshot;
+
+	public LeaderboardPanel(CivilizationStatistics statisticsIn) {
+		super();
+		statistics = statisticsIn;
+		setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+		setVerticalAlignment(JLabel.TOP);
+	}
+
+	public void paint(Graphics g) {
+		long now = System.nanoTime();
+		StatisticsSnapshot snapshot = statistics.getLatestSnapshot();
+		if (snapshot != null && snapshot != lastSnapshot && 
+				(lastSnapshot == null || now - lastUpdate >= UPDATE_INTERVAL)) {
+			update(snapshot);
+			lastSnapshot = snapshot;
+			lastUpdate = now;
+		}
+		super.paint(g);
+	}
+
+	private void update(StatisticsSnapshot snapshot) {
+		StringBuilder text = new StringBuilder("<html>");
+		text.append("Civilizations: ").append(snapshot.getNumCivilizations());
+		text.append("<table cellspacing=0 cellpadding=1>");
+		text.append("<tr><th>#</th><th>Civ</th><th>Tiles</th><th>Plains</th>" +
+				"<th>Border</th><th>Wars</th></tr>");
+		for (int rank = 0; rank < snapshot.getNumRanked(); rank++) {
+			int territory = snapshot.getTerritorySize(rank);
+			int plains = territory == 0 ? 0 :
+				(int) Math.round(100.0 * snapshot.getPlains(rank) / territory);
+			text.append(String.format("<tr><td>%d</td><td><font color=#%06x>&#9632;</font> %s</td>" +
+					"<td align=right>%d</td><td align=right>%d%%</td><td align=right>%d</td>" +
+					"<td align=right>%d</td></tr>", rank + 1, toRgb(snapshot.getColor(rank)),
+					snapshot.getName(rank), territory, plains, snapshot.getBorderLength(rank),
+					snapshot.getWars(rank)));
+		}
+		setText(text.append("</table></html>").toString());
+	}
+
+	/**
+	 * Civilization colors are mostly transparent, so the swatch is
+	 * drawn opaque
+	 * @param color
+	 * @return
+	 */
+	private static int toRgb(Color color) {
+		return color.getRGB() & 0xFFFFFF;
+	}
+}
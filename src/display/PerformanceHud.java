@@ -0,0 +1,100 @@
+package display;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+
+import profiling.PhaseProfiler;
+import profiling.TurnProfiler;
+import world.SnapshotSource;
+
+/**
+ * Shows turns per second, frames per second, the counters of the last
+ * turn and the 50th and 99th percentile time of every turn phase and
+ * paint layer. The text is only rebuilt every UPDATE_INTERVAL, and not
+ * at all while the HUD is hidden.
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class PerformanceHud extends JLabel {
+	private static final long serialVersionUID = 1L;
+
+	private static final long UPDATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private SnapshotSource source;
+	private TurnProfiler turnProfiler;
+	private PhaseProfiler paintProfiler;
+
+	private long lastUpdate = System.nanoTime();
+	private long lastTurn = 0;
+	private int framesSinceUpdate = 0;
+
+	/**
+	 * @param sourceIn
+	 * @param turnProfilerIn - profiler of the World, null when replaying
+	 * @param paintProfilerIn - profiler of the WorldPanel
+	 */
+	public PerformanceHud(SnapshotSource sourceIn, TurnProfiler turnProfilerIn, 
+			PhaseProfiler paintProfilerIn) {
+		super();
+		source = sourceIn;
+		turnProfiler = turnProfilerIn;
+		paintProfiler = paintProfilerIn;
+		setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+		setVerticalAlignment(JLabel.TOP);
+	}
+
+	/**
+	 * Starts measuring from scratch when shown, rather than averaging
+	 * over the time it was hidden
+	 */
+	public void setVisible(boolean visible) {
+		super.setVisible(visible);
+		lastUpdate = System.nanoTime();
+		lastTurn = source.getLatestSnapshot().getTurn();
+		framesSinceUpdate = 0;
+	}
+
+	public void paint(Graphics g) {
+		framesSinceUpdate++;
+		long now = System.nanoTime();
+		if (now - lastUpdate >= UPDATE_INTERVAL) {
+			update(now);
+		}
+		super.paint(g);
+	}
+
+	private void update(long now) {
+		double seconds = (now - lastUpdate) / 1e9;
+		long turn = source.getLatestSnapshot().getTurn();
+
+		StringBuilder text = new StringBuilder("<html>");
+		text.append(String.format("Turns/sec: %.0f &nbsp; FPS: %.1f", 
+				(turn - lastTurn) / seconds, framesSinceUpdate / seconds));
+		if (turnProfiler != null) {
+			text.append(String.format(" &nbsp; Moves: %d &nbsp; Contested tiles: %d &nbsp; " + 
+					"Tiles scanned: %d &nbsp; Awake chunks: %d", turnProfiler.getMovesIssued(), 
+					turnProfiler.getContestedTiles(), turnProfiler.getTilesScanned(), 
+					turnProfiler.getAwakeChunks()));
+			appendPercentiles(text, "Turn p50/p99 ms:", turnProfiler);
+		}
+		appendPercentiles(text, "Paint p50/p99 ms:", paintProfiler);
+		setText(text.append("</html>").toString());
+
+		lastUpdate = now;
+		lastTurn = turn;
+		framesSinceUpdate = 0;
+	}
+
+	private void appendPercentiles(StringBuilder text, String title, PhaseProfiler profiler) {
+		text.append("<br>").append(title);
+		for (int i = 0; i < profiler.getNumPhases(); i++) {
+			double[] percentiles = profiler.getPercentiles(i);
+			text.append(String.format(" &nbsp; %s %.2f/%.2f", profiler.getPhaseName(i), 
+					percentiles[0], percentiles[1]));
+		}
+	}
+}
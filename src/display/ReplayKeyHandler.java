@@ -0,0 +1,77 @@
+package display;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+
+import helper.EventLogWriter;
+import world.ReplayPlayer;
+
+/**
+ * Controls a replay from the keyboard:<br>
+ * 	P			pause or resume<br>
+ * 	R			reverse<br>
+ * 	+ / -		play 10 times faster or slower<br>
+ * 	, / .		pause and step a turn back or forward<br>
+ * 	Page Up / Page Down	jump a keyframe interval back or forward<br>
+ * 	Home / End	jump to the first or last turn
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class ReplayKeyHandler implements KeyListener {
+	private static final double SPEED_FACTOR = 10;
+
+	private ReplayPlayer player;
+
+	public ReplayKeyHandler(ReplayPlayer playerIn) {
+		player = playerIn;
+	}
+
+	public void keyPressed(KeyEvent e) {
+		long turn = player.getLatestSnapshot().getTurn();
+		switch (e.getKeyCode()) {
+		case KeyEvent.VK_P:
+			player.setPaused(!player.isPaused());
+			break;
+		case KeyEvent.VK_R:
+			player.setSpeed(-player.getSpeed());
+			break;
+		case KeyEvent.VK_EQUALS:
+		case KeyEvent.VK_ADD:
+			player.setSpeed(player.getSpeed() * SPEED_FACTOR);
+			break;
+		case KeyEvent.VK_MINUS:
+		case KeyEvent.VK_SUBTRACT:
+			player.setSpeed(player.getSpeed() / SPEED_FACTOR);
+			break;
+		case KeyEvent.VK_COMMA:
+			player.setPaused(true);
+			player.seek(turn - 1);
+			break;
+		case KeyEvent.VK_PERIOD:
+			player.setPaused(true);
+			player.seek(turn + 1);
+			break;
+		case KeyEvent.VK_PAGE_UP:
+			player.seek(turn - EventLogWriter.KEYFRAME_INTERVAL);
+			break;
+		case KeyEvent.VK_PAGE_DOWN:
+			player.seek(turn + EventLogWriter.KEYFRAME_INTERVAL);
+			break;
+		case KeyEvent.VK_HOME:
+			player.seek(player.getFirstTurn());
+			break;
+		case KeyEvent.VK_END:
+			player.seek(player.getLastTurn());
+			break;
+		}
+	}
+
+	public void keyReleased(KeyEvent e) {
+
+	}
+
+	public void keyTyped(KeyEvent e) {
+
+	}
+}
@@ -0,0 +1,32 @@
+package display;
+
+import java.awt.Graphics;
+import javax.swing.JLabel;
+
+import world.ReplayPlayer;
+
+/**
+ * Shows the turn a replay is at and how fast it is playing
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class ReplayLabel extends JLabel {
+	private static final long serialVersionUID = 1L;
+
+	private ReplayPlayer player;
+
+	public ReplayLabel(ReplayPlayer playerIn) {
+		super();
+		player = playerIn;
+		setHorizontalAlignment(JLabel.CENTER);
+	}
+
+	public void paint(Graphics g) {
+		super.paint(g);
+		String speed = player.isPaused() ? "paused" : 
+			String.format("%.0f turns/s", player.getSpeed());
+		setText("Turn:   " + player.getLatestSnapshot().getTurn() + " / " + 
+				player.getLastTurn() + "   " + speed);
+	}
+}
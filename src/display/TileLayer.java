@@ -0,0 +1,164 @@
+package display;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import helper.IntIntHashMap;
+
+/**
+ * Image of the World with one pixel per tile, along with downsampled
+ * levels of detail for when tiles are smaller than a pixel on screen.
+ * Each pixel of level n covers a block of 2^n x 2^n tiles and has the
+ * color held by the majority of the tiles in the block. Levels are
+ * created the first time they are drawn and afterwards only the blocks
+ * containing changed tiles are recalculated.
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-30
+ */
+public class TileLayer {
+	private int width;
+	private int height;
+	private int imageType;
+
+	//levels[0] has one pixel per tile
+	private BufferedImage[] levels;
+	private int[][] levelPixels;
+
+	//blocks of each level that have to be recalculated
+	private boolean[][] dirtyBlocks;
+	private int[][] dirtyBlockList;
+	private int[] numDirtyBlocks;
+
+	private IntIntHashMap colorCounts = new IntIntHashMap();
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getMaxLevel() { return levels.length - 1; }
+
+	/**
+	 * @param widthIn - width in tiles
+	 * @param heightIn - height in tiles
+	 * @param imageTypeIn - BufferedImage type, e.g. TYPE_INT_ARGB
+	 */
+	public TileLayer(int widthIn, int heightIn, int imageTypeIn) {
+		width = widthIn;
+		height = heightIn;
+		imageType = imageTypeIn;
+
+		int numLevels = 1;
+		while ((1 << (numLevels - 1)) < Math.max(width, height)) {
+			numLevels++;
+		}
+		levels = new BufferedImage[numLevels];
+		levelPixels = new int[numLevels][];
+		dirtyBlocks = new boolean[numLevels][];
+		dirtyBlockList = new int[numLevels][];
+		numDirtyBlocks = new int[numLevels];
+
+		levels[0] = new BufferedImage(width, height, imageType);
+		levelPixels[0] = ((DataBufferInt) levels[0].getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Sets the color of a tile
+	 * @param index - index of the tile in the TileGrid
+	 * @param rgb
+	 */
+	public void setPixel(int index, int rgb) {
+		if (levelPixels[0][index] == rgb) {
+			return;
+		}
+		levelPixels[0][index] = rgb;
+
+		int x = index % width;
+		int y = index / width;
+		for (int level = 1; level < levels.length; level++) {
+			if (levels[level] != null) {
+				markDirty(level, (y >> level) * levelWidth(level) + (x >> level));
+			}
+		}
+	}
+
+	/**
+	 * Returns the image of a level with all changes applied
+	 * @param level
+	 * @return
+	 */
+	public BufferedImage getImage(int level) {
+		if (levels[level] == null) {
+			createLevel(level);
+		}
+		int[] dirty = dirtyBlockList[level];
+		for (int i = 0; i < numDirtyBlocks[level]; i++) {
+			dirtyBlocks[level][dirty[i]] = false;
+			updateBlock(level, dirty[i]);
+		}
+		numDirtyBlocks[level] = 0;
+		return levels[level];
+	}
+
+	public int levelWidth(int level) {
+		return (width + (1 << level) - 1) >> level;
+	}
+
+	public int levelHeight(int level) {
+		return (height + (1 << level) - 1) >> level;
+	}
+
+	private void createLevel(int level) {
+		int levelWidth = levelWidth(level);
+		int levelHeight = levelHeight(level);
+		levels[level] = new BufferedImage(levelWidth, levelHeight, imageType);
+		levelPixels[level] =
+				((DataBufferInt) levels[level].getRaster().getDataBuffer()).getData();
+		dirtyBlocks[level] = new boolean[levelWidth * levelHeight];
+		dirtyBlockList[level] = new int[64];
+		for (int block = 0; block < levelWidth * levelHeight; block++) {
+			updateBlock(level, block);
+		}
+	}
+
+	private void markDirty(int level, int block) {
+		if (dirtyBlocks[level][block]) {
+			return;
+		}
+		dirtyBlocks[level][block] = true;
+		if (numDirtyBlocks[level] == dirtyBlockList[level].length) {
+			dirtyBlockList[level] = Arrays.copyOf(dirtyBlockList[level],
+					numDirtyBlocks[level] * 2);
+		}
+		dirtyBlockList[level][numDirtyBlocks[level]++] = block;
+	}
+
+	/**
+	 * Sets a pixel of a level to the most common color of its tiles
+	 * @param level
+	 * @param block
+	 */
+	private void updateBlock(int level, int block) {
+		int levelWidth = levelWidth(level);
+		int x1 = (block % levelWidth) << level;
+		int y1 = (block / levelWidth) << level;
+		int x2 = Math.min(x1 + (1 << level), width);
+		int y2 = Math.min(y1 + (1 << level), height);
+
+		int[] pixels = levelPixels[0];
+		int majorityColor = pixels[y1 * width + x1];
+		int majorityCount = 0;
+		colorCounts.clear();
+		for (int y = y1; y < y2; y++) {
+			for (int x = x1; x < x2; x++) {
+				int color = pixels[y * width + x];
+				//map keys can't be negative
+				int count = colorCounts.addTo(color & 0x7FFFFFFF, 1);
+				if (count > majorityCount) {
+					majorityCount = count;
+					majorityColor = color;
+				}
+			}
+		}
+		levelPixels[level][block] = majorityColor;
+	}
+}
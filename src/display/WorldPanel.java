@@ -1,8 +1,10 @@
 package display;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -11,19 +13,20 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 
 import javax.swing.BorderFactory;
 import javax.swing.JPanel;
 import javax.swing.Timer;
 
-import entity.Civilization;
 import helper.Direction;
-import world.Tile;
-import world.World;
+import profiling.PaintProfiler;
+import world.SimulationClock;
+import world.SnapshotSource;
+import world.TileGrid;
+import world.WorldSnapshot;
 
 /**
  * JPanel from which graphics of the World will be drawn 
@@ -44,10 +47,38 @@ public class WorldPanel extends JPanel {
 
 	public static final int PARTICLE_RADIUS = 25;
 
-	private World world;
-	private Tile[][] grid;
+	private SnapshotSource source;
+	private TileGrid grid;
 	private Camera camera;
 
+	//null when the source is not a running World
+	private SimulationClock clock;
+
+	//layers with one pixel per tile
+	private TileLayer biomeLayer;
+	private TileLayer ownerLayer;
+
+	//last snapshot drawn and the owner of every tile as of that snapshot
+	private WorldSnapshot snapshot;
+	private int[] owners;
+	private boolean hasOwners = false;
+
+	//tiles changed by the snapshots followed in a frame, each once, so
+	//many turns in a frame are drawn as one
+	private int[] dirtyTiles = new int[1024];
+	private int numDirtyTiles = 0;
+	private long[] dirtyFlags;
+
+	private BorderOutlines borderOutlines;
+	private Color[] borderColors = new Color[16];
+
+	//thinnest line the Graphics can draw, whatever the transform
+	private static final BasicStroke BORDER_STROKE = new BasicStroke(0);
+
+	//times the layers of every frame
+	private PaintProfiler profiler = new PaintProfiler();
+	private long frame = 0;
+
 	//used to avoid rounding to zero logic errors
 	private static final int GRID_SCALE = 20;
 
@@ -66,11 +97,20 @@ public class WorldPanel extends JPanel {
 
 	public static int getGridScale() { return GRID_SCALE; }
 
+	public PaintProfiler getProfiler() { return profiler; }
+
+	/**
+	 * Lets the keyboard pause and speed up the World, see KeyHandler
+	 * @param clockIn
+	 */
+	public void setClock(SimulationClock clockIn) { clock = clockIn; }
+
 	/**
 	 * Initializes a JPanel with a line border and initializes textures
-	 * @param worldIn - World object the panel will be displaying from
+	 * @param sourceIn - World, or replay of one, the panel will be 
+	 * displaying from
 	 */
-	public WorldPanel(World worldIn) {
+	public WorldPanel(SnapshotSource sourceIn) {
 		super();
 
 		//add listeners
@@ -78,84 +118,202 @@ public class WorldPanel extends JPanel {
 		addKeyListener(new KeyHandler());
 		addMouseListener(new MouseHandler());
 
-		world = worldIn;
-		grid = world.getGrid();
+		source = sourceIn;
+		grid = source.getTileGrid();
+		createTileLayers();
 
 		setBorder(BorderFactory.createLineBorder(Color.BLACK));
 		setBackground(Color.BLACK);
 
 		scrollTimer = new Timer(1000 / scrollSpeed, cameraMovementHandler);
-
-		world.start();
 	}
 
 	/**
 	 * Used to create the camera after the WorldPanel has been created
 	 */
 	public void createCamera() {
-		camera = new Camera(world, this);
+		camera = new Camera(source, this);
 		camera.center();
 		scrollTimer.start();
 	}
 
 	public void paint(Graphics g) {
 		super.paint(g);
+		profiler.begin(frame++);
+		followSnapshots();
+		profiler.endPhase(PaintProfiler.SNAPSHOTS);
 		paintNatureTiles(g);
+		profiler.endPhase(PaintProfiler.BIOMES);
 		paintCivilizationTiles(g);
+		profiler.endPhase(PaintProfiler.OWNERS);
 		paintCapitals(g);
+		profiler.endPhase(PaintProfiler.CAPITALS);
 		paintBorderLines(g);
+		profiler.endPhase(PaintProfiler.BORDERS);
 		//paintGridLines(g);
 	}
 
+	/**
+	 * Draws the biome layer, which never changes after the World
+	 * is created
+	 * @param g
+	 */
 	private void paintNatureTiles(Graphics g) {
-		for (int y = 0; y < grid.length; y++) {
-			for (int x = 0; x < grid[0].length; x++) {
-				paintNatureTile(x, y, g);
-			}
+		paintTileLayer(biomeLayer, g);
+	}
+
+	/**
+	 * Draws the ownership layer
+	 * @param g
+	 */
+	private void paintCivilizationTiles(Graphics g) {
+		if (hasOwners) {
+			paintTileLayer(ownerLayer, g);
 		}
 	}
 
-	private void paintNatureTile(int x, int y, Graphics g) {
-		Color color = grid[x][y].getType().getColor();
-		g.setColor(color);
-		int xCoord = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign())) + 1;
-		int yCoord = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign())) + 1;
-		int width = (int)(camera.getScaleX() * GRID_SCALE) + 1;
-		int height = (int)(camera.getScaleY() * GRID_SCALE) + 1;
-		g.fillRect(xCoord, yCoord, width, height);
+	private void paintCivilizationTile(int index) {
+		Color color = snapshot.getColor(owners[index]);
+		ownerLayer.setPixel(index, color == null ? 0 : color.getRGB());
 	}
 
-	private void paintCivilizationTiles(Graphics g) {
-		for (int y = 0; y < grid.length; y++) {
-			for (int x = 0; x < grid[0].length; x++) {
-				paintCivilizationTile(x, y, g);
+	/**
+	 * Applies every snapshot published since the last frame
+	 * to the owner buffer, then redraws the tiles they changed in
+	 * the ownership layer once, however many turns changed them
+	 */
+	private void followSnapshots() {
+		WorldSnapshot next = snapshot.getNext();
+		while (next != null) {
+			snapshot = next;
+			applySnapshot();
+			next = snapshot.getNext();
+		}
+
+		for (int i = 0; i < numDirtyTiles; i++) {
+			int index = dirtyTiles[i];
+			dirtyFlags[index >>> 6] &= ~(1L << index);
+			paintCivilizationTile(index);
+			borderOutlines.markTile(index);
+		}
+		numDirtyTiles = 0;
+	}
+
+	private void applySnapshot() {
+		if (snapshot.isKeyframe()) {
+			//replaces every change followed so far
+			for (int i = 0; i < numDirtyTiles; i++) {
+				dirtyFlags[dirtyTiles[i] >>> 6] &= ~(1L << dirtyTiles[i]);
+			}
+			numDirtyTiles = 0;
+
+			snapshot.copyOwners(owners);
+			for (int i = 0; i < owners.length; i++) {
+				paintCivilizationTile(i);
+			}
+			borderOutlines.markAll();
+			hasOwners = true;
+		}
+		else if (hasOwners) {
+			for (int i = 0; i < snapshot.getNumChanges(); i++) {
+				owners[snapshot.getChangedTile(i)] = snapshot.getChangedOwner(i);
+				markDirty(snapshot.getChangedTile(i));
 			}
 		}
 	}
 
-	private void paintCivilizationTile(int x, int y, Graphics g) {
-		Color color = grid[x][y].getOwner().getColor();
-		if (color != null) {
-			g.setColor(color);
-			int xCoord = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign())) + 1;
-			int yCoord = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign())) + 1;
-			int width = (int)(camera.getScaleX() * (GRID_SCALE * (x + 1) - camera.getXalign())) + 1 - xCoord;
-			int height = (int)(camera.getScaleY() * (GRID_SCALE * (y + 1) - camera.getYalign())) + 1 - yCoord;
-			g.fillRect(xCoord, yCoord, width, height);
+	private void markDirty(int index) {
+		long bit = 1L << index;
+		if ((dirtyFlags[index >>> 6] & bit) != 0) {
+			return;
+		}
+		dirtyFlags[index >>> 6] |= bit;
+		if (numDirtyTiles == dirtyTiles.length) {
+			dirtyTiles = Arrays.copyOf(dirtyTiles, numDirtyTiles * 2);
+		}
+		dirtyTiles[numDirtyTiles++] = index;
+	}
+
+	/**
+	 * Draws the part of a layer that is inside the camera, scaled to 
+	 * the panel. When tiles are smaller than a pixel, a downsampled
+	 * level of the layer is drawn instead.
+	 * @param layer
+	 * @param g
+	 */
+	private void paintTileLayer(TileLayer layer, Graphics g) {
+		Rectangle visible = camera.getVisibleTiles();
+		if (visible.isEmpty()) {
+			return;
+		}
+		int level = getLevelOfDetail(layer);
+		int blockSize = 1 << level;
+		int bx1 = visible.x >> level;
+		int by1 = visible.y >> level;
+		int bx2 = (visible.x + visible.width + blockSize - 1) >> level;
+		int by2 = (visible.y + visible.height + blockSize - 1) >> level;
+
+		int x1 = (int)(camera.getScaleX() * (GRID_SCALE * bx1 * blockSize - camera.getXalign())) + 1;
+		int y1 = (int)(camera.getScaleY() * (GRID_SCALE * by1 * blockSize - camera.getYalign())) + 1;
+		int x2 = (int)(camera.getScaleX() * (GRID_SCALE * bx2 * blockSize - camera.getXalign())) + 1;
+		int y2 = (int)(camera.getScaleY() * (GRID_SCALE * by2 * blockSize - camera.getYalign())) + 1;
+		g.drawImage(layer.getImage(level), x1, y1, x2, y2, bx1, by1, bx2, by2, null);
+	}
+
+	/**
+	 * Smallest level of detail at which a block of tiles is at 
+	 * least a pixel wide
+	 * @param layer
+	 * @return
+	 */
+	private int getLevelOfDetail(TileLayer layer) {
+		double tileWidth = Math.min(camera.getTileWidth(), camera.getScaleY() * GRID_SCALE);
+		int level = 0;
+		while (tileWidth * (1 << level) < 1 && level < layer.getMaxLevel()) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Creates the biome and ownership layers with one pixel per tile
+	 */
+	private void createTileLayers() {
+		biomeLayer = new TileLayer(grid.getWidth(), grid.getHeight(), 
+				BufferedImage.TYPE_INT_RGB);
+		for (int i = 0; i < grid.getSize(); i++) {
+			biomeLayer.setPixel(i, grid.getType(i).getColor().getRGB());
+		}
+
+		ownerLayer = new TileLayer(grid.getWidth(), grid.getHeight(), 
+				BufferedImage.TYPE_INT_ARGB);
+		owners = new int[grid.getSize()];
+		dirtyFlags = new long[(grid.getSize() + 63) / 64];
+		borderOutlines = new BorderOutlines(grid.getWidth(), grid.getHeight(), owners);
+
+		snapshot = source.getLatestSnapshot();
+		if (snapshot.isKeyframe()) {
+			applySnapshot();
+		}
+		else {
+			source.requestKeyframe();
 		}
 	}
 	
 	private void paintCapitals(Graphics g)  {
-		for (Civilization temp : world.getCivilizations()) {
-			paintCapital(temp, g);
+		Rectangle visible = camera.getVisibleTiles();
+		for (int i = 0; i < snapshot.getNumCivilizations(); i++) {
+			paintCapital(snapshot.getCapital(i), visible, g);
 		}
 	}
 	
-	private void paintCapital(Civilization civ, Graphics g) {
+	private void paintCapital(int capital, Rectangle visible, Graphics g) {
 		g.setColor(Color.BLACK);
-		Tile capital = civ.getCapital();
-		int x = (int) capital.getLocation().getX();
-		int y = (int) capital.getLocation().getY();
+		int x = grid.getX(capital);
+		int y = grid.getY(capital);
+		if (!visible.contains(x, y)) {
+			return;
+		}
 		int xCoord = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign())) + 1;
 		int yCoord = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign())) + 1;
 		int width = (int)(camera.getScaleX() * (GRID_SCALE * (x + 1) - camera.getXalign())) + 1 - xCoord;
@@ -163,77 +321,67 @@ public class WorldPanel extends JPanel {
 		g.fillRect(xCoord, yCoord, width, height);
 	}
 	
+	/**
+	 * Draws the edges of visible tiles that separate a civilization
+	 * from a tile with a different owner, in a darker shade of the
+	 * civilization's color. The outlines are in tile coordinates and
+	 * drawn through the transform of the camera.
+	 * @param g
+	 */
 	private void paintBorderLines(Graphics g) {
-		for (Civilization temp : world.getCivilizations()) {
-			paintBorderLine(temp, g);
+		//borders would be thinner than a pixel
+		if (!hasOwners || camera.getTileWidth() < 1) {
+			return;
 		}
-	}
-	
-	private void paintBorderLine(Civilization civ, Graphics g) {
-		g.setColor(civ.getColor().darker());
-		HashSet<Tile> borderTiles = null;
-		while (borderTiles == null) {
-			try {
-			borderTiles= (HashSet<Tile>) ((HashSet<Tile>) civ.getBorderTiles()).clone();
-			} catch (ConcurrentModificationException e) {}
-		}
-		
-		try {
-		for (Tile borderTile : borderTiles) {
-			for (Tile neighbor : borderTile.getNeighbors()) {
-				if (neighbor.getOwner() != civ) {
-					int x = (int) borderTile.getLocation().getX();
-					int y = (int) borderTile.getLocation().getY();
-					//up
-					if (neighbor.getLocation().getY() > 
-					borderTile.getLocation().getY()) {
-						int x1 = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign()));
-						int y1 = (int)(camera.getScaleY() * (GRID_SCALE * (y + 1) - camera.getYalign()));
-						int x2 = (int)(camera.getScaleX() * (GRID_SCALE * (x + 1) - camera.getXalign()));
-						g.drawLine(x1, y1, x2, y1);
-					}
-					//down
-					else if (neighbor.getLocation().getY() < 
-					borderTile.getLocation().getY()) {
-						int x1 = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign()));
-						int y1 = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign()));
-						int x2 = (int)(camera.getScaleX() * (GRID_SCALE * (x + 1) - camera.getXalign()));
-						g.drawLine(x1, y1, x2, y1);
-					}
-					//right
-					else if (neighbor.getLocation().getX() > 
-					borderTile.getLocation().getX()) {
-						int x1 = (int)(camera.getScaleX() * (GRID_SCALE * (x + 1) - camera.getXalign()));
-						int y1 = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign()));
-						int y2 = (int)(camera.getScaleY() * (GRID_SCALE * (y + 1) - camera.getYalign()));
-						g.drawLine(x1, y1, x1, y2);
-					}
-					//left
-					else /*if (neighbor.getLocation().getX() < 
-					borderTile.getLocation().getX())*/ {
-						int x1 = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign()));
-						int y1 = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign()));
-						int y2 = (int)(camera.getScaleY() * (GRID_SCALE * (y + 1) - camera.getYalign()));
-						g.drawLine(x1, y1, x1, y2);
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.transform(camera.getTileTransform());
+		g2.setStroke(BORDER_STROKE);
+
+		Rectangle chunks = borderOutlines.getChunks(camera.getVisibleTiles());
+		for (int y = chunks.y; y < chunks.y + chunks.height; y++) {
+			for (int x = chunks.x; x < chunks.x + chunks.width; x++) {
+				int chunk = borderOutlines.chunkIndex(x, y);
+				borderOutlines.update(chunk);
+				for (int i = 0; i < borderOutlines.getNumOutlines(chunk); i++) {
+					int owner = borderOutlines.getOwner(chunk, i);
+					if (snapshot.getColor(owner) != null) {
+						g2.setColor(getBorderColor(owner));
+						g2.draw(borderOutlines.getOutline(chunk, i));
 					}
 				}
 			}
 		}
-		} catch (Exception e) {}
+		g2.dispose();
+	}
+
+	/**
+	 * Darker shade of a civilization's color, cached per civilization
+	 * @param owner
+	 * @return
+	 */
+	private Color getBorderColor(int owner) {
+		if (owner >= borderColors.length) {
+			borderColors = Arrays.copyOf(borderColors, Math.max(owner + 1, 
+					borderColors.length * 2));
+		}
+		if (borderColors[owner] == null) {
+			borderColors[owner] = snapshot.getColor(owner).darker();
+		}
+		return borderColors[owner];
 	}
 
 	private void paintGridLines(Graphics g) {
 		g.setColor(Color.BLACK);
-		for (int y = 0; y < grid.length + 1; y++) {
+		for (int y = 0; y < grid.getHeight() + 1; y++) {
 			int x1 = (int)(camera.getScaleX() * (-camera.getXalign()));
 			int y1 = (int)(camera.getScaleY() * (GRID_SCALE * y - camera.getYalign()));
-			int x2 = (int)(camera.getScaleX() * (GRID_SCALE * grid[0].length - camera.getXalign())) - 1;
+			int x2 = (int)(camera.getScaleX() * (GRID_SCALE * grid.getWidth() - camera.getXalign())) - 1;
 			g.drawLine(x1, y1, x2, y1);
 		}
-		for (int x = 0; x < grid[0].length + 1; x++) {
+		for (int x = 0; x < grid.getWidth() + 1; x++) {
 			int x1 = (int)(camera.getScaleX() * (GRID_SCALE * x - camera.getXalign()));
 			int y1 = (int)(camera.getScaleY() * (-camera.getYalign()));
-			int y2 = (int)(camera.getScaleY() * (GRID_SCALE * grid.length - camera.getYalign())) + 1;
+			int y2 = (int)(camera.getScaleY() * (GRID_SCALE * grid.getHeight() - camera.getYalign())) + 1;
 			g.drawLine(x1, y1, x1, y2);
 		}
 	}
@@ -267,11 +415,15 @@ public class WorldPanel extends JPanel {
 	 * @since 2017-09-15
 	 */
 	private class KeyHandler implements KeyListener {
+		//mode P resumes to
+		private SimulationClock.Mode resumeMode = SimulationClock.Mode.MAX;
 
 		/**
 		 * Adds new direction to direction list if not already
 		 * in it using the arrow keys or center the camera, if 
-		 * the space bar is pressed
+		 * the space bar is pressed. When displaying a running World,
+		 * P pauses or resumes it, . pauses it and runs a single turn,
+		 * and 1, 2 and 3 run it at normal, fast and max speed
 		 * @Override
 		 */
 		public void keyPressed(KeyEvent e) {
@@ -301,10 +453,37 @@ public class WorldPanel extends JPanel {
 				camera.center();
 				break;
 			}
+			if (clock != null) {
+				controlClock(keyCode);
+			}
 
 			cameraMovementHandler.actionPerformed(null);
 		}
 
+		private void controlClock(int keyCode) {
+			switch (keyCode) {
+			case KeyEvent.VK_P:
+				clock.setMode(clock.getMode() == SimulationClock.Mode.PAUSED ? 
+						resumeMode : SimulationClock.Mode.PAUSED);
+				break;
+			case KeyEvent.VK_PERIOD:
+				clock.step();
+				break;
+			case KeyEvent.VK_1:
+				resumeMode = SimulationClock.Mode.NORMAL;
+				clock.setMode(resumeMode);
+				break;
+			case KeyEvent.VK_2:
+				resumeMode = SimulationClock.Mode.FAST;
+				clock.setMode(resumeMode);
+				break;
+			case KeyEvent.VK_3:
+				resumeMode = SimulationClock.Mode.MAX;
+				clock.setMode(resumeMode);
+				break;
+			}
+		}
+
 		/**
 		 * Removes direction from list once key has been released
 		 * @Override
@@ -1,96 +1,193 @@
 package entity;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
 
-import helper.Move;
+import helper.RandomGenerator;
+import helper.ReseedableRandom;
+import world.ChunkMap;
 import world.Tile;
+import world.TileBitmap;
+import world.TileGrid;
 import world.World;
 
 public class Civilization {
+	//distance penalty of every squared distance below its length, see
+	//calculateDistancePenalty. Covers distances up to 1024 tiles
+	private static final byte[] DISTANCE_PENALTIES = new byte[1 << 20];
+
+	static {
+		for (int i = 0; i < DISTANCE_PENALTIES.length; i++) {
+			DISTANCE_PENALTIES[i] = (byte) (int) Math.sqrt(Math.sqrt(i));
+		}
+	}
+
+	private int id;
 	private String name;
 	private Color color;
 
 	private World world;
 
+	//stream of the current turn, reseeded every turn, see RandomGenerator
+	private ReseedableRandom random;
+
+	public int getId() { return id; }
 	public String getName() { return name; }
 	public Color getColor() { return color; }
+	public World getWorld() { return world; }
+
+	//indices of the tiles owned
+	private TileBitmap territory = new TileBitmap();
 
-	protected Set<Tile> territory = new HashSet<Tile>();
-	private Set<Tile> borderTiles = new HashSet<Tile>();
-	private Set<Tile> neighboringTiles = new HashSet<Tile>();
+	//tiles neighboring the civilization, by ownership and cached value
+	private FrontierIndex frontier = new FrontierIndex();
 
 	private Tile capital;
 
-	public Set<Tile> getTerritory() { return territory; }
-	public Set<Tile> getBorderTiles() { return borderTiles; }
-	public Set<Tile> neighboringTiles() { return neighboringTiles; }
+	//position of the capital, updated when it moves
+	private int capitalX;
+	private int capitalY;
+
+	private int[] neighborBuffer = new int[4];
+	private int[] borderBuffer = new int[4];
+	private int[] frontierBuffer = new int[0];
+
+	public int getTerritorySize() { return territory.size(); }
+	public boolean ownsTile(int index) { return territory.contains(index); }
+
+	/**
+	 * Whether a tile is owned and next to a tile of another owner
+	 * @param index
+	 * @return
+	 */
+	public boolean isBorderTile(int index) {
+		return ownsTile(index) && world.getTileGrid().isBorder(index);
+	}
+
+	/**
+	 * Adds a tile to the territory, without changing its owner
+	 * @param index
+	 */
+	public void addTerritory(int index) { territory.add(index); }
+
+	protected void removeTerritory(int index) {
+		territory.remove(index);
+		if (territory.size() == 0) {
+			world.reportEmptyTerritory(id);
+		}
+	}
+	public FrontierIndex getFrontier() { return frontier; }
 
 	public Tile getCapital() { return capital; }
-	public void setCapital(Tile newCapital) { capital = newCapital; }
+
+	/**
+	 * Moves the capital, which changes the value of every tile
+	 * in the frontier
+	 * @param newCapital
+	 */
+	public void setCapital(Tile newCapital) {
+		TileGrid grid = world.getTileGrid();
+		if (capital != null) {
+			grid.setFlag(capital.getIndex(), TileGrid.FLAG_CAPITAL, false);
+		}
+		capital = newCapital;
+		capitalX = grid.getX(capital.getIndex());
+		capitalY = grid.getY(capital.getIndex());
+		grid.setFlag(capital.getIndex(), TileGrid.FLAG_CAPITAL, true);
+		rescoreFrontier();
+	}
 
 	public Civilization(String nameIn, Color colorIn, World worldIn) {
 		name = nameIn;
 		color = colorIn;
 		world = worldIn;
+		id = world.registerCivilization(this);
+		random = new ReseedableRandom(world.getRandomGenerator().civilizationSeed(id, 
+				RandomGenerator.SETUP_TURN));
 		findStartingLocation();
 	}
 
+	/**
+	 * Recreates a saved civilization, see helper.FileParser. Its
+	 * territory is added by the World, after which restoreBorders
+	 * has to be called
+	 * @param nameIn
+	 * @param colorIn
+	 * @param worldIn
+	 * @param capitalIn - index of the capital, -1 if it had none
+	 */
+	public Civilization(String nameIn, Color colorIn, World worldIn, int capitalIn) {
+		name = nameIn;
+		color = colorIn;
+		world = worldIn;
+		id = world.registerCivilization(this);
+		random = new ReseedableRandom(world.getRandomGenerator().civilizationSeed(id, 
+				RandomGenerator.SETUP_TURN));
+		if (capitalIn >= 0) {
+			capital = world.getTile(capitalIn);
+			capitalX = world.getTileGrid().getX(capitalIn);
+			capitalY = world.getTileGrid().getY(capitalIn);
+			world.getTileGrid().setFlag(capitalIn, TileGrid.FLAG_CAPITAL, true);
+		}
+	}
+
+	/**
+	 * Recalculates the frontier of a restored civilization from its
+	 * territory
+	 * @param frontierTiles - tiles of the frontier when the civilization
+	 * was saved, in any order since the frontier picks tiles by their
+	 * position in tile order
+	 */
+	public void restoreBorders(int[] frontierTiles) {
+		for (int tile : frontierTiles) {
+			scoreFrontierTile(tile);
+			frontier.setContacts(tile, countContacts(tile));
+			world.getChunkMap().addFrontierTile(tile);
+		}
+	}
+
 	protected void findStartingLocation() {
 		boolean foundStartingLocation = false;
 		while (!foundStartingLocation) {
-			int x = (int) (Math.random() * (world.getGrid()[0].length - 1));
-			int y = (int) (Math.random() * (world.getGrid().length - 1));
-			foundStartingLocation = settleTile(world.getGrid()[x][y]);
+			int x = (int) (random.nextDouble() * (world.getWidth() - 1));
+			int y = (int) (random.nextDouble() * (world.getHeight() - 1));
+			foundStartingLocation = settleTile(world.getTile(x, y));
 
 			if (foundStartingLocation) {
-				capital = world.getGrid()[x][y];
+				setCapital(world.getTile(x, y));
 			}
 		}
 	}
 
 	/**
-	 * Every expansion into another space is considered an attack
-	 * @return
+	 * Every expansion into another space is considered an attack.
+	 * Only reads the frontier and changes the random stream of this
+	 * civilization, so the World calls it for every civilization at
+	 * once on several threads
+	 * @return index of the tile the civilization moves into
 	 */
-	public Move takeTurn() {
-		Move move = null;
+	public int takeTurn() {
+		int target = -1;
+		random.setSeed(world.getRandomGenerator().civilizationSeed(id, world.getTurn()));
 
-		while(move == null) {
-			int rand = (int)(Math.random() * 100);
+		while(target < 0) {
+			int rand = (int)(random.nextDouble() * 100);
 			if (rand < 50) {
-				move = expandBySettling();
+				target = expandBySettling();
 			}
 			else {
-				move = expandByWar();
+				target = expandByWar();
 			}
 		}
 		
-		return move;
+		return target;
 	}
 
-	private Move expandBySettling() {
-		ArrayList<Tile> unOwnedNeighboringTiles = getUnownedNeighboringTiles();
-
-		if (unOwnedNeighboringTiles.size() != 0) {
-			Move move = new Move(this, findMostValueableTile(unOwnedNeighboringTiles));
-			return move;
-		}
-
-
-		return null;
+	private int expandBySettling() {
+		return frontier.findMostValuableTile(FrontierIndex.UNOWNED, random);
 	}
 
-	private Move expandByWar() {
-		ArrayList<Tile> ownedNeighboringTiles = getOwnedNeighboringTiles();
-
-		if (ownedNeighboringTiles.size() != 0) {
-			Move move = new Move(this, findMostValueableTile(ownedNeighboringTiles));
-			return move;
-		}
-		return null;
+	private int expandByWar() {
+		return frontier.findMostValuableTile(FrontierIndex.OWNED, random);
 	}
 
 	public boolean settleTile(Tile target) {
@@ -104,53 +201,56 @@ public class Civilization {
 	}
 
 	public void acquireTile(Tile target) {
-		territory.add(target);
-		target.getOwner().concedeTile(target);
-		target.setOwner(this);
-		updateBorders(target);
+		acquireTile(target.getIndex());
 	}
 
-	public void concedeTile(Tile target) {
-		target.setOwner(world.getNature());
-		territory.remove(target);
-		updateBorders(target);
-
-		if (target == capital) {
-			moveNewCapital();
+	public void acquireTile(int index) {
+		TileGrid grid = world.getTileGrid();
+		world.recordOwnerChange(index);
+		addTerritory(index);
+		world.getCivilization(grid.getOwnerId(index)).concedeTile(index);
+		grid.setOwnerId(index, id);
+		world.getStatistics().changeOwner(index, world.getNature().getId(), id);
+		updateBorders(index);
+
+		//target is now owned, so civs it neighbors have to reclassify it
+		int numNeighbors = grid.getNeighbors(index, borderBuffer);
+		for (int i = 0; i < numNeighbors; i++) {
+			int neighborOwner = grid.getOwnerId(borderBuffer[i]);
+			if (neighborOwner != id) {
+				world.getCivilization(neighborOwner).updateFrontierTile(index);
+			}
 		}
 	}
 
-	public void moveNewCapital() {
-		if (territory.size() != 0) {
-			int rand = (int) Math.random() * territory.size();
-			int i = 0; 
-			for (Tile tile : territory) {
-				if (i == rand) {
-					capital = tile;
-					return;
-				}
-				i++;
-			}
-		}
+	public void concedeTile(Tile target) {
+		concedeTile(target.getIndex());
 	}
 
-	private Tile findMostValueableTile(ArrayList<Tile> tileList) {
-		int greatestValue = Integer.MIN_VALUE;
-		ArrayList<Tile> bestTiles = new ArrayList<Tile>();
+	public void concedeTile(int index) {
+		world.recordOwnerChange(index);
+		world.getTileGrid().setOwnerId(index, world.getNature().getId());
+		world.getStatistics().changeOwner(index, id, world.getNature().getId());
+		removeTerritory(index);
+		updateBorders(index);
 
-		for (Tile currentTile : tileList) {
-			int currentValue = calculateTileValue(currentTile);
-			if (currentValue > greatestValue) {
-				greatestValue = currentValue;
-				bestTiles = new ArrayList<Tile>();
-				bestTiles.add(currentTile);
-			}
-			else if (currentValue == greatestValue) {
-				bestTiles.add(currentTile);
-			}
+		if (capital != null && index == capital.getIndex()) {
+			world.reportCapitalLost(id);
 		}
+	}
 
-		return bestTiles.get((int)(Math.random() * bestTiles.size()));
+	/**
+	 * Moves the capital to a random tile of the territory. Tiles are
+	 * picked by their position in tile order, so a restored
+	 * civilization picks the same tile. Called by the World once every
+	 * capture of the turn is committed, so the territory the tile is
+	 * picked from does not depend on the order of the captures
+	 */
+	public void moveNewCapital() {
+		if (territory.size() != 0) {
+			int rand = (int) (random.nextDouble() * territory.size());
+			setCapital(world.getTile(territory.select(rand)));
+		}
 	}
 
 	/**
@@ -159,117 +259,191 @@ public class Civilization {
 	 * to become more square) - square root distance from capital - the cost of 
 	 * declaring a new war. 
 	 * TODO (- threat value from other civilization if owned)
-	 * @param tile
+	 * @param index - index of the tile in the TileGrid
 	 * @return
 	 */
-	private int calculateTileValue(Tile tile) {
-		double totalValue = tile.getType().getValue();
-
-		for (Tile neighbor : tile.getNeighbors()) {
-			totalValue += neighbor.getType().getValue();
-			if (neighbor.getOwner() == this) {
-				totalValue += .5;
+	public int calculateTileValue(int index) {
+		TileGrid grid = world.getTileGrid();
+		int typeSum = grid.getType(index).getValue();
+		int contacts = 0;
+
+		int numNeighbors = grid.getNeighbors(index, neighborBuffer);
+		world.countTilesScanned(1 + numNeighbors);
+		for (int i = 0; i < numNeighbors; i++) {
+			typeSum += grid.getType(neighborBuffer[i]).getValue();
+			if (grid.getOwnerId(neighborBuffer[i]) == id) {
+				contacts++;
 			}
 		}
-		totalValue /= 2;
-
 
-		totalValue -= (int) Math.sqrt(calculateTileDistanceFromCapital(tile));
+		int distancePenalty = capital == null ? 0 : 
+			calculateDistancePenalty(calculateSquaredDistanceFromCapital(index));
+		return calculateTileValue(typeSum, contacts, distancePenalty);
+	}
 
+	/**
+	 * Tile value from what calculateTileValue reads off the grid, so it
+	 * can be calculated without the grid, see sharding.ShardedWorld
+	 * @param typeSum - type value of the tile and of its neighbors
+	 * @param contacts - neighbors owned by the civilization
+	 * @param distancePenalty - see calculateDistancePenalty
+	 * @return
+	 */
+	public static int calculateTileValue(int typeSum, int contacts, int distancePenalty) {
+		double totalValue = typeSum + .5 * contacts;
+		totalValue /= 2;
+		totalValue -= distancePenalty;
 		return (int) totalValue;
 	}
 
 	/**
-	 * Uses D = [(x1 - x2)^2 + (y1 - y2)^2]^(1/2)
-	 * @param tile
+	 * Square root of the distance of a tile from the capital, rounded
+	 * down, looked up for tiles up to 1024 tiles away
+	 * @param squaredDistance - see calculateSquaredDistance
 	 * @return
 	 */
-	private double calculateTileDistanceFromCapital(Tile tile) {
-		if (capital == null) {
-			return 0;
+	public static int calculateDistancePenalty(int squaredDistance) {
+		if (squaredDistance < DISTANCE_PENALTIES.length) {
+			return DISTANCE_PENALTIES[squaredDistance];
 		}
-		return Math.sqrt(Math.pow(capital.getLocation().getX() -
-				tile.getLocation().getX(), 2) + Math.pow(capital.getLocation().getY() -
-						tile.getLocation().getY(), 2));
+		return (int) Math.sqrt(Math.sqrt(squaredDistance));
+	}
+
+	private int calculateSquaredDistanceFromCapital(int index) {
+		int width = world.getWidth();
+		int dx = index % width - capitalX;
+		int dy = index / width - capitalY;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Squared distance between two tiles, exact for any grid
+	 * @param width - width of the grid
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static int calculateSquaredDistance(int width, int from, int to) {
+		int dx = from % width - to % width;
+		int dy = from / width - to / width;
+		return dx * dx + dy * dy;
 	}
 
 
+	/**
+	 * Updates the frontier after the civilization captured or lost a
+	 * tile. Border tiles need no update, the TileGrid keeps count of
+	 * the same owner neighbors of every tile, and the frontier keeps
+	 * count of the contacts of its tiles, so only the neighbors of the
+	 * target are looked at. Tiles joining or leaving the frontier are
+	 * counted by the ChunkMap of the World.
+	 * @param target - tile whose owner was just changed
+	 */
 	public void updateBorders(Tile target) {
-		//case: target was captured
-		if (territory.contains(target)) {
-			ArrayList<Tile> tileToDelete = new ArrayList<Tile>();
-			for (Tile tile : target.getNeighbors()) {
-				if (!tile.isBorderTile()) {
-					tileToDelete.add(tile);
-				}
+		updateBorders(target.getIndex());
+	}
+
+	public void updateBorders(int index) {
+		TileGrid grid = world.getTileGrid();
+		ChunkMap chunks = world.getChunkMap();
+		int numNeighbors = grid.getNeighbors(index, borderBuffer);
 
+		//case: target was captured
+		if (territory.contains(index)) {
+			for (int i = 0; i < numNeighbors; i++) {
+				int tile = borderBuffer[i];
 				if (!territory.contains(tile)) {
-					neighboringTiles.add(tile);
+					//new or one more owned neighbor
+					int contacts = frontier.getContacts(tile) + 1;
+					scoreFrontierTile(tile);
+					frontier.setContacts(tile, contacts);
+					if (contacts == 1) {
+						chunks.addFrontierTile(tile);
+					}
 				}
 			}
 
-			for (Tile tile : tileToDelete) {
-				borderTiles.remove(tile);
-			}
-
-			if (target.isBorderTile()) {
-				borderTiles.add(target);
+			if (frontier.contains(index)) {
+				frontier.remove(index);
+				chunks.removeFrontierTile(index);
 			}
-
-			neighboringTiles.remove(target);
 		}
 		//case: target was lossed
 		else {
-			for (Tile tile : target.getNeighbors()) {
-				if (territory.contains(tile) && tile.isBorderTile()) {
-					borderTiles.add(tile);
-				}
-
-				if (!tileIsNeighboring(tile)) {
-					neighboringTiles.remove(tile);
+			for (int i = 0; i < numNeighbors; i++) {
+				int tile = borderBuffer[i];
+				if (!territory.contains(tile)) {
+					//one less owned neighbor
+					int contacts = frontier.getContacts(tile) - 1;
+					if (contacts <= 0) {
+						frontier.remove(tile);
+						chunks.removeFrontierTile(tile);
+					}
+					else {
+						scoreFrontierTile(tile);
+						frontier.setContacts(tile, contacts);
+					}
 				}
 			}
 
-			borderTiles.remove(target);
-
-			if (tileIsNeighboring(target)) {
-				neighboringTiles.add(target);
+			int contacts = countContacts(index);
+			if (contacts > 0) {
+				scoreFrontierTile(index);
+				frontier.setContacts(index, contacts);
+				chunks.addFrontierTile(index);
 			}
 		}
 	}
 
 	/**
-	 * Returns a list of tiles neighboring the civilization that
-	 * are currently unowned by any other civilization
+	 * Counts the neighbors of a tile the civilization owns
+	 * @param index
 	 * @return
 	 */
-	public ArrayList<Tile> getUnownedNeighboringTiles() {
-		ArrayList<Tile> unownedNeighboringTiles = new ArrayList<Tile>();
-
-		for (Tile neighboringTile : neighboringTiles) {
-			if (!neighboringTile.isOwned()) {
-				unownedNeighboringTiles.add(neighboringTile);
+	private int countContacts(int index) {
+		TileGrid grid = world.getTileGrid();
+		int numNeighbors = grid.getNeighbors(index, neighborBuffer);
+		int contacts = 0;
+		for (int i = 0; i < numNeighbors; i++) {
+			if (grid.getOwnerId(neighborBuffer[i]) == id) {
+				contacts++;
 			}
 		}
-
-		return unownedNeighboringTiles;
+		return contacts;
 	}
 
 	/**
-	 * Returns a list of tiles neighboring the civilization that
-	 * are currently owned by any other civilization
-	 * @return
+	 * Adds a tile to the frontier or updates its partition and value
+	 * @param index
 	 */
-	public ArrayList<Tile> getOwnedNeighboringTiles() {
-		ArrayList<Tile> ownedNeighboringTiles = new ArrayList<Tile>();
+	private void scoreFrontierTile(int index) {
+		int partition = world.getTileGrid().getOwnerId(index) == world.getNature().getId() ?
+				FrontierIndex.UNOWNED : FrontierIndex.OWNED;
+		frontier.put(index, partition, calculateTileValue(index));
+	}
 
-		for (Tile neighboringTile : neighboringTiles) {
-			if (neighboringTile.isOwned()) {
-				ownedNeighboringTiles.add(neighboringTile);
-			}
+	/**
+	 * Called when the owner of a tile that may be in the frontier 
+	 * changes hands between two other civilizations
+	 * @param index
+	 */
+	public void updateFrontierTile(int index) {
+		if (frontier.contains(index)) {
+			scoreFrontierTile(index);
 		}
+	}
 
-		return ownedNeighboringTiles;
+	/**
+	 * Recalculates the value of every tile in the frontier
+	 */
+	private void rescoreFrontier() {
+		if (frontierBuffer.length < frontier.size()) {
+			frontierBuffer = new int[frontier.size() * 2];
+		}
+		int count = frontier.getTiles(frontierBuffer);
+		for (int i = 0; i < count; i++) {
+			scoreFrontierTile(frontierBuffer[i]);
+		}
 	}
 
 	/**
@@ -280,21 +454,28 @@ public class Civilization {
 	 * @return
 	 */
 	public int getStrength(Tile target) {
-		double strength = (territory.size() - 
-				Math.sqrt(calculateTileDistanceFromCapital(target)));
-		if (territory.contains(target)) {
-			strength += 1.1 * strength;
-		}
-		return (int) strength;
+		return getStrength(target.getIndex());
 	}
 
-	public boolean tileIsNeighboring(Tile tile) {
-		for (Tile neighbor : tile.getNeighbors()) {
-			if (neighbor.getOwner() == this) {
-				return true;
-			}
+	public int getStrength(int index) {
+		int penalty = capital == null ? 0 :
+			calculateDistancePenalty(calculateSquaredDistanceFromCapital(index));
+		return calculateStrength(territory.size(), penalty, territory.contains(index));
+	}
+
+	/**
+	 * Strength from what getStrength reads off the civilization
+	 * @param territorySize
+	 * @param distancePenalty - see calculateDistancePenalty
+	 * @param ownsTarget
+	 * @return
+	 */
+	public static int calculateStrength(int territorySize, int distancePenalty, boolean ownsTarget) {
+		int strength = territorySize - distancePenalty;
+		if (ownsTarget) {
+			strength += strength * 11 / 10;
 		}
-		return false;
+		return strength;
 	}
 	
 	
@@ -0,0 +1,333 @@
+package entity;
+
+import java.util.Arrays;
+
+import helper.IntIntHashMap;
+import helper.ReseedableRandom;
+import world.Tile.TileType;
+
+/**
+ * Tiles neighboring a civilization, kept in two partitions (tiles that
+ * are unowned and tiles owned by another civilization) and bucketed by
+ * their cached value, so the most valuable tile of a partition can be
+ * found without rescoring the whole frontier. Every tile also keeps the
+ * number of its neighbors the civilization owns, its contacts, so the
+ * civilization knows when a tile leaves the frontier without looking at
+ * its neighbors.<br>
+ * <br>
+ * Tiles are picked by their position in tile order among the tiles of
+ * a bucket, so the same tile is picked whatever order the frontier was
+ * built in, and a frontier split between stripes of rows picks the same
+ * tiles as a whole one, see sharding.ShardWorker. Buckets are not kept
+ * sorted, the tile is selected from a copy of the bucket when picked.
+ * @author Matthew Zane
+ *
+ */
+public class FrontierIndex {
+	public static final int UNOWNED = 0;
+	public static final int OWNED = 1;
+
+	/**
+	 * Highest value a tile can have, see Civilization.calculateTileValue
+	 */
+	public static final int MAX_VALUE = calculateMaxValue();
+
+	//tile index -> entry
+	private IntIntHashMap entries = new IntIntHashMap();
+
+	//entry arrays, indexed by entry
+	private int[] entryTile = new int[16];
+	private int[] entryValue = new int[16];
+	private int[] entryPartition = new int[16];
+	private int[] entryContacts = new int[16];
+	private int[] entryPosition = new int[16];
+	private int[] freeEntries = new int[16];
+	private int numFreeEntries = 0;
+	private int numEntries = 0;
+
+	//[partition][MAX_VALUE - value] -> entries with that value
+	private int[][][] buckets = new int[2][8][];
+	private int[][] bucketSizes = new int[2][8];
+	private int[] partitionSizes = new int[2];
+
+	//tiles of the bucket a tile is selected from
+	private int[] selectBuffer = new int[0];
+
+	public int size() { return entries.size(); }
+	public int size(int partition) { return partitionSizes[partition]; }
+
+	public boolean contains(int tile) { return entries.containsKey(tile); }
+
+	/**
+	 * @param tile
+	 * @return partition of the tile or -1 if it is not in the index
+	 */
+	public int getPartition(int tile) {
+		int entry = entries.get(tile);
+		return entry == IntIntHashMap.NO_VALUE ? -1 : entryPartition[entry];
+	}
+
+	/**
+	 * @param tile
+	 * @return cached value of the tile, the tile must be in the index
+	 */
+	public int getValue(int tile) {
+		return entryValue[entries.get(tile)];
+	}
+
+	/**
+	 * @param tile
+	 * @return number of neighbors of the tile the civilization owns,
+	 * 0 if it is not in the index
+	 */
+	public int getContacts(int tile) {
+		int entry = entries.get(tile);
+		return entry == IntIntHashMap.NO_VALUE ? 0 : entryContacts[entry];
+	}
+
+	/**
+	 * Only changes the contacts, the value is changed with put
+	 * @param tile - tile in the index
+	 * @param contacts
+	 */
+	public void setContacts(int tile, int contacts) {
+		entryContacts[entries.get(tile)] = contacts;
+	}
+
+	/**
+	 * Value of a tile of the most valuable type next to 4 others, all
+	 * owned by the civilization, at the capital
+	 * @return
+	 */
+	private static int calculateMaxValue() {
+		int maxTypeValue = 0;
+		for (TileType type : TileType.values()) {
+			maxTypeValue = Math.max(maxTypeValue, type.getValue());
+		}
+		return Civilization.calculateTileValue(5 * maxTypeValue, 4, 0);
+	}
+
+	/**
+	 * Adds a tile or moves it to a new partition and value, keeping its
+	 * contacts
+	 * @param tile
+	 * @param partition
+	 * @param value - at most MAX_VALUE
+	 */
+	public void put(int tile, int partition, int value) {
+		if (value > MAX_VALUE) {
+			throw new IllegalArgumentException("Value " + value + " of tile " + tile + 
+					" is above " + MAX_VALUE);
+		}
+		int entry = entries.get(tile);
+		if (entry != IntIntHashMap.NO_VALUE) {
+			if (entryPartition[entry] == partition && entryValue[entry] == value) {
+				return;
+			}
+			unlink(entry);
+		}
+		else {
+			entry = newEntry();
+			entries.put(tile, entry);
+			entryTile[entry] = tile;
+			entryContacts[entry] = 0;
+		}
+		entryPartition[entry] = partition;
+		entryValue[entry] = value;
+		link(entry);
+	}
+
+	/**
+	 * Removes a tile from the index if present
+	 * @param tile
+	 */
+	public void remove(int tile) {
+		int entry = entries.remove(tile);
+		if (entry != IntIntHashMap.NO_VALUE) {
+			unlink(entry);
+			freeEntries[numFreeEntries++] = entry;
+		}
+	}
+
+	/**
+	 * Picks, uniformly at random, one of the tiles with the greatest
+	 * value in a partition
+	 * @param partition
+	 * @param random
+	 * @return tile index or -1 if the partition is empty
+	 */
+	public int findMostValuableTile(int partition, ReseedableRandom random) {
+		if (partitionSizes[partition] == 0) {
+			return -1;
+		}
+		return selectMostValuableTile(partition, 
+				(int)(random.nextDouble() * countMostValuableTiles(partition)));
+	}
+
+	/**
+	 * @param partition - partition that is not empty
+	 * @return greatest value of a tile in the partition
+	 */
+	public int getGreatestValue(int partition) {
+		return MAX_VALUE - findFirstBucket(partition);
+	}
+
+	/**
+	 * @param partition
+	 * @return number of tiles with the greatest value in the partition,
+	 * 0 if it is empty
+	 */
+	public int countMostValuableTiles(int partition) {
+		if (partitionSizes[partition] == 0) {
+			return 0;
+		}
+		return bucketSizes[partition][findFirstBucket(partition)];
+	}
+
+	/**
+	 * @param partition
+	 * @param rank - from 0 to countMostValuableTiles(partition) - 1
+	 * @return tile with the greatest value in the partition that has
+	 * rank such tiles before it in tile order
+	 */
+	public int selectMostValuableTile(int partition, int rank) {
+		int bucket = findFirstBucket(partition);
+		int[] bucketEntries = buckets[partition][bucket];
+		int size = bucketSizes[partition][bucket];
+		if (selectBuffer.length < size) {
+			selectBuffer = new int[size * 2];
+		}
+		for (int i = 0; i < size; i++) {
+			selectBuffer[i] = entryTile[bucketEntries[i]];
+		}
+		return select(selectBuffer, size, rank);
+	}
+
+	/**
+	 * Quickselect, partially reorders the tiles
+	 * @param tiles
+	 * @param size
+	 * @param rank
+	 * @return tile with rank smaller tiles in tiles
+	 */
+	private static int select(int[] tiles, int size, int rank) {
+		int low = 0;
+		int high = size - 1;
+		while (low < high) {
+			int pivot = tiles[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (tiles[i] < pivot) {
+					i++;
+				}
+				while (tiles[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tile = tiles[i];
+					tiles[i++] = tiles[j];
+					tiles[j--] = tile;
+				}
+			}
+			//tiles[low..j] <= pivot <= tiles[i..high]
+			if (rank <= j) {
+				high = j;
+			}
+			else if (rank >= i) {
+				low = i;
+			}
+			else {
+				return tiles[rank];
+			}
+		}
+		return tiles[rank];
+	}
+
+	/**
+	 * Copies the tiles of a partition into out
+	 * @param partition
+	 * @param out - array with room for size(partition) tiles after offset
+	 * @param offset - position in out of the first tile
+	 * @return position in out after the last tile copied
+	 */
+	public int getTiles(int partition, int[] out, int offset) {
+		for (int bucket = 0; bucket < bucketSizes[partition].length; bucket++) {
+			for (int i = 0; i < bucketSizes[partition][bucket]; i++) {
+				out[offset++] = entryTile[buckets[partition][bucket][i]];
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Copies every tile in the index into out
+	 * @param out - array of at least size()
+	 * @return number of tiles copied
+	 */
+	public int getTiles(int[] out) {
+		return getTiles(OWNED, out, getTiles(UNOWNED, out, 0));
+	}
+
+	private int findFirstBucket(int partition) {
+		int[] sizes = bucketSizes[partition];
+		int bucket = 0;
+		while (sizes[bucket] == 0) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private int newEntry() {
+		if (numFreeEntries > 0) {
+			return freeEntries[--numFreeEntries];
+		}
+		if (numEntries == entryTile.length) {
+			int capacity = numEntries * 2;
+			entryTile = Arrays.copyOf(entryTile, capacity);
+			entryValue = Arrays.copyOf(entryValue, capacity);
+			entryPartition = Arrays.copyOf(entryPartition, capacity);
+			entryContacts = Arrays.copyOf(entryContacts, capacity);
+			entryPosition = Arrays.copyOf(entryPosition, capacity);
+			freeEntries = Arrays.copyOf(freeEntries, capacity);
+		}
+		return numEntries++;
+	}
+
+	private void link(int entry) {
+		int partition = entryPartition[entry];
+		int bucket = MAX_VALUE - entryValue[entry];
+		if (bucket >= bucketSizes[partition].length) {
+			int capacity = Math.max(bucket + 1, bucketSizes[partition].length * 2);
+			buckets[partition] = Arrays.copyOf(buckets[partition], capacity);
+			bucketSizes[partition] = Arrays.copyOf(bucketSizes[partition], capacity);
+		}
+		int[] tiles = buckets[partition][bucket];
+		int size = bucketSizes[partition][bucket];
+		if (tiles == null) {
+			tiles = new int[8];
+			buckets[partition][bucket] = tiles;
+		}
+		else if (size == tiles.length) {
+			tiles = Arrays.copyOf(tiles, size * 2);
+			buckets[partition][bucket] = tiles;
+		}
+		tiles[size] = entry;
+		entryPosition[entry] = size;
+		bucketSizes[partition][bucket] = size + 1;
+		partitionSizes[partition]++;
+	}
+
+	private void unlink(int entry) {
+		int partition = entryPartition[entry];
+		int bucket = MAX_VALUE - entryValue[entry];
+		int[] tiles = buckets[partition][bucket];
+		int last = --bucketSizes[partition][bucket];
+
+		//swap the last entry of the bucket into the hole
+		int position = entryPosition[entry];
+		tiles[position] = tiles[last];
+		entryPosition[tiles[position]] = position;
+		partitionSizes[partition]--;
+	}
+}
@@ -1,26 +1,54 @@
 package entity;
 
-import helper.Move;
-import world.Tile;
 import world.World;
 
 public class Nature extends Civilization{
 
+	//Nature owns every tile no civilization owns, so its territory
+	//is only counted, not stored
+	private int numTiles = 0;
+
 	public Nature(World worldIn) {
 		super("Nature", null, worldIn);
 	}
 
+	/**
+	 * Used when the World creates its grid, where Nature owns every tile
+	 * @param numTilesIn
+	 */
+	public void setTerritorySize(int numTilesIn) { numTiles = numTilesIn; }
+
+	public int getTerritorySize() { return numTiles; }
+
+	public boolean ownsTile(int index) {
+		return getWorld().getTileGrid().getOwnerId(index) == getId();
+	}
+
+	public void addTerritory(int index) { numTiles++; }
+
+	protected void removeTerritory(int index) { numTiles--; }
+
 	
 	protected void findStartingLocation() {}
 	
 	@Override
-	public Move takeTurn() {
-		return null;
+	public int takeTurn() {
+		return -1;
 	}
 	
 	public void update() { }
+
+	/**
+	 * Nature never expands, so it does not keep track of its borders
+	 * or frontier
+	 */
+	public void updateBorders(int index) {}
+
+	public void updateFrontierTile(int index) {}
+
+	public void restoreBorders(int[] frontierTiles) {}
 	
-	public int getStrength(Tile target) {
+	public int getStrength(int index) {
 		return Integer.MIN_VALUE;
 	}
 }
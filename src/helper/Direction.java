@@ -1,5 +1,7 @@
 package helper;
 
+import java.util.SplittableRandom;
+
 /**
  * Defines four directions.
  * @author matth
@@ -10,8 +12,8 @@ public enum Direction {
 	
 	public static final Direction[] DIRECTIONS = {UP, DOWN, LEFT, RIGHT}; 
 	
-	public static Direction getRandomDirection() {
-		int randomInt = (int)((Math.random()*4) + 1);
+	public static Direction getRandomDirection(SplittableRandom random) {
+		int randomInt = random.nextInt(4) + 1;
 		switch (randomInt) {
 		case 1: return Direction.UP;
 		case 2: return Direction.DOWN;
@@ -22,4 +24,4 @@ public enum Direction {
 	}
 	
 	public static Direction[] getDirections() { return DIRECTIONS; }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,275 @@
+package helper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import world.TileGrid;
+import world.World;
+import world.WorldSnapshot;
+
+/**
+ * Appends what happens every turn of a World to an event log, so the
+ * run can be played back later without simulating it, see
+ * world.ReplayPlayer. The log is written on a background thread that
+ * follows the chain of WorldSnapshots like the display does, so the
+ * simulation never waits on the disk. All numbers are big endian.<br>
+ * <br>
+ * 	int magic, int version, long seed, int width, int height<br>
+ * 	byte[width * height] tile types<br>
+ * 	records, each a byte kind, an int payload size and the payload:<br>
+ * 	CIVILIZATION: int id, int ARGB color<br>
+ * 	KEYFRAME: long turn, double time, int number of live civilizations,
+ * (int id, int capital) for each, then the owner plane as written by
+ * FileParser.writeOwners<br>
+ * 	TURN: long turn, double time, int number of changes, (int tile,
+ * int old owner, int new owner) for each, int number of capital moves,
+ * (int id, int old capital, int new capital) for each, int number of
+ * eliminations, (int id, int last capital) for each<br>
+ * <br>
+ * The log starts with a keyframe, followed by a turn record for every
+ * turn. A turn record holds enough to step to the previous turn as well
+ * as to the next one, and every KEYFRAME_INTERVAL turns a keyframe
+ * follows the turn record, so a reader can seek without reading the
+ * whole log. A civilization that appears has a capital move from -1.<br>
+ * <br>
+ * How to use:<br>
+ * 	EventLogWriter log = new EventLogWriter(world, file);<br>
+ * 	log.start();<br>
+ * 	world.runTurns(1000);<br>
+ * 	log.close();
+ * @author Matthew Zane
+ *
+ */
+public class EventLogWriter {
+	/**
+	 * "CIVL"
+	 */
+	public static final int MAGIC = 0x4349564C;
+
+	public static final int VERSION = 1;
+
+	public static final byte CIVILIZATION = 1;
+	public static final byte KEYFRAME = 2;
+	public static final byte TURN = 3;
+
+	/**
+	 * Turns between keyframes
+	 */
+	public static final int KEYFRAME_INTERVAL = 1000;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	//longest time written records stay in the buffer while idle
+	private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	//sleep between checks for new snapshots once caught up
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private World world;
+	private DataOutputStream out;
+	private Thread thread;
+
+	//snapshot the log starts from, the next keyframe if it is not one.
+	//Cleared once read, as it links to every snapshot published after it
+	private WorldSnapshot start;
+
+	//state as of the last snapshot written, only used by the writer thread
+	private WorldSnapshot snapshot;
+	private int[] owners;
+	private int numCivilizationIds = 1;
+	private long lastFlush = System.nanoTime();
+
+	//payload of the record being written
+	private ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+	private DataOutputStream payload = new DataOutputStream(payloadBytes);
+
+	//set by close, the writer stops after writing this snapshot
+	private volatile WorldSnapshot stopAt;
+	private volatile IOException error;
+
+	/**
+	 * Creates the log file and writes its header. Nothing else is
+	 * written until start is called
+	 * @param worldIn - World whose snapshots are written, from its
+	 * latest snapshot on
+	 * @param file
+	 * @throws IOException
+	 */
+	public EventLogWriter(World worldIn, File file) throws IOException {
+		world = worldIn;
+		start = world.getLatestSnapshot();
+		if (!start.isKeyframe()) {
+			world.requestKeyframe();
+		}
+
+		TileGrid grid = world.getTileGrid();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+				BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(world.getSeed());
+		out.writeInt(grid.getWidth());
+		out.writeInt(grid.getHeight());
+		byte[] types = new byte[grid.getSize()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = grid.getTypeOrdinal(i);
+		}
+		out.write(types);
+	}
+
+	public void start() {
+		thread = new Thread(new WriterTask(), "EventLogWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits until every snapshot published so far is written and closes
+	 * the log
+	 * @throws IOException if writing the log failed
+	 */
+	public void close() throws IOException {
+		stopAt = world.getLatestSnapshot();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Writes snapshots as they are published until close is called
+	 */
+	private class WriterTask implements Runnable {
+		public void run() {
+			try {
+				try {
+					writeSnapshots();
+				} finally {
+					out.close();
+				}
+			} catch (IOException e) {
+				error = e;
+				System.out.println("Event log stopped: " + e.getMessage());
+			}
+		}
+	}
+
+	private void writeSnapshots() throws IOException {
+		while (true) {
+			WorldSnapshot stop = stopAt;
+			if (stop != null && snapshot == stop) {
+				return;
+			}
+			WorldSnapshot next;
+			if (snapshot == null) {
+				next = start;
+				start = null;
+			}
+			else {
+				next = snapshot.getNext();
+			}
+			if (next == null) {
+				if (System.nanoTime() - lastFlush >= FLUSH_INTERVAL) {
+					out.flush();
+					lastFlush = System.nanoTime();
+				}
+				LockSupport.parkNanos(IDLE_WAIT);
+				continue;
+			}
+			writeSnapshot(next);
+			snapshot = next;
+		}
+	}
+
+	private void writeSnapshot(WorldSnapshot next) throws IOException {
+		//nothing can be written before the owner of every tile is known
+		if (owners == null) {
+			if (!next.isKeyframe()) {
+				return;
+			}
+			owners = new int[world.getTileGrid().getSize()];
+			next.copyOwners(owners);
+			writeCivilizations(next);
+			writeKeyframe(next);
+			return;
+		}
+
+		writeCivilizations(next);
+		writeTurn(next);
+		if (next.getTurn() % KEYFRAME_INTERVAL == 0) {
+			writeKeyframe(next);
+		}
+	}
+
+	/**
+	 * Writes the civilizations created since the last snapshot
+	 * @param next
+	 * @throws IOException
+	 */
+	private void writeCivilizations(WorldSnapshot next) throws IOException {
+		if (next.getNumCivilizationIds() == numCivilizationIds) {
+			return;
+		}
+		for (int id = numCivilizationIds; id < next.getNumCivilizationIds(); id++) {
+			payload.writeInt(id);
+			payload.writeInt(next.getColor(id).getRGB());
+			writeRecord(CIVILIZATION);
+		}
+		numCivilizationIds = next.getNumCivilizationIds();
+	}
+
+	private void writeKeyframe(WorldSnapshot next) throws IOException {
+		payload.writeLong(next.getTurn());
+		payload.writeDouble(next.getTime());
+		payload.writeInt(next.getNumCivilizations());
+		for (int i = 0; i < next.getNumCivilizations(); i++) {
+			payload.writeInt(next.getCivilizationId(i));
+			payload.writeInt(next.getCapital(i));
+		}
+		FileParser.writeOwners(owners, payload);
+		writeRecord(KEYFRAME);
+	}
+
+	private void writeTurn(WorldSnapshot next) throws IOException {
+		payload.writeLong(next.getTurn());
+		payload.writeDouble(next.getTime());
+
+		payload.writeInt(next.getNumChanges());
+		for (int i = 0; i < next.getNumChanges(); i++) {
+			payload.writeInt(next.getChangedTile(i));
+			payload.writeInt(next.getChangedOldOwner(i));
+			payload.writeInt(next.getChangedOwner(i));
+			owners[next.getChangedTile(i)] = next.getChangedOwner(i);
+		}
+
+		payload.writeInt(next.getNumCapitalMoves());
+		for (int i = 0; i < next.getNumCapitalMoves(); i++) {
+			payload.writeInt(next.getMovedCivilizationId(i));
+			payload.writeInt(next.getOldCapital(i));
+			payload.writeInt(next.getNewCapital(i));
+		}
+		payload.writeInt(next.getNumEliminations());
+		for (int i = 0; i < next.getNumEliminations(); i++) {
+			payload.writeInt(next.getEliminatedId(i));
+			payload.writeInt(next.getEliminatedCapital(i));
+		}
+		writeRecord(TURN);
+	}
+
+	private void writeRecord(byte kind) throws IOException {
+		out.writeByte(kind);
+		out.writeInt(payloadBytes.size());
+		payloadBytes.writeTo(out);
+		payloadBytes.reset();
+	}
+}
@@ -1,5 +1,299 @@
 package helper;
 
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import entity.Civilization;
+import world.Tile;
+import world.TileGrid;
+import world.World;
+
+/**
+ * Saves and loads Worlds in a versioned binary format. All numbers are
+ * big endian.<br>
+ * <br>
+ * 	int magic, int version<br>
+ * 	long seed, long turn, double time, long total owner changes<br>
+ * 	int width, int height<br>
+ * 	int number of civilization ids, then for every id except Nature's:<br>
+ * 		byte alive, int name length, UTF-8 name, int ARGB color,<br>
+ * 		int capital (-1 if none), int frontier size, int[] frontier<br>
+ * 	byte[width * height] tile types<br>
+ * 	int run length size, int compressed size, then the owner of every
+ * tile as (owner, run length) varint pairs, deflated<br>
+ * <br>
+ * The random state of the World is its seed and turn, since every
+ * random stream is derived from them. Loading maps the file into memory
+ * rather than reading it through a stream.
+ * @author Matthew Zane
+ *
+ */
 public class FileParser {
+	/**
+	 * "CIVW"
+	 */
+	public static final int MAGIC = 0x43495657;
+
+	public static final int VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Saves a World that is not running a turn. The file is written next
+	 * to the target and then moved over it, so an existing save is never
+	 * left half written
+	 * @param world
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void saveWorld(World world, File file) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+		try {
+			writeWorld(world, out);
+		} finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writeWorld(World world, DataOutputStream out) throws IOException {
+		TileGrid grid = world.getTileGrid();
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(world.getSeed());
+		out.writeLong(world.getTurn());
+		out.writeDouble(world.getTime());
+		out.writeLong(world.getTotalOwnerChanges());
+		out.writeInt(grid.getWidth());
+		out.writeInt(grid.getHeight());
+
+		out.writeInt(world.getNumCivilizationIds());
+		for (int id = 1; id < world.getNumCivilizationIds(); id++) {
+			Civilization civ = world.getCivilization(id);
+			byte[] name = civ.getName().getBytes(UTF_8);
+			out.writeBoolean(world.getCivilizationRegistry().isLive(id));
+			out.writeInt(name.length);
+			out.write(name);
+			out.writeInt(civ.getColor().getRGB());
+			out.writeInt(civ.getCapital() == null ? -1 : civ.getCapital().getIndex());
+
+			int[] frontier = new int[civ.getFrontier().size()];
+			civ.getFrontier().getTiles(frontier);
+			out.writeInt(frontier.length);
+			for (int tile : frontier) {
+				out.writeInt(tile);
+			}
+		}
+
+		byte[] row = new byte[grid.getWidth()];
+		for (int y = 0; y < grid.getHeight(); y++) {
+			for (int x = 0; x < row.length; x++) {
+				row[x] = grid.getTypeOrdinal(grid.index(x, y));
+			}
+			out.write(row);
+		}
+
+		writeOwners(grid.getOwnerIds(), out);
+	}
+
+	/**
+	 * Run length encodes an owner plane and deflates the result. Also
+	 * used for the keyframes of event logs
+	 * @param owners - owner of every tile
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void writeOwners(int[] owners, DataOutputStream out) throws IOException {
+		ByteArrayOutputStream runs = new ByteArrayOutputStream();
+		int start = 0;
+		while (start < owners.length) {
+			int owner = owners[start];
+			int end = start + 1;
+			while (end < owners.length && owners[end] == owner) {
+				end++;
+			}
+			writeVarInt(runs, owner);
+			writeVarInt(runs, end - start);
+			start = end;
+		}
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		DeflaterOutputStream deflaterOut = new DeflaterOutputStream(compressed, deflater);
+		runs.writeTo(deflaterOut);
+		deflaterOut.close();
+		deflater.end();
+
+		out.writeInt(runs.size());
+		out.writeInt(compressed.size());
+		compressed.writeTo(out);
+	}
+
+	/**
+	 * Loads a World saved by saveWorld. The World is ready to run
+	 * @param file
+	 * @return
+	 * @throws IOException if the file can't be read or is not a save of
+	 * a supported version
+	 */
+	public static World loadWorld(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return readWorld(in);
+		} catch (RuntimeException e) {
+			//e.g. BufferUnderflowException on a truncated file
+			throw new IOException("Corrupt save " + file + ": " + e, e);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static World readWorld(ByteBuffer in) throws IOException {
+		if (in.getInt() != MAGIC) {
+			throw new IOException("Not a world save");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported save version " + version);
+		}
+		long seed = in.getLong();
+		long turn = in.getLong();
+		double time = in.getDouble();
+		long totalOwnerChanges = in.getLong();
+		int width = in.getInt();
+		int height = in.getInt();
+
+		TileGrid grid = new TileGrid(width, height, 0);
+		World world = new World(grid, seed, turn, time, totalOwnerChanges);
+
+		int numIds = in.getInt();
+		int[][] frontiers = new int[numIds][];
+		for (int id = 1; id < numIds; id++) {
+			boolean alive = in.get() != 0;
+			byte[] name = new byte[in.getInt()];
+			in.get(name);
+			Color color = new Color(in.getInt(), true);
+			int capital = in.getInt();
+			frontiers[id] = new int[in.getInt()];
+			for (int i = 0; i < frontiers[id].length; i++) {
+				frontiers[id][i] = in.getInt();
+			}
+
+			Civilization civ = new Civilization(new String(name, UTF_8), color, world, capital);
+			if (alive) {
+				world.addLiveCivilization(civ);
+			}
+		}
+
+		//every tile is covered once a World is created
+		int numTypes = Tile.TileType.values().length;
+		for (int i = 0; i < grid.getSize(); i++) {
+			byte ordinal = in.get();
+			if (ordinal < 0 || ordinal >= numTypes) {
+				throw new IOException("Tile types are corrupt");
+			}
+			grid.setTypeOrdinal(i, ordinal);
+		}
+
+		readOwners(in, grid.getOwnerIds(), numIds);
+
+		world.restoreTerritories(frontiers);
+		return world;
+	}
+
+	/**
+	 * Reads an owner plane written by writeOwners
+	 * @param in
+	 * @param owners - filled with the owner of every tile
+	 * @param numIds - number of civilization ids, owners must be below it
+	 * @throws IOException if the plane is corrupt
+	 */
+	public static void readOwners(ByteBuffer in, int[] owners, int numIds) throws IOException {
+		byte[] runs = new byte[in.getInt()];
+		byte[] compressed = new byte[in.getInt()];
+		in.get(compressed);
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int length = 0;
+			while (length < runs.length && !inflater.finished()) {
+				length += inflater.inflate(runs, length, runs.length - length);
+				if (inflater.needsInput()) {
+					break;
+				}
+			}
+			if (length != runs.length) {
+				throw new IOException("Owner plane is truncated");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Owner plane is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+
+		ByteBuffer runBuffer = ByteBuffer.wrap(runs);
+		int tile = 0;
+		while (runBuffer.hasRemaining()) {
+			int owner = readVarInt(runBuffer);
+			int end = tile + readVarInt(runBuffer);
+			if (owner >= numIds || end > owners.length) {
+				throw new IOException("Owner plane is corrupt");
+			}
+			Arrays.fill(owners, tile, end, owner);
+			tile = end;
+		}
+		if (tile != owners.length) {
+			throw new IOException("Owner plane is truncated");
+		}
+	}
+
+	/**
+	 * Writes a non negative int in 7 bit groups, least significant first
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	private static void writeVarInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
 
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
 }
@@ -0,0 +1,165 @@
+package helper;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative int keys to int values.
+ * Avoids the boxing and per-entry objects of a HashMap when keys are
+ * tile indices or civilization ids.
+ * @author Matthew Zane
+ *
+ */
+public class IntIntHashMap {
+	private static final int EMPTY = -1;
+
+	/**
+	 * Value returned by get() for keys that are not in the map
+	 */
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+
+	public IntIntHashMap() {
+		this(16);
+	}
+
+	public IntIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private int find(int key) {
+		int i = slot(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @param key
+	 * @return the value mapped to key or NO_VALUE
+	 */
+	public int get(int key) {
+		int i = find(key);
+		return i < 0 ? NO_VALUE : values[i];
+	}
+
+	/**
+	 * Maps key to value
+	 * @param key - must not be negative
+	 * @param value
+	 * @return previous value mapped to key or NO_VALUE
+	 */
+	public int put(int key, int value) {
+		int i = slot(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				int previous = values[i];
+				values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size > keys.length * 3 / 4) {
+			rehash(keys.length << 1);
+		}
+		return NO_VALUE;
+	}
+
+	/**
+	 * Adds delta to the value mapped to key, starting from 0 if
+	 * key is not in the map
+	 * @param key
+	 * @param delta
+	 * @return new value
+	 */
+	public int addTo(int key, int delta) {
+		int i = find(key);
+		if (i < 0) {
+			put(key, delta);
+			return delta;
+		}
+		values[i] += delta;
+		return values[i];
+	}
+
+	/**
+	 * Removes key from the map
+	 * @param key
+	 * @return value that was mapped to key or NO_VALUE
+	 */
+	public int remove(int key) {
+		int i = find(key);
+		if (i < 0) {
+			return NO_VALUE;
+		}
+		int previous = values[i];
+
+		//shift back the following entries of the probe sequence
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (keys[j] != EMPTY) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return previous;
+	}
+
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
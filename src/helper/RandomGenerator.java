@@ -1,22 +1,136 @@
 package helper;
 
 import java.awt.Color;
-import java.util.Random;
+import java.util.SplittableRandom;
 
+/**
+ * Seeded source of every random decision made in the simulation.
+ * Streams are derived from the seed and a key describing what they
+ * are used for (a civilization and turn, a biome, a shard of tiles),
+ * rather than from the thread that happens to run the work, so a run
+ * is reproducible from its seed regardless of the number of cores.
+ * @author Matthew Zane
+ *
+ */
 public class RandomGenerator {
-	
-	private static Random rand = new Random();
-	
+	private static final long BIOME_TYPES = 1;
+	private static final long CIVILIZATION = 2;
+	private static final long BIOME = 3;
+	private static final long SHARD = 4;
+	private static final long BIOME_GROWTH = 5;
+	private static final long CIVILIZATION_COLORS = 6;
+
+	/**
+	 * Turn used for the decisions made while the world is created
+	 */
+	public static final long SETUP_TURN = -1;
+
+	private long seed;
+
+	public long getSeed() { return seed; }
+
+	public RandomGenerator(long seedIn) {
+		seed = seedIn;
+	}
+
+	/**
+	 * Stream the tile type of every biome is picked from while the
+	 * world is created
+	 * @return
+	 */
+	public SplittableRandom forBiomeTypes() {
+		return stream(BIOME_TYPES, 0, SETUP_TURN);
+	}
+
+	/**
+	 * Stream the colors of the civilizations are picked from while the
+	 * world is created
+	 * @return
+	 */
+	public SplittableRandom forCivilizationColors() {
+		return stream(CIVILIZATION_COLORS, 0, SETUP_TURN);
+	}
+
+	/**
+	 * Seed of the stream a civilization draws from during a turn, to
+	 * reseed a ReseedableRandom with
+	 * @param civId
+	 * @param turn
+	 * @return
+	 */
+	public long civilizationSeed(int civId, long turn) {
+		return hash(CIVILIZATION, civId, turn);
+	}
+
+	/**
+	 * Stream a biome draws from while growing
+	 * @param biomeId
+	 * @return
+	 */
+	public SplittableRandom forBiome(int biomeId) {
+		return stream(BIOME, biomeId, SETUP_TURN);
+	}
+
+	/**
+	 * Seed of the stream used to resolve the contested tiles of a shard
+	 * during a turn, to reseed a ReseedableRandom with
+	 * @param shard
+	 * @param turn
+	 * @return
+	 */
+	public long shardSeed(int shard, long turn) {
+		return hash(SHARD, shard, turn);
+	}
+
+	/**
+	 * Random bits deciding when and by which biome a tile is covered
+	 * during world generation. Cheaper than creating a stream, since
+	 * every tile needs one
+	 * @param tile
+	 * @return
+	 */
+	public long biomeGrowthHash(int tile) {
+		return hash(BIOME_GROWTH, tile, SETUP_TURN);
+	}
+
+	/**
+	 * Derives an independent stream from the seed and the given key
+	 * @param kind
+	 * @param id
+	 * @param turn
+	 * @return
+	 */
+	public SplittableRandom stream(long kind, long id, long turn) {
+		return new SplittableRandom(hash(kind, id, turn));
+	}
+
+	private long hash(long kind, long id, long turn) {
+		long z = mix(seed + kind * 0x9E3779B97F4A7C15L);
+		z = mix(z + id * 0xC2B2AE3D27D4EB4FL);
+		return mix(z + turn * 0x165667B19E3779F9L);
+	}
+
+	/**
+	 * Finalizer of the SplitMix64 generator
+	 * @param z
+	 * @return
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	//TODO
 	public static String randName() {
 		return null;
 	}
-	
-	public static Color randColor() {
-		float r = rand.nextFloat();
-		float g = rand.nextFloat();
-		float b = rand.nextFloat();
-		
+
+	public static Color randColor(SplittableRandom rand) {
+		float r = (float) rand.nextDouble();
+		float g = (float) rand.nextDouble();
+		float b = (float) rand.nextDouble();
+
 		return new Color(r, g, b);
 	}
 }
@@ -0,0 +1,42 @@
+package helper;
+
+/**
+ * Produces the same doubles as a java.util.SplittableRandom created
+ * with the same seed, but can be given a new seed instead of being
+ * replaced, so the streams of RandomGenerator can be drawn from every
+ * turn without allocating.
+ * @author Matthew Zane
+ *
+ */
+public class ReseedableRandom {
+	//increment of the SplittableRandom algorithm
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long seed;
+
+	public ReseedableRandom(long seedIn) {
+		seed = seedIn;
+	}
+
+	/**
+	 * Starts the stream of another seed
+	 * @param seedIn
+	 */
+	public void setSeed(long seedIn) {
+		seed = seedIn;
+	}
+
+	public long nextLong() {
+		long z = seed += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return double from 0 (inclusive) to 1 (exclusive)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
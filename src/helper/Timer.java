@@ -10,4 +10,4 @@ public class Timer {
 		return (double) System.nanoTime() / (double) 1000000000L;
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package profiling;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A layer painted by display.WorldPanel, the sequence is the frame
+ * @author Matthew Zane
+ *
+ */
+@Name("civilizationsimulator.PaintLayer")
+@Label("Paint Layer")
+@Description("A layer of a frame of the world panel")
+public class PaintLayerEvent extends PhaseEvent {
+
+}
@@ -0,0 +1,26 @@
+package profiling;
+
+/**
+ * Times the layers of the frames painted by display.WorldPanel
+ * @author Matthew Zane
+ *
+ */
+public class PaintProfiler extends PhaseProfiler {
+	public static final int SNAPSHOTS = 0;
+	public static final int BIOMES = 1;
+	public static final int OWNERS = 2;
+	public static final int CAPITALS = 3;
+	public static final int BORDERS = 4;
+
+	private static final String[] PHASE_NAMES = {
+			"snapshots", "biomes", "owners", "capitals", "borders"
+	};
+
+	public PaintProfiler() {
+		super(PHASE_NAMES);
+	}
+
+	protected PhaseEvent createEvent() {
+		return new PaintLayerEvent();
+	}
+}
@@ -0,0 +1,21 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a phase of a turn or a frame, recorded
+ * by a PhaseProfiler. Its duration is the time the phase took
+ * @author Matthew Zane
+ *
+ */
+@Category("Civilization Simulator")
+@StackTrace(false)
+public abstract class PhaseEvent extends jdk.jfr.Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Sequence")
+	long sequence;
+}
@@ -0,0 +1,113 @@
+package profiling;
+
+import java.util.Arrays;
+
+/**
+ * Times the phases of something that repeats, like a turn or a frame.
+ * Every phase is recorded as a Java Flight Recorder event and its
+ * recent durations are kept for percentiles, so they can be shown while
+ * running. Timing a phase costs two System.nanoTime calls.<br>
+ * <br>
+ * Phases are recorded by one thread. Percentiles can be read from any
+ * thread, samples being written at the same time may be missed.<br>
+ * <br>
+ * How to use:<br>
+ * 	profiler.begin(turn);<br>
+ * 	updateCivilizations();<br>
+ * 	profiler.endPhase(UPDATE_CIVILIZATIONS);<br>
+ * 	takeTurns();<br>
+ * 	profiler.endPhase(TAKE_TURNS);
+ * @author Matthew Zane
+ *
+ */
+public abstract class PhaseProfiler {
+	//number of recent durations percentiles are taken from
+	private static final int SAMPLES = 256;
+
+	private String[] phaseNames;
+
+	//recent durations of every phase in nanoseconds
+	private long[][] durations;
+	private int[] numDurations;
+
+	private long sequence;
+	private long phaseStart;
+	private PhaseEvent event;
+
+	public int getNumPhases() { return phaseNames.length; }
+	public String getPhaseName(int phase) { return phaseNames[phase]; }
+
+	/**
+	 * @param phaseNamesIn - name of every phase, by phase number
+	 */
+	public PhaseProfiler(String[] phaseNamesIn) {
+		phaseNames = phaseNamesIn;
+		durations = new long[phaseNames.length][SAMPLES];
+		numDurations = new int[phaseNames.length];
+	}
+
+	/**
+	 * Flight Recorder event a phase is recorded as
+	 * @return
+	 */
+	protected abstract PhaseEvent createEvent();
+
+	/**
+	 * Starts the first phase
+	 * @param sequenceIn - turn or frame the phases belong to
+	 */
+	public void begin(long sequenceIn) {
+		sequence = sequenceIn;
+		if (event == null) {
+			event = createEvent();
+		}
+		event.begin();
+		phaseStart = System.nanoTime();
+	}
+
+	/**
+	 * Ends the running phase and starts the next one
+	 * @param phase - number of the phase that ended
+	 */
+	public void endPhase(int phase) {
+		long end = System.nanoTime();
+		durations[phase][numDurations[phase]++ % SAMPLES] = end - phaseStart;
+		phaseStart = end;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phaseNames[phase];
+			event.sequence = sequence;
+			event.commit();
+			//only committed events are replaced, so timing a phase
+			//does not allocate while the recorder is off
+			event = createEvent();
+		}
+		event.begin();
+	}
+
+	/**
+	 * @param phase
+	 * @return 50th and 99th percentile of the recent durations of a
+	 * phase, in milliseconds
+	 */
+	public double[] getPercentiles(int phase) {
+		long[] sorted = Arrays.copyOf(durations[phase], 
+				Math.min(numDurations[phase], SAMPLES));
+		Arrays.sort(sorted);
+		return new double[] { percentile(sorted, 0.50), percentile(sorted, 0.99) };
+	}
+
+	/**
+	 * @param sorted - nanoseconds in ascending order
+	 * @param fraction
+	 * @return milliseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(i, 0)] / 1e6;
+	}
+}
@@ -0,0 +1,40 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Counters of a simulation turn, committed once the turn is published
+ * @author Matthew Zane
+ *
+ */
+@Name("civilizationsimulator.Turn")
+@Label("Turn")
+@Description("Counters of a simulation turn")
+@Category("Civilization Simulator")
+@StackTrace(false)
+public class TurnEvent extends jdk.jfr.Event {
+	@Label("Turn")
+	long turn;
+
+	@Label("Moves Issued")
+	int movesIssued;
+
+	@Label("Contested Tiles")
+	@Description("Tiles targeted by at least one move")
+	int contestedTiles;
+
+	@Label("Tiles Scanned")
+	@Description("Tiles read by Civilization.calculateTileValue")
+	long tilesScanned;
+
+	@Label("Owner Changes")
+	int ownerChanges;
+
+	@Label("Awake Chunks")
+	@Description("Chunks of the grid with frontier tiles")
+	int awakeChunks;
+}
@@ -0,0 +1,17 @@
+package profiling;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A phase of World.runSingleTurn, the sequence is the turn
+ * @author Matthew Zane
+ *
+ */
+@Name("civilizationsimulator.TurnPhase")
+@Label("Turn Phase")
+@Description("A phase of a simulation turn")
+public class TurnPhaseEvent extends PhaseEvent {
+
+}
@@ -0,0 +1,83 @@
+package profiling;
+
+/**
+ * Times the phases of World.runSingleTurn and counts the work done in
+ * a turn. The counters of every turn are recorded as a TurnEvent
+ * @author Matthew Zane
+ *
+ */
+public class TurnProfiler extends PhaseProfiler {
+	public static final int UPDATE_CIVILIZATIONS = 0;
+	public static final int TAKE_TURNS = 1;
+	public static final int RESOLVE_MOVES = 2;
+	public static final int PUBLISH_SNAPSHOT = 3;
+
+	private static final String[] PHASE_NAMES = {
+			"updateCivilizations", "takeTurn", "resolveMoves", "publishSnapshot"
+	};
+
+	//counters of the last turn
+	private volatile int movesIssued;
+	private volatile int contestedTiles;
+	private volatile long tilesScanned;
+	private volatile int ownerChanges;
+	private volatile int awakeChunks;
+
+	//replaced once committed, see PhaseProfiler.endPhase
+	private TurnEvent event = new TurnEvent();
+
+	public int getMovesIssued() { return movesIssued; }
+
+	/**
+	 * @return tiles targeted by at least one move
+	 */
+	public int getContestedTiles() { return contestedTiles; }
+
+	/**
+	 * @return tiles read by Civilization.calculateTileValue
+	 */
+	public long getTilesScanned() { return tilesScanned; }
+	public int getOwnerChanges() { return ownerChanges; }
+
+	/**
+	 * @return chunks with frontier tiles, see world.ChunkMap
+	 */
+	public int getAwakeChunks() { return awakeChunks; }
+
+	public TurnProfiler() {
+		super(PHASE_NAMES);
+	}
+
+	protected PhaseEvent createEvent() {
+		return new TurnPhaseEvent();
+	}
+
+	/**
+	 * Records the counters of a turn
+	 * @param turn
+	 * @param movesIssuedIn
+	 * @param contestedTilesIn
+	 * @param tilesScannedIn
+	 * @param ownerChangesIn
+	 * @param awakeChunksIn
+	 */
+	public void endTurn(long turn, int movesIssuedIn, int contestedTilesIn, 
+			long tilesScannedIn, int ownerChangesIn, int awakeChunksIn) {
+		movesIssued = movesIssuedIn;
+		contestedTiles = contestedTilesIn;
+		tilesScanned = tilesScannedIn;
+		ownerChanges = ownerChangesIn;
+		awakeChunks = awakeChunksIn;
+
+		if (event.shouldCommit()) {
+			event.turn = turn;
+			event.movesIssued = movesIssuedIn;
+			event.contestedTiles = contestedTilesIn;
+			event.tilesScanned = tilesScannedIn;
+			event.ownerChanges = ownerChangesIn;
+			event.awakeChunks = awakeChunksIn;
+			event.commit();
+			event = new TurnEvent();
+		}
+	}
+}
@@ -1,82 +1,167 @@
 package runner;
 
 import java.awt.Dimension;
-import java.util.List;
+import java.io.IOException;
 
 import display.Display;
+import display.FramePacer;
+import helper.EventLogWriter;
 import helper.FileParser;
-import helper.Timer;
+import sharding.ShardedWorld;
+import world.ReplayPlayer;
+import world.SimulationClock;
 import world.World;
 
 public class CivilizationSimulator {
 	private String pathname;
 
+	private SimulationConfig config = new SimulationConfig();
+
 	public String getPathname() { return pathname; }
 
 	public void setPathname(String pathnameIn) { pathname = pathnameIn; }
 
+	public SimulationConfig getConfig() { return config; }
+
+	public void setConfig(SimulationConfig configIn) { config = configIn; }
+
 	public static void main(String [] args) {
 		//parse command line arguments
-		//for now just accept one parameter: config file
+		SimulationConfig config;
+		try {
+			config = SimulationConfig.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(SimulationConfig.USAGE);
+			System.exit(1);
+			return;
+		}
 
-		//instantiate gravity simulator
-		CivilizationSimulator gs = new CivilizationSimulator();
-		//gs.setPathname(args[0]);
+		if (config.isHeadless()) {
+			//keep AWT from looking for a display
+			System.setProperty("java.awt.headless", "true");
+			try {
+				new HeadlessRunner(config).run();
+			} catch (IOException e) {
+				System.out.println("There was an error: " + e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
 
-		//configure gravity simulator
+		//instantiate civilization simulator
+		CivilizationSimulator gs = new CivilizationSimulator();
+		gs.setConfig(config);
 
 		//call run()
 		gs.run();
 	}
 
+	/**
+	 * Loads the World to resume from, or creates a new one
+	 * @param config
+	 * @return
+	 * @throws IOException
+	 */
+	public static World createWorld(SimulationConfig config) throws IOException {
+		if (config.getResumeFile() != null) {
+			return FileParser.loadWorld(config.getResumeFile());
+		}
+		return new World(new Dimension(config.getMapLength(), config.getMapLength()), 
+				config.getNumCivs(), config.getSeed());
+	}
+
 	/**
 	 * Requires pathname to be set.
 	 */
 	public void run() {
+		if (config.getReplayFile() != null) {
+			replay();
+			return;
+		}
 		try {
-			//TODO change input for world
-			World world = new World(new Dimension(1000, 1000), 5);
+			if (config.getShards() > 0) {
+				runSharded();
+				return;
+			}
+			World world = createWorld(config);
+			world.setThreadCount(config.getThreads());
+			if (config.getEventLogFile() != null) {
+				EventLogWriter log = new EventLogWriter(world, config.getEventLogFile());
+				log.start();
+				Runtime.getRuntime().addShutdownHook(new CloseLogHook(log));
+			}
+			world.setClock(new SimulationClock(config.getFps(), config.getTurnBudget()));
 			Display display = new Display(world);
 			display.init();
+			world.start();
 
-			boolean isDone = false;
-
-			double frameCap = 1.0 / 60.0;
-
-			double frameTime = 0;
-			int frames = 0;
-
-			double time = Timer.getTime();
-			double unprocessed = 0;
-			while (!isDone) {
-				boolean canRender = false;
+			//repaints on its own thread, the World and the event
+			//dispatch thread keep the program running
+			FramePacer pacer = new FramePacer(display.getRootPane(), config.getFps());
+			pacer.setPrintReports(config.isFpsReport());
+			pacer.start();
+		} catch(Exception e) {
+			System.out.println("There was an error: " + e.getMessage());
+		}
+	}
 
-				double time2 = Timer.getTime();
-				double passed = time2 - time;
-				unprocessed += passed;
-				frameTime += passed;
+	/**
+	 * Displays a World split between worker processes, see ShardedWorld.
+	 * The World is only created to be split, it is not kept
+	 * @throws Exception
+	 */
+	private void runSharded() throws Exception {
+		ShardedWorld sharded = new ShardedWorld(createWorld(config), config.getShards());
+		sharded.setClock(new SimulationClock(config.getFps(), config.getTurnBudget()));
+		Display display = new Display(sharded);
+		display.init();
+		sharded.start();
+
+		FramePacer pacer = new FramePacer(display.getRootPane(), config.getFps());
+		pacer.setPrintReports(config.isFpsReport());
+		pacer.start();
+	}
 
-				time = time2;
+	/**
+	 * Plays back an event log instead of running a World
+	 */
+	private void replay() {
+		try {
+			ReplayPlayer player = new ReplayPlayer(config.getReplayFile());
+			player.setSpeed(config.getReplaySpeed());
+			if (config.getReplayStart() >= 0) {
+				player.seek(config.getReplayStart());
+			}
+			Display display = new Display(player);
+			display.init();
+			player.start();
 
-				while (unprocessed >= frameCap) {
-					unprocessed -= frameCap;
-					canRender = true;
+			FramePacer pacer = new FramePacer(display.getRootPane(), config.getFps());
+			pacer.setPrintReports(config.isFpsReport());
+			pacer.start();
+		} catch(Exception e) {
+			System.out.println("There was an error: " + e.getMessage());
+		}
+	}
 
+	/**
+	 * Writes the rest of the event log when the program exits, which
+	 * happens when the Display is closed
+	 */
+	private static class CloseLogHook extends Thread {
+		private EventLogWriter log;
 
-					if (frameTime >= 1.0) {
-						frameTime = 0;
-						//System.out.println("FPS: " + frames);
-						frames = 0;
-					}
-				}
-				if (canRender) {
-					display.repaint();
-					frames++;
-				}
+		public CloseLogHook(EventLogWriter logIn) {
+			log = logIn;
+		}
 
+		public void run() {
+			try {
+				log.close();
+			} catch (IOException e) {
+				//already reported by the writer
 			}
-		} catch(Exception e) {
-			System.out.println("There was an error: " + e.getMessage());
 		}
 	}
 }
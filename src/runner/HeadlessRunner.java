@@ -0,0 +1,180 @@
+package runner;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import helper.EventLogWriter;
+import helper.FileParser;
+import profiling.TurnProfiler;
+import sharding.ShardedWorld;
+import world.World;
+import world.WorldSnapshot;
+
+/**
+ * Runs a World for a fixed number of turns without a display and
+ * prints a summary of the run. Optionally logs every turn, and saves the
+ * World every few turns and at the end, so a later run can resume from
+ * it. No Swing components are created, so it can run on servers without
+ * a display. With --shards the World is run by a ShardedWorld instead.
+ * @author Matthew Zane
+ *
+ */
+public class HeadlessRunner {
+	private SimulationConfig config;
+
+	public HeadlessRunner(SimulationConfig configIn) {
+		config = configIn;
+	}
+
+	public void run() throws IOException {
+		if (config.getShards() > 0) {
+			runSharded();
+			return;
+		}
+		long generationStart = System.nanoTime();
+		World world = CivilizationSimulator.createWorld(config);
+		world.setThreadCount(config.getThreads());
+		double generationTime = (System.nanoTime() - generationStart) / 1e9;
+
+		EventLogWriter log = null;
+		if (config.getEventLogFile() != null) {
+			log = new EventLogWriter(world, config.getEventLogFile());
+			log.start();
+		}
+
+		//checkpoints are not part of the measured time
+		long remaining = config.getTurns();
+		long interval = config.getCheckpointInterval() > 0 ? 
+				config.getCheckpointInterval() : remaining;
+		long startOwnerChanges = world.getTotalOwnerChanges();
+		double elapsed = 0;
+		double checkpointTime = 0;
+		while (remaining > 0) {
+			long turns = Math.min(interval, remaining);
+			long start = System.nanoTime();
+			world.runTurns(turns);
+			elapsed += (System.nanoTime() - start) / 1e9;
+			remaining -= turns;
+
+			if (config.getCheckpointFile() != null) {
+				long checkpointStart = System.nanoTime();
+				FileParser.saveWorld(world, config.getCheckpointFile());
+				checkpointTime += (System.nanoTime() - checkpointStart) / 1e9;
+			}
+		}
+
+		//waits for the writer to catch up, which is not part of the measured time
+		if (log != null) {
+			log.close();
+		}
+
+		System.out.println();
+		System.out.println("Seed:              " + world.getSeed());
+		System.out.println("Map:               " + world.getWidth() + "x" + world.getHeight() + 
+				", " + (world.getNumCivilizationIds() - 1) + " civilizations");
+		System.out.printf("%s  %.2f s%n", config.getResumeFile() == null ? 
+				"World generation:" : "World loading:   ", generationTime);
+		if (config.getCheckpointFile() != null) {
+			System.out.printf("Checkpoints:       %.2f s, last at turn %d%n", checkpointTime, 
+					world.getTurn());
+		}
+		if (log != null) {
+			System.out.printf("Event log:         %.1f MB%n", 
+					config.getEventLogFile().length() / 1e6);
+		}
+		System.out.printf("Turns:             %d in %.2f s%n", config.getTurns(), elapsed);
+		System.out.printf("Turns/sec:         %.1f%n", config.getTurns() / elapsed);
+		System.out.printf("Tiles changed/sec: %.1f%n", (world.getTotalOwnerChanges() - startOwnerChanges) / elapsed);
+		System.out.println("Surviving civs:    " + world.getCivilizations().size());
+		System.out.println("Awake chunks:      " + world.getChunkMap().getNumAwake() + " of " + 
+				world.getChunkMap().getNumChunks());
+		System.out.printf("Checksum:          %016x%n", checksum(world.getTileGrid().getOwnerIds(), 
+				world.getLatestSnapshot()));
+		printPercentiles(world.getProfiler());
+	}
+
+	/**
+	 * Runs the World split between worker processes, see ShardedWorld.
+	 * The checksum matches the one of the same run in a single process
+	 * @throws IOException
+	 */
+	private void runSharded() throws IOException {
+		long generationStart = System.nanoTime();
+		World world = CivilizationSimulator.createWorld(config);
+		double generationTime = (System.nanoTime() - generationStart) / 1e9;
+
+		long startupStart = System.nanoTime();
+		ShardedWorld sharded = new ShardedWorld(world, config.getShards());
+		//the workers hold the tiles, the World is not kept
+		world = null;
+		double startupTime = (System.nanoTime() - startupStart) / 1e9;
+
+		long startOwnerChanges = sharded.getTotalOwnerChanges();
+		long start = System.nanoTime();
+		sharded.runTurns(config.getTurns());
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		long checksum = checksum(sharded.getOwners(), sharded.getLatestSnapshot());
+		sharded.shutdown();
+
+		System.out.println();
+		System.out.println("Seed:              " + sharded.getSeed());
+		System.out.println("Map:               " + sharded.getWidth() + "x" + sharded.getHeight() + 
+				", " + (sharded.getNumCivilizationIds() - 1) + " civilizations");
+		System.out.printf("%s  %.2f s%n", config.getResumeFile() == null ? 
+				"World generation:" : "World loading:   ", generationTime);
+		System.out.printf("Shards:            %d processes, started in %.2f s%n", 
+				sharded.getNumStripes(), startupTime);
+		System.out.printf("Turns:             %d in %.2f s%n", config.getTurns(), elapsed);
+		System.out.printf("Turns/sec:         %.1f%n", config.getTurns() / elapsed);
+		System.out.printf("Tiles changed/sec: %.1f%n", (sharded.getTotalOwnerChanges() - startOwnerChanges) / elapsed);
+		System.out.println("Surviving civs:    " + sharded.getCivilizations().size());
+		System.out.println("Awake chunks:      " + sharded.getNumAwakeChunks() + " of " + 
+				sharded.getNumChunks());
+		System.out.printf("Checksum:          %016x%n", checksum);
+		printPercentiles(sharded.getProfiler());
+	}
+
+	private static void printPercentiles(TurnProfiler profiler) {
+		for (int i = 0; i < profiler.getNumPhases(); i++) {
+			double[] percentiles = profiler.getPercentiles(i);
+			System.out.printf("%-19s p50 %.3f ms, p99 %.3f ms%n", profiler.getPhaseName(i) + ":", 
+					percentiles[0], percentiles[1]);
+		}
+		System.out.printf("Peak heap:         %.1f MB%n", getPeakHeapUsage() / 1e6);
+	}
+
+	/**
+	 * Hash of the owner of every tile and of the capital of every live
+	 * civilization, to tell whether two runs ended the same
+	 * @param owners
+	 * @param snapshot - last snapshot of the run
+	 * @return
+	 */
+	private static long checksum(int[] owners, WorldSnapshot snapshot) {
+		long hash = 1;
+		for (int owner : owners) {
+			hash = 31 * hash + owner;
+		}
+		for (int i = 0; i < snapshot.getNumCivilizations(); i++) {
+			hash = 31 * hash + snapshot.getCivilizationId(i);
+			hash = 31 * hash + snapshot.getCapital(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Sum of the peak usage of every heap memory pool
+	 * @return bytes
+	 */
+	private static long getPeakHeapUsage() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -0,0 +1,240 @@
+package runner;
+
+import java.io.File;
+import java.util.Random;
+
+import world.SimulationClock;
+
+/**
+ * Settings of a run, parsed from the command line.<br>
+ * <br>
+ * Usage:<br>
+ * 	java -jar CiviliationSimulator.jar [mapLength] [numCivs] [options]<br>
+ * <br>
+ * Options:<br>
+ * 	--headless		run without a display and exit after --turns turns<br>
+ * 	--turns n		number of turns to run in headless mode<br>
+ * 	--seed n		seed of the world, random if not given<br>
+ * 	--threads n		number of simulation threads<br>
+ * 	--shards n		split the world between n worker processes<br>
+ * 	--fps n			target frames per second of the display<br>
+ * 	--turn-budget n	longest time in ms spent running turns in a frame<br>
+ * 	--fps-report		print the frame rate and paint times every 5 seconds<br>
+ * 	--resume file		continue a saved world instead of creating one<br>
+ * 	--checkpoint file	save the world to file at the end of a headless run<br>
+ * 	--checkpoint-every n	also save it every n turns<br>
+ * 	--event-log file	record every turn to an event log<br>
+ * 	--replay file		play back an event log instead of simulating<br>
+ * 	--replay-speed n	turns played per second, negative to play in reverse<br>
+ * 	--replay-from n		turn the replay starts at
+ * @author Matthew Zane
+ *
+ */
+public class SimulationConfig {
+	public static final String USAGE =
+			"Usage: java -jar CiviliationSimulator.jar [mapLength] [numCivs] [options]\n" +
+			"  --headless     run without a display and exit after --turns turns\n" +
+			"  --turns n      number of turns to run in headless mode (default 1000)\n" +
+			"  --seed n       seed of the world, random if not given\n" +
+			"  --threads n    number of simulation threads (default: number of cores)\n" +
+			"  --shards n     split the world between n worker processes (default: none)\n" +
+			"  --fps n        target frames per second of the display (default 60)\n" +
+			"  --turn-budget n  longest time in ms spent running turns in a frame (default 12)\n" +
+			"  --fps-report   print the frame rate and paint times every 5 seconds\n" +
+			"  --resume file  continue a saved world instead of creating one\n" +
+			"  --checkpoint file     save the world to file at the end of a headless run\n" +
+			"  --checkpoint-every n  also save it every n turns\n" +
+			"  --event-log file      record every turn to an event log\n" +
+			"  --replay file         play back an event log instead of simulating\n" +
+			"  --replay-speed n      turns played per second, negative to play in reverse (default 100)\n" +
+			"  --replay-from n       turn the replay starts at";
+
+	private int mapLength = 1000;
+	private int numCivs = 5;
+	private long seed = new Random().nextLong();
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int fps = SimulationClock.DEFAULT_FPS;
+	private long turnBudget = SimulationClock.DEFAULT_TURN_BUDGET;
+	private boolean fpsReport = false;
+	private int shards = 0;
+
+	private boolean headless = false;
+	private long turns = 1000;
+
+	private File resumeFile = null;
+	private File checkpointFile = null;
+	private long checkpointInterval = 0;
+
+	private File eventLogFile = null;
+	private File replayFile = null;
+	private long replaySpeed = 100;
+	private long replayStart = -1;
+
+	public int getMapLength() { return mapLength; }
+	public int getNumCivs() { return numCivs; }
+	public long getSeed() { return seed; }
+	public int getThreads() { return threads; }
+	public int getFps() { return fps; }
+
+	/**
+	 * @return longest time in milliseconds the display lets the World
+	 * spend running turns in a frame, see world.SimulationClock
+	 */
+	public long getTurnBudget() { return turnBudget; }
+
+	/**
+	 * @return whether the display prints its frame rate, see
+	 * display.FramePacer
+	 */
+	public boolean isFpsReport() { return fpsReport; }
+
+	/**
+	 * @return number of worker processes the world is split between,
+	 * 0 to run it in this process
+	 */
+	public int getShards() { return shards; }
+
+	public boolean isHeadless() { return headless; }
+	public long getTurns() { return turns; }
+
+	/**
+	 * @return save to continue from, null to create a new world
+	 */
+	public File getResumeFile() { return resumeFile; }
+
+	/**
+	 * @return file the world is saved to, null to not save it
+	 */
+	public File getCheckpointFile() { return checkpointFile; }
+
+	/**
+	 * @return turns between checkpoints, 0 to only save at the end
+	 */
+	public long getCheckpointInterval() { return checkpointInterval; }
+
+	/**
+	 * @return file every turn is logged to, null to not log them
+	 */
+	public File getEventLogFile() { return eventLogFile; }
+
+	/**
+	 * @return event log to play back, null to run a simulation
+	 */
+	public File getReplayFile() { return replayFile; }
+
+	/**
+	 * @return turns played per second, negative when playing in reverse
+	 */
+	public long getReplaySpeed() { return replaySpeed; }
+
+	/**
+	 * @return turn the replay starts at, -1 for the first logged turn
+	 */
+	public long getReplayStart() { return replayStart; }
+
+	/**
+	 * Parses command line arguments
+	 * @param args
+	 * @return
+	 * @throws IllegalArgumentException if an argument is not recognized
+	 * or a value is missing or invalid
+	 */
+	public static SimulationConfig parse(String[] args) {
+		SimulationConfig config = new SimulationConfig();
+		int numPositional = 0;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--headless")) {
+				config.headless = true;
+			}
+			else if (arg.equals("--turns")) {
+				config.turns = parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--seed")) {
+				config.seed = parseLong(arg, value(args, ++i), Long.MIN_VALUE);
+			}
+			else if (arg.equals("--threads")) {
+				config.threads = (int) parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--shards")) {
+				config.shards = (int) parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--fps")) {
+				config.fps = (int) parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--fps-report")) {
+				config.fpsReport = true;
+			}
+			else if (arg.equals("--turn-budget")) {
+				config.turnBudget = parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--resume")) {
+				config.resumeFile = new File(value(args, ++i));
+			}
+			else if (arg.equals("--checkpoint")) {
+				config.checkpointFile = new File(value(args, ++i));
+			}
+			else if (arg.equals("--checkpoint-every")) {
+				config.checkpointInterval = parseLong(arg, value(args, ++i), 1);
+			}
+			else if (arg.equals("--event-log")) {
+				config.eventLogFile = new File(value(args, ++i));
+			}
+			else if (arg.equals("--replay")) {
+				config.replayFile = new File(value(args, ++i));
+			}
+			else if (arg.equals("--replay-speed")) {
+				config.replaySpeed = parseLong(arg, value(args, ++i), -Long.MAX_VALUE);
+			}
+			else if (arg.equals("--replay-from")) {
+				config.replayStart = parseLong(arg, value(args, ++i), 0);
+			}
+			else if (arg.startsWith("--")) {
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			else if (numPositional == 0) {
+				config.mapLength = (int) parseLong("mapLength", arg, 1);
+				numPositional++;
+			}
+			else if (numPositional == 1) {
+				config.numCivs = (int) parseLong("numCivs", arg, 0);
+				numPositional++;
+			}
+			else {
+				throw new IllegalArgumentException("Unexpected argument " + arg);
+			}
+		}
+		if (config.checkpointInterval > 0 && config.checkpointFile == null) {
+			throw new IllegalArgumentException("--checkpoint-every requires --checkpoint");
+		}
+		if (config.replayFile != null && config.headless) {
+			throw new IllegalArgumentException("--replay requires a display");
+		}
+		if (config.shards > 0 && (config.replayFile != null || config.checkpointFile != null || 
+				config.eventLogFile != null)) {
+			throw new IllegalArgumentException(
+					"--shards cannot be used with --replay, --checkpoint or --event-log");
+		}
+		return config;
+	}
+
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+		}
+		return args[i];
+	}
+
+	private static long parseLong(String name, String value, long min) {
+		long parsed;
+		try {
+			parsed = Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a number: " + value);
+		}
+		if (parsed < min) {
+			throw new IllegalArgumentException(name + " must be at least " + min);
+		}
+		return parsed;
+	}
+}
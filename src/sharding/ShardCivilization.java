@@ -0,0 +1,50 @@
+package sharding;
+
+import java.awt.Color;
+
+import entity.Civilization;
+
+/**
+ * What a ShardedWorld keeps of a civilization. The territory and the
+ * frontier are split between the ShardWorkers, so only what is
+ * published with every snapshot is kept here, updated from the
+ * captures and capitals the workers send back.
+ * @author Matthew Zane
+ *
+ */
+public class ShardCivilization {
+	private int id;
+	private String name;
+	private Color color;
+
+	private int capital;
+	private int territorySize;
+
+	public int getId() { return id; }
+	public String getName() { return name; }
+	public Color getColor() { return color; }
+
+	public int getCapital() { return capital; }
+	public void setCapital(int capitalIn) { capital = capitalIn; }
+
+	public int getTerritorySize() { return territorySize; }
+
+	/**
+	 * @param civ - civilization to copy, its territory is counted by
+	 * the ShardedWorld with addTile
+	 */
+	public ShardCivilization(Civilization civ) {
+		id = civ.getId();
+		name = civ.getName();
+		color = civ.getColor();
+		capital = civ.getCapital() == null ? -1 : civ.getCapital().getIndex();
+	}
+
+	public void addTile() {
+		territorySize++;
+	}
+
+	public void removeTile() {
+		territorySize--;
+	}
+}
@@ -0,0 +1,61 @@
+package sharding;
+
+/**
+ * Messages between a ShardedWorld, its ShardWorkers and the workers
+ * themselves. Every message from the ShardedWorld starts with one of
+ * these bytes, followed by ints in big endian order. Every worker
+ * handles its messages in the order they were sent.<br>
+ * <br>
+ * A worker listens for the other workers on a port of its own, which
+ * it sends as an int once connected to the ShardedWorld. Workers take
+ * the stripes in the order they connect.<br>
+ * 	INIT: int stripe, int number of stripes, int first row of every
+ * stripe and the height of the World, int width, long seed, int number
+ * of civilization ids, int capital of each id (-1 if none), int port of
+ * the worker of every stripe, then the type ordinal of every tile from
+ * two rows above the stripe to two rows below it, and the owner of every
+ * tile from one row above to one row below it<br>
+ * 	TURN: long turn, boolean keyframe. Answered once the turn is run
+ * with int moves picked, int contested tiles, int awake chunks, int
+ * number of captures and (int tile, int old owner, int new owner) for
+ * each, int number of capitals moved and (int id, int tile) for each,
+ * and if keyframe is true the int owner of every tile of the stripe<br>
+ * 	OWNERS: answered with the int owner of every tile of the stripe<br>
+ * 	TYPES: answered with the byte type ordinal of every tile of the
+ * stripe<br>
+ * 	SHUTDOWN<br>
+ * <br>
+ * Workers connect to the workers of the stripes after theirs and send
+ * them their stripe as an int. Every pair of workers then exchanges
+ * the parts of a turn that cross between their stripes without tags,
+ * the worker of the lower stripe writing first:<br>
+ * 	once, after INIT: int number of civilizations with tiles in the
+ * stripe and (int id, int tiles) for each<br>
+ * 	FRONTIER, at the start of a turn: for every civilization with a
+ * frontier in the stripe int id and, for each partition, int number of
+ * tiles with the greatest value and int greatest value, followed by
+ * -1<br>
+ * 	CAPTURES, once the contested tiles are resolved: int number of
+ * civilizations whose territory in the stripe changed and (int id, int
+ * change) for each, int number of capitals captured and int id for
+ * each, int number of captures in the row next to the other stripe and
+ * (int tile, int new owner) for each<br>
+ * 	CAPITALS, only on turns a capital was captured: int number of
+ * capitals moved into the stripe and (int id, int tile) for each
+ * @author Matthew Zane
+ *
+ */
+public class ShardProtocol {
+	public static final byte INIT = 1;
+	public static final byte TURN = 2;
+	public static final byte OWNERS = 3;
+	public static final byte TYPES = 4;
+	public static final byte SHUTDOWN = 5;
+
+	/**
+	 * Id of Nature, which owns every tile no civilization owns
+	 */
+	public static final int NATURE = 0;
+
+	private ShardProtocol() {}
+}
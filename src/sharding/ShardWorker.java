@@ -0,0 +1,907 @@
+package sharding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import entity.Civilization;
+import entity.FrontierIndex;
+import helper.IntIntHashMap;
+import helper.RandomGenerator;
+import helper.ReseedableRandom;
+import world.ChunkMap;
+import world.Tile;
+import world.TileBitmap;
+import world.World;
+
+/**
+ * Process holding a stripe of the rows of a sharded World, see
+ * ShardedWorld. It keeps the owner and the type sum (see
+ * Civilization.calculateTileValue) of every tile of the stripe and of
+ * the rows bordering it, the part of every territory inside the stripe
+ * and the tiles of every frontier inside the stripe. Every civilization
+ * whose tiles border the stripe has a frontier in it, whichever stripe
+ * its territory is in.<br>
+ * <br>
+ * A turn is run by the workers together, each one talking directly to
+ * the others, see ShardProtocol:<br>
+ * 	the workers exchange the greatest value of every frontier and how
+ * many tiles have it, and every worker draws the move of every
+ * civilization from its random stream, the same way
+ * Civilization.takeTurn does. Frontiers pick tiles by their position in
+ * tile order, so the worker holding the picked tile knows which one it
+ * is without asking for it, and the move never leaves its stripe<br>
+ * 	every worker resolves the tiles contested in its stripe with the
+ * same random streams as the World<br>
+ * 	the workers exchange the changes to every territory, the captured
+ * capitals and the captures on the rows bordering the other stripes,
+ * then rescore their frontiers around every capture<br>
+ * 	civilizations that lost their capital pick a new one as
+ * Civilization.moveNewCapital does, the worker holding the tile tells
+ * the others<br>
+ * The captures are then sent to the ShardedWorld, and the results are
+ * the same as running the World in a single process with the same
+ * seed.<br>
+ * <br>
+ * Started by the ShardedWorld with the port to connect to:<br>
+ * 	java -cp ... sharding.ShardWorker port
+ * @author Matthew Zane
+ *
+ */
+public class ShardWorker {
+	//exchanges with the other workers, see ShardProtocol
+	private static final int TERRITORY = 0;
+	private static final int FRONTIER = 1;
+	private static final int CAPTURES = 2;
+	private static final int CAPITALS = 3;
+
+	private ServerSocket peerServer;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	//connection to the worker of every other stripe, null for this one
+	private DataInputStream[] peerIns;
+	private DataOutputStream[] peerOuts;
+
+	private int width;
+	private int height;
+	private RandomGenerator random;
+
+	private int stripe;
+	private int numStripes;
+
+	//rows of the stripe
+	private int firstRow;
+	private int endRow;
+
+	//first tile of the rows kept, one row above the stripe
+	private int base;
+
+	//indexed by tile - base, from one row above to one row below the stripe
+	private int[] owners;
+	private byte[] typeSums;
+
+	//type ordinals, from two rows above to two rows below the stripe
+	private byte[] types;
+	private int typesBase;
+
+	//by id
+	private int numIds;
+	private int[] capitals;
+	private int[] territorySizes;
+	private TileBitmap[] territories;
+	private FrontierIndex[] frontiers;
+	private ReseedableRandom[] randoms;
+
+	//tiles of every territory in every stripe, [stripe][id]
+	private int[][] stripeSizes;
+
+	//greatest value of every frontier in every stripe and the number of
+	//tiles with it, [stripe][id * 2 + partition]
+	private int[][] greatestValues;
+	private int[][] greatestCounts;
+
+	//frontier tiles of the stripe, counted like the ChunkMap of the World
+	private ChunkMap chunks;
+
+	//buffers of a turn, reused every turn
+	private long[] moves = new long[16];
+	private int numMoves = 0;
+	private int contestedTiles = 0;
+
+	//captures in the stripe, their winner and their owner before
+	private int[] captures = new int[16];
+	private int[] winners = new int[16];
+	private int[] losers = new int[16];
+	private int numCaptures = 0;
+
+	//captures on the rows bordering the stripe, sent by the other workers
+	private int[] borderCaptures = new int[16];
+	private int numBorderCaptures = 0;
+
+	//owner at the start of the turn of every tile captured this turn
+	private IntIntHashMap oldOwners = new IntIntHashMap();
+
+	//changes to the territories inside the stripe, by id, and the ids
+	//changed, once each even if their change is back to 0
+	private int[] sizeChanges;
+	private boolean[] sizeChanged;
+	private int[] changedIds = new int[16];
+	private int numChangedIds = 0;
+
+	//civilizations whose capital was captured, and the capitals moved
+	//into the stripe
+	private int[] lostCapitals = new int[16];
+	private int numLostCapitals = 0;
+	private int[] movedCapitals = new int[16];
+	private int numMovedCapitals = 0;
+
+	private int[] neighborBuffer = new int[4];
+	private int[] tileNeighbors = new int[4];
+	private int[] candidates = new int[10];
+	private int[] frontierBuffer = new int[0];
+	private int[] strengths = new int[5];
+	private int[] fighters = new int[4];
+	private ReseedableRandom shardRandom = new ReseedableRandom(0);
+
+	public static void main(String[] args) {
+		try {
+			ServerSocket peerServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+					Integer.parseInt(args[0]));
+			socket.setTcpNoDelay(true);
+			new ShardWorker(socket, peerServer).run();
+		} catch (EOFException e) {
+			//the ShardedWorld is gone
+		} catch (IOException e) {
+			System.out.println("Shard worker stopped: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param socket - connection to the ShardedWorld
+	 * @param peerServerIn - where the workers of the stripes before this
+	 * one connect
+	 * @throws IOException
+	 */
+	public ShardWorker(Socket socket, ServerSocket peerServerIn) throws IOException {
+		peerServer = peerServerIn;
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		out.writeInt(peerServer.getLocalPort());
+		out.flush();
+	}
+
+	/**
+	 * Handles messages until told to shut down
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		while (true) {
+			byte message = in.readByte();
+			switch (message) {
+			case ShardProtocol.INIT:
+				init();
+				break;
+			case ShardProtocol.TURN:
+				runTurn(in.readLong(), in.readBoolean());
+				break;
+			case ShardProtocol.OWNERS:
+				writeOwners();
+				out.flush();
+				break;
+			case ShardProtocol.TYPES:
+				out.write(types, firstRow * width - typesBase, (endRow - firstRow) * width);
+				out.flush();
+				break;
+			case ShardProtocol.SHUTDOWN:
+				return;
+			default:
+				throw new IOException("Unknown message " + message);
+			}
+		}
+	}
+
+	private void init() throws IOException {
+		stripe = in.readInt();
+		numStripes = in.readInt();
+		int[] stripeRows = new int[numStripes + 1];
+		for (int i = 0; i <= numStripes; i++) {
+			stripeRows[i] = in.readInt();
+		}
+		firstRow = stripeRows[stripe];
+		endRow = stripeRows[stripe + 1];
+		height = stripeRows[numStripes];
+		width = in.readInt();
+		random = new RandomGenerator(in.readLong());
+
+		numIds = in.readInt();
+		capitals = new int[numIds];
+		for (int id = 0; id < numIds; id++) {
+			capitals[id] = in.readInt();
+		}
+		int[] ports = new int[numStripes];
+		for (int i = 0; i < numStripes; i++) {
+			ports[i] = in.readInt();
+		}
+
+		int typesFirstRow = Math.max(firstRow - 2, 0);
+		int typesEndRow = Math.min(endRow + 2, height);
+		typesBase = typesFirstRow * width;
+		types = new byte[(typesEndRow - typesFirstRow) * width];
+		in.readFully(types);
+
+		int ownersFirstRow = Math.max(firstRow - 1, 0);
+		int ownersEndRow = Math.min(endRow + 1, height);
+		base = ownersFirstRow * width;
+		owners = new int[(ownersEndRow - ownersFirstRow) * width];
+		typeSums = new byte[owners.length];
+		Tile.TileType[] tileTypes = Tile.TileType.values();
+		for (int i = 0; i < owners.length; i++) {
+			owners[i] = in.readInt();
+
+			int tile = base + i;
+			int typeSum = tileTypes[types[tile - typesBase]].getValue();
+			int numNeighbors = getNeighbors(tile, neighborBuffer);
+			for (int j = 0; j < numNeighbors; j++) {
+				typeSum += tileTypes[types[neighborBuffer[j] - typesBase]].getValue();
+			}
+			typeSums[i] = (byte) typeSum;
+		}
+
+		territorySizes = new int[numIds];
+		territories = new TileBitmap[numIds];
+		frontiers = new FrontierIndex[numIds];
+		randoms = new ReseedableRandom[numIds];
+		sizeChanges = new int[numIds];
+		sizeChanged = new boolean[numIds];
+		stripeSizes = new int[numStripes][numIds];
+		greatestValues = new int[numStripes][numIds * 2];
+		greatestCounts = new int[numStripes][numIds * 2];
+		for (int id = 1; id < numIds; id++) {
+			territories[id] = new TileBitmap();
+			frontiers[id] = new FrontierIndex();
+			randoms[id] = new ReseedableRandom(0);
+		}
+		chunks = new ChunkMap(width, height);
+
+		for (int i = firstRow * width; i < endRow * width; i++) {
+			int owner = owners[i - base];
+			if (owner != ShardProtocol.NATURE) {
+				territories[owner].add(i);
+				stripeSizes[stripe][owner]++;
+			}
+		}
+
+		connectPeers(ports);
+		exchange(TERRITORY);
+		for (int i = 0; i < numStripes; i++) {
+			for (int id = 0; id < numIds; id++) {
+				territorySizes[id] += stripeSizes[i][id];
+			}
+		}
+
+		for (int i = firstRow * width; i < endRow * width; i++) {
+			rescoreTile(i);
+		}
+	}
+
+	/**
+	 * Connects to the workers of the stripes after this one, and waits
+	 * for those of the stripes before it to connect
+	 * @param ports - port of the worker of every stripe
+	 * @throws IOException
+	 */
+	private void connectPeers(int[] ports) throws IOException {
+		peerIns = new DataInputStream[numStripes];
+		peerOuts = new DataOutputStream[numStripes];
+		for (int i = stripe + 1; i < numStripes; i++) {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), ports[i]);
+			openPeer(socket, i);
+			peerOuts[i].writeInt(stripe);
+			peerOuts[i].flush();
+		}
+		for (int i = 0; i < stripe; i++) {
+			Socket socket = peerServer.accept();
+			DataInputStream peerIn = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			int peer = peerIn.readInt();
+			openPeer(socket, peer);
+			peerIns[peer] = peerIn;
+		}
+		peerServer.close();
+	}
+
+	private void openPeer(Socket socket, int peer) throws IOException {
+		socket.setTcpNoDelay(true);
+		peerIns[peer] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		peerOuts[peer] = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+	}
+
+	/**
+	 * Exchanges a part of the turn with every other worker. The worker
+	 * of the lower stripe of every pair writes first, and every worker
+	 * goes through the others in stripe order, so the exchanges never
+	 * wait on each other in a circle
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void exchange(int exchange) throws IOException {
+		for (int peer = 0; peer < numStripes; peer++) {
+			if (peer < stripe) {
+				read(exchange, peer);
+				write(exchange, peer);
+			}
+			else if (peer > stripe) {
+				write(exchange, peer);
+				read(exchange, peer);
+			}
+		}
+	}
+
+	private void write(int exchange, int peer) throws IOException {
+		DataOutputStream peerOut = peerOuts[peer];
+		switch (exchange) {
+		case TERRITORY:
+			int numCivs = 0;
+			for (int id = 1; id < numIds; id++) {
+				if (stripeSizes[stripe][id] > 0) {
+					numCivs++;
+				}
+			}
+			peerOut.writeInt(numCivs);
+			for (int id = 1; id < numIds; id++) {
+				if (stripeSizes[stripe][id] > 0) {
+					peerOut.writeInt(id);
+					peerOut.writeInt(stripeSizes[stripe][id]);
+				}
+			}
+			break;
+		case FRONTIER:
+			for (int id = 1; id < numIds; id++) {
+				if (frontiers[id].size() > 0) {
+					peerOut.writeInt(id);
+					for (int partition = 0; partition < 2; partition++) {
+						peerOut.writeInt(greatestCounts[stripe][id * 2 + partition]);
+						peerOut.writeInt(greatestValues[stripe][id * 2 + partition]);
+					}
+				}
+			}
+			peerOut.writeInt(-1);
+			break;
+		case CAPTURES:
+			peerOut.writeInt(numChangedIds);
+			for (int i = 0; i < numChangedIds; i++) {
+				peerOut.writeInt(changedIds[i]);
+				peerOut.writeInt(sizeChanges[changedIds[i]]);
+			}
+			int numLost = 0;
+			for (int i = 0; i < numCaptures; i++) {
+				if (isCapitalCapture(i)) {
+					numLost++;
+				}
+			}
+			peerOut.writeInt(numLost);
+			for (int i = 0; i < numCaptures; i++) {
+				if (isCapitalCapture(i)) {
+					peerOut.writeInt(losers[i]);
+				}
+			}
+			//the row of this stripe next to the peer, if it borders it
+			int row = peer == stripe - 1 ? firstRow : peer == stripe + 1 ? endRow - 1 : -1;
+			int numBorder = 0;
+			for (int i = 0; i < numCaptures; i++) {
+				if (captures[i] / width == row) {
+					numBorder++;
+				}
+			}
+			peerOut.writeInt(numBorder);
+			for (int i = 0; i < numCaptures; i++) {
+				if (captures[i] / width == row) {
+					peerOut.writeInt(captures[i]);
+					peerOut.writeInt(winners[i]);
+				}
+			}
+			break;
+		case CAPITALS:
+			peerOut.writeInt(numMovedCapitals);
+			for (int i = 0; i < numMovedCapitals; i++) {
+				peerOut.writeInt(movedCapitals[i * 2]);
+				peerOut.writeInt(movedCapitals[i * 2 + 1]);
+			}
+			break;
+		}
+		peerOut.flush();
+	}
+
+	private void read(int exchange, int peer) throws IOException {
+		DataInputStream peerIn = peerIns[peer];
+		switch (exchange) {
+		case TERRITORY:
+			int numCivs = peerIn.readInt();
+			for (int i = 0; i < numCivs; i++) {
+				int id = peerIn.readInt();
+				stripeSizes[peer][id] = peerIn.readInt();
+			}
+			break;
+		case FRONTIER:
+			int[] values = greatestValues[peer];
+			int[] counts = greatestCounts[peer];
+			Arrays.fill(counts, 0);
+			for (int id = peerIn.readInt(); id >= 0; id = peerIn.readInt()) {
+				for (int partition = 0; partition < 2; partition++) {
+					counts[id * 2 + partition] = peerIn.readInt();
+					values[id * 2 + partition] = peerIn.readInt();
+				}
+			}
+			break;
+		case CAPTURES:
+			int numChanged = peerIn.readInt();
+			for (int i = 0; i < numChanged; i++) {
+				int id = peerIn.readInt();
+				int change = peerIn.readInt();
+				stripeSizes[peer][id] += change;
+				territorySizes[id] += change;
+			}
+			int numLost = peerIn.readInt();
+			for (int i = 0; i < numLost; i++) {
+				addLostCapital(peerIn.readInt());
+			}
+			int numBorder = peerIn.readInt();
+			for (int i = 0; i < numBorder; i++) {
+				int tile = peerIn.readInt();
+				oldOwners.put(tile, owners[tile - base]);
+				owners[tile - base] = peerIn.readInt();
+				if (numBorderCaptures == borderCaptures.length) {
+					borderCaptures = Arrays.copyOf(borderCaptures, numBorderCaptures * 2);
+				}
+				borderCaptures[numBorderCaptures++] = tile;
+			}
+			break;
+		case CAPITALS:
+			int numMoved = peerIn.readInt();
+			for (int i = 0; i < numMoved; i++) {
+				int id = peerIn.readInt();
+				moveCapital(id, peerIn.readInt());
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Runs a turn together with the other workers and sends the
+	 * captures of the stripe to the ShardedWorld
+	 * @param turn
+	 * @param keyframe - whether the owners of the stripe are sent too
+	 * @throws IOException
+	 */
+	private void runTurn(long turn, boolean keyframe) throws IOException {
+		//the frontiers at the start of the turn
+		int[] values = greatestValues[stripe];
+		int[] counts = greatestCounts[stripe];
+		for (int id = 1; id < numIds; id++) {
+			for (int partition = 0; partition < 2; partition++) {
+				counts[id * 2 + partition] = frontiers[id].countMostValuableTiles(partition);
+				if (counts[id * 2 + partition] > 0) {
+					values[id * 2 + partition] = frontiers[id].getGreatestValue(partition);
+				}
+			}
+		}
+		exchange(FRONTIER);
+
+		//civilizations without a tile have no frontier to move into
+		numMoves = 0;
+		int movesPicked = 0;
+		for (int id = 1; id < numIds; id++) {
+			if (territorySizes[id] > 0) {
+				takeTurn(id, turn);
+				movesPicked++;
+			}
+		}
+		resolve(turn);
+
+		//territory sizes are only changed once every tile is resolved
+		oldOwners.clear();
+		numBorderCaptures = 0;
+		numLostCapitals = 0;
+		for (int i = 0; i < numCaptures; i++) {
+			capture(captures[i], winners[i], losers[i]);
+			if (isCapitalCapture(i)) {
+				addLostCapital(losers[i]);
+			}
+		}
+		exchange(CAPTURES);
+		for (int i = 0; i < numChangedIds; i++) {
+			int id = changedIds[i];
+			stripeSizes[stripe][id] += sizeChanges[id];
+			territorySizes[id] += sizeChanges[id];
+			sizeChanges[id] = 0;
+			sizeChanged[id] = false;
+		}
+		numChangedIds = 0;
+
+		for (int i = 0; i < numCaptures; i++) {
+			rescoreAround(captures[i]);
+		}
+		for (int i = 0; i < numBorderCaptures; i++) {
+			rescoreAround(borderCaptures[i]);
+		}
+
+		//every worker knows of every captured capital, so they all
+		//draw the new capitals and take part in the exchange
+		if (numLostCapitals > 0) {
+			Arrays.sort(lostCapitals, 0, numLostCapitals);
+			numMovedCapitals = 0;
+			for (int i = 0; i < numLostCapitals; i++) {
+				pickNewCapital(lostCapitals[i]);
+			}
+			exchange(CAPITALS);
+			for (int i = 0; i < numMovedCapitals; i++) {
+				moveCapital(movedCapitals[i * 2], movedCapitals[i * 2 + 1]);
+			}
+		}
+
+		out.writeInt(movesPicked);
+		out.writeInt(contestedTiles);
+		out.writeInt(chunks.getNumAwake());
+		out.writeInt(numCaptures);
+		for (int i = 0; i < numCaptures; i++) {
+			out.writeInt(captures[i]);
+			out.writeInt(losers[i]);
+			out.writeInt(winners[i]);
+		}
+		out.writeInt(numLostCapitals > 0 ? numMovedCapitals : 0);
+		for (int i = 0; numLostCapitals > 0 && i < numMovedCapitals; i++) {
+			out.writeInt(movedCapitals[i * 2]);
+			out.writeInt(movedCapitals[i * 2 + 1]);
+		}
+		if (keyframe) {
+			writeOwners();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Draws the move of a civilization the same way Civilization.takeTurn
+	 * does, from the frontier of every stripe. Every worker draws every
+	 * move, only the worker holding the tile keeps it
+	 * @param id
+	 * @param turn
+	 */
+	private void takeTurn(int id, long turn) {
+		ReseedableRandom civRandom = randoms[id];
+		civRandom.setSeed(random.civilizationSeed(id, turn));
+		while (true) {
+			int rand = (int)(civRandom.nextDouble() * 100);
+			int partition = rand < 50 ? FrontierIndex.UNOWNED : FrontierIndex.OWNED;
+			int key = id * 2 + partition;
+
+			//the tiles with the greatest value, in tile order and so
+			//in stripe order
+			int greatestValue = Integer.MIN_VALUE;
+			int count = 0;
+			for (int i = 0; i < numStripes; i++) {
+				if (greatestCounts[i][key] > 0) {
+					if (greatestValues[i][key] > greatestValue) {
+						greatestValue = greatestValues[i][key];
+						count = greatestCounts[i][key];
+					}
+					else if (greatestValues[i][key] == greatestValue) {
+						count += greatestCounts[i][key];
+					}
+				}
+			}
+			if (count == 0) {
+				continue;
+			}
+
+			int rank = (int)(civRandom.nextDouble() * count);
+			for (int i = 0; i < numStripes; i++) {
+				if (greatestCounts[i][key] == 0 || greatestValues[i][key] != greatestValue) {
+					continue;
+				}
+				if (rank < greatestCounts[i][key]) {
+					if (i == stripe) {
+						addMove(frontiers[id].selectMostValuableTile(partition, rank), id);
+					}
+					return;
+				}
+				rank -= greatestCounts[i][key];
+			}
+		}
+	}
+
+	private void addMove(int tile, int id) {
+		if (numMoves == moves.length) {
+			moves = Arrays.copyOf(moves, numMoves * 2);
+		}
+		moves[numMoves++] = (long) tile << 32 | id;
+	}
+
+	/**
+	 * Resolves the contested tiles of the stripe, grouped into shards of
+	 * World.SHARD_ROWS rows like World.resolveMoves does, against the
+	 * state at the start of the turn
+	 * @param turn
+	 */
+	private void resolve(long turn) {
+		//sorted by tile, then by id
+		Arrays.sort(moves, 0, numMoves);
+		numCaptures = 0;
+		contestedTiles = 0;
+		int shard = -1;
+		int move = 0;
+		while (move < numMoves) {
+			int tile = (int) (moves[move] >>> 32);
+			int numFighters = 0;
+			for (; move < numMoves && (int) (moves[move] >>> 32) == tile; move++) {
+				if (numFighters == fighters.length) {
+					fighters = Arrays.copyOf(fighters, numFighters * 2);
+					strengths = new int[numFighters * 2 + 1];
+				}
+				fighters[numFighters++] = (int) moves[move];
+			}
+			contestedTiles++;
+
+			if (tile / width / World.SHARD_ROWS != shard) {
+				shard = tile / width / World.SHARD_ROWS;
+				shardRandom.setSeed(random.shardSeed(shard, turn));
+			}
+			int owner = owners[tile - base];
+			for (int i = 0; i < numFighters; i++) {
+				strengths[i] = getStrength(fighters[i], tile, owner);
+			}
+			strengths[numFighters] = getStrength(owner, tile, owner);
+			int winner = World.resolveCombat(strengths, numFighters + 1, shardRandom);
+			if (winner < numFighters) {
+				if (numCaptures == captures.length) {
+					captures = Arrays.copyOf(captures, numCaptures * 2);
+					winners = Arrays.copyOf(winners, numCaptures * 2);
+					losers = Arrays.copyOf(losers, numCaptures * 2);
+				}
+				captures[numCaptures] = tile;
+				winners[numCaptures] = fighters[winner];
+				losers[numCaptures++] = owner;
+			}
+		}
+	}
+
+	/**
+	 * Same as Civilization.getStrength, and Integer.MIN_VALUE for Nature
+	 * @param id
+	 * @param tile
+	 * @param owner - owner of the tile
+	 * @return
+	 */
+	private int getStrength(int id, int tile, int owner) {
+		if (id == ShardProtocol.NATURE) {
+			return Integer.MIN_VALUE;
+		}
+		int penalty = capitals[id] < 0 ? 0 : Civilization.calculateDistancePenalty(
+				Civilization.calculateSquaredDistance(width, capitals[id], tile));
+		return Civilization.calculateStrength(territorySizes[id], penalty, id == owner);
+	}
+
+	private boolean isCapitalCapture(int capture) {
+		return losers[capture] != ShardProtocol.NATURE &&
+				capitals[losers[capture]] == captures[capture];
+	}
+
+	/**
+	 * Changes the owner of a tile of the stripe
+	 * @param tile
+	 * @param winner
+	 * @param loser - owner of the tile before
+	 */
+	private void capture(int tile, int winner, int loser) {
+		oldOwners.put(tile, loser);
+		owners[tile - base] = winner;
+		territories[winner].add(tile);
+		changeSize(winner, 1);
+		if (loser != ShardProtocol.NATURE) {
+			territories[loser].remove(tile);
+			changeSize(loser, -1);
+		}
+	}
+
+	private void changeSize(int id, int change) {
+		if (!sizeChanged[id]) {
+			if (numChangedIds == changedIds.length) {
+				changedIds = Arrays.copyOf(changedIds, numChangedIds * 2);
+			}
+			changedIds[numChangedIds++] = id;
+			sizeChanged[id] = true;
+		}
+		sizeChanges[id] += change;
+	}
+
+	private void addLostCapital(int id) {
+		if (numLostCapitals == lostCapitals.length) {
+			lostCapitals = Arrays.copyOf(lostCapitals, numLostCapitals * 2);
+		}
+		lostCapitals[numLostCapitals++] = id;
+	}
+
+	/**
+	 * Rescores the tiles of the stripe whose place in a frontier may
+	 * have changed with the owner of a tile
+	 * @param tile - captured tile, in the stripe or next to it
+	 */
+	private void rescoreAround(int tile) {
+		rescoreTile(tile);
+		int numNeighbors = getNeighbors(tile, tileNeighbors);
+		for (int i = 0; i < numNeighbors; i++) {
+			rescoreTile(tileNeighbors[i]);
+		}
+	}
+
+	/**
+	 * Puts a tile of the stripe in the frontier of every civilization
+	 * that owns or owned one of its neighbors this turn, or takes it
+	 * out, from the owners of the tile and its neighbors. This ends the
+	 * same as the updates Civilization.acquireTile makes one capture at
+	 * a time
+	 * @param tile
+	 */
+	private void rescoreTile(int tile) {
+		if (tile < firstRow * width || tile >= endRow * width) {
+			return;
+		}
+		int numCandidates = addCandidates(tile, 0);
+		int numNeighbors = getNeighbors(tile, neighborBuffer);
+		for (int i = 0; i < numNeighbors; i++) {
+			numCandidates = addCandidates(neighborBuffer[i], numCandidates);
+		}
+
+		int owner = owners[tile - base];
+		for (int i = 0; i < numCandidates; i++) {
+			int id = candidates[i];
+			int contacts = 0;
+			for (int j = 0; j < numNeighbors; j++) {
+				if (owners[neighborBuffer[j] - base] == id) {
+					contacts++;
+				}
+			}
+			FrontierIndex frontier = frontiers[id];
+			if (owner == id || contacts == 0) {
+				if (frontier.contains(tile)) {
+					frontier.remove(tile);
+					chunks.removeFrontierTile(tile);
+				}
+				continue;
+			}
+			if (!frontier.contains(tile)) {
+				chunks.addFrontierTile(tile);
+			}
+			scoreFrontierTile(id, tile, contacts);
+		}
+	}
+
+	/**
+	 * Adds the owner of a tile, and its owner at the start of the turn,
+	 * to the candidates if they are civilizations not in it yet
+	 * @param tile
+	 * @param numCandidates
+	 * @return number of candidates
+	 */
+	private int addCandidates(int tile, int numCandidates) {
+		numCandidates = addCandidate(owners[tile - base], numCandidates);
+		int oldOwner = oldOwners.get(tile);
+		if (oldOwner != IntIntHashMap.NO_VALUE) {
+			numCandidates = addCandidate(oldOwner, numCandidates);
+		}
+		return numCandidates;
+	}
+
+	private int addCandidate(int id, int numCandidates) {
+		if (id == ShardProtocol.NATURE) {
+			return numCandidates;
+		}
+		for (int i = 0; i < numCandidates; i++) {
+			if (candidates[i] == id) {
+				return numCandidates;
+			}
+		}
+		candidates[numCandidates] = id;
+		return numCandidates + 1;
+	}
+
+	/**
+	 * Adds a tile to a frontier or updates its partition and value,
+	 * like Civilization.scoreFrontierTile
+	 * @param id
+	 * @param tile
+	 * @param contacts - neighbors of the tile the civilization owns
+	 */
+	private void scoreFrontierTile(int id, int tile, int contacts) {
+		int partition = owners[tile - base] == ShardProtocol.NATURE ?
+				FrontierIndex.UNOWNED : FrontierIndex.OWNED;
+		int penalty = capitals[id] < 0 ? 0 : Civilization.calculateDistancePenalty(
+				Civilization.calculateSquaredDistance(width, capitals[id], tile));
+		frontiers[id].put(tile, partition,
+				Civilization.calculateTileValue(typeSums[tile - base], contacts, penalty));
+		frontiers[id].setContacts(tile, contacts);
+	}
+
+	/**
+	 * Draws the new capital of a civilization like
+	 * Civilization.moveNewCapital, from its territory in every stripe.
+	 * Every worker draws it, only the worker holding the tile picks it
+	 * @param id
+	 */
+	private void pickNewCapital(int id) {
+		if (territorySizes[id] == 0) {
+			return;
+		}
+		int rank = (int) (randoms[id].nextDouble() * territorySizes[id]);
+		int i = 0;
+		while (rank >= stripeSizes[i][id]) {
+			rank -= stripeSizes[i++][id];
+		}
+		if (i == stripe) {
+			if ((numMovedCapitals + 1) * 2 > movedCapitals.length) {
+				movedCapitals = Arrays.copyOf(movedCapitals, movedCapitals.length * 2);
+			}
+			movedCapitals[numMovedCapitals * 2] = id;
+			movedCapitals[numMovedCapitals * 2 + 1] = territories[id].select(rank);
+			numMovedCapitals++;
+		}
+	}
+
+	/**
+	 * Moves a capital and rescores the frontier of the civilization in
+	 * the stripe, like Civilization.setCapital
+	 * @param id
+	 * @param tile
+	 */
+	private void moveCapital(int id, int tile) {
+		capitals[id] = tile;
+		FrontierIndex frontier = frontiers[id];
+		if (frontierBuffer.length < frontier.size()) {
+			frontierBuffer = new int[frontier.size() * 2];
+		}
+		int count = frontier.getTiles(frontierBuffer);
+		for (int i = 0; i < count; i++) {
+			scoreFrontierTile(id, frontierBuffer[i], frontier.getContacts(frontierBuffer[i]));
+		}
+	}
+
+	private void writeOwners() throws IOException {
+		for (int i = firstRow * width; i < endRow * width; i++) {
+			out.writeInt(owners[i - base]);
+		}
+	}
+
+	/**
+	 * Same as TileGrid.getNeighbors, for the whole World
+	 * @param index
+	 * @param out
+	 * @return
+	 */
+	private int getNeighbors(int index, int[] out) {
+		int x = index % width;
+		int count = 0;
+		if (x > 0) {
+			out[count++] = index - 1;
+		}
+		if (x < width - 1) {
+			out[count++] = index + 1;
+		}
+		if (index >= width) {
+			out[count++] = index - width;
+		}
+		if (index < width * height - width) {
+			out[count++] = index + width;
+		}
+		return count;
+	}
+}
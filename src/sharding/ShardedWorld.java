@@ -0,0 +1,524 @@
+package sharding;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+import profiling.TurnProfiler;
+import world.CivilizationRegistry;
+import world.SimulationClock;
+import world.SnapshotSource;
+import world.TileGrid;
+import world.World;
+import world.WorldSnapshot;
+
+/**
+ * Runs a World split into stripes of rows, each held by a ShardWorker
+ * in its own process, so the tiles, territories and frontiers of a
+ * large World are spread over several JVMs. The workers connect to the
+ * ShardedWorld and to each other over the loopback interface, see
+ * ShardProtocol.<br>
+ * <br>
+ * The workers run the turns between themselves: they pick the moves,
+ * resolve the tiles contested in their stripe and exchange what
+ * crosses from one stripe to another, see ShardWorker. The
+ * ShardedWorld only starts every turn, waits for every worker to finish
+ * it and merges the captures they send back into the published
+ * snapshots, so it keeps no tile of the World. Stripes are made of
+ * whole shards of World.SHARD_ROWS rows, resolved with the same random
+ * streams as the World, and the results are the same as running the
+ * World in a single process with the same seed.<br>
+ * <br>
+ * How to use:<br>
+ * 	ShardedWorld sharded = new ShardedWorld(world, 4);<br>
+ * 	sharded.runTurns(1000);<br>
+ * 	sharded.shutdown();
+ * @author Matthew Zane
+ *
+ */
+public class ShardedWorld extends Thread implements SnapshotSource {
+	//longest wait for a worker to connect, in milliseconds
+	private static final int CONNECT_TIMEOUT = 60000;
+
+	private double time;
+	private long turn;
+	private long totalOwnerChanges;
+	private long seed;
+
+	private int width;
+	private int height;
+	private int numChunks;
+	private int numAwakeChunks;
+
+	//tile types for the display, only gathered from the workers when
+	//asked for, see getTileGrid
+	private TileGrid displayGrid;
+
+	//every civilization ever created and the live ones, with the same
+	//ids as in the World. Nature is registered without one
+	private CivilizationRegistry<ShardCivilization> civilizations =
+			new CivilizationRegistry<ShardCivilization>();
+	private Color[] colorsById;
+
+	//first row of every stripe, followed by the height of the World
+	private int[] stripeRows;
+
+	//connection to the worker of each stripe
+	private Process[] workers;
+	private Socket[] sockets;
+	private DataInputStream[] ins;
+	private DataOutputStream[] outs;
+
+	//tiles whose owner changed this turn, their old and new owner
+	private int[] changedTiles = new int[1024];
+	private int[] changedOldOwners = new int[1024];
+	private int[] changedOwners = new int[1024];
+	private int numChangedTiles = 0;
+
+	//capitals moved this turn, as id and tile
+	private int[] movedCapitals = new int[16];
+	private int numMovedCapitals = 0;
+
+	//capitals moved and civilizations eliminated since the last
+	//snapshot, as published in it, see WorldSnapshot
+	private int[] capitalMoves = new int[48];
+	private int numCapitalMoves = 0;
+	private int[] eliminations = new int[32];
+	private int numEliminations = 0;
+
+	private volatile WorldSnapshot latestSnapshot;
+	private volatile boolean keyframeRequested = false;
+
+	private TurnProfiler profiler = new TurnProfiler();
+
+	//paces the turns when running on its own thread
+	private SimulationClock clock = new SimulationClock();
+
+	public double getTime() { return time; }
+	public long getTurn() { return turn; }
+	public long getTotalOwnerChanges() { return totalOwnerChanges; }
+	public long getSeed() { return seed; }
+	public TurnProfiler getProfiler() { return profiler; }
+	public SimulationClock getClock() { return clock; }
+	public void setClock(SimulationClock clockIn) { clock = clockIn; }
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+
+	/**
+	 * Chunks with a frontier tile in them, see ChunkMap, at the end of
+	 * the last turn
+	 * @return
+	 */
+	public int getNumAwakeChunks() { return numAwakeChunks; }
+	public int getNumChunks() { return numChunks; }
+
+	/**
+	 * Read only view of the live civilizations, not in id order, see
+	 * CivilizationRegistry
+	 * @return
+	 */
+	public List<ShardCivilization> getCivilizations() { return civilizations.getLiveList(); }
+	public int getNumCivilizationIds() { return civilizations.getNumIds(); }
+	public int getNumStripes() { return workers.length; }
+
+	public WorldSnapshot getLatestSnapshot() { return latestSnapshot; }
+	public void requestKeyframe() { keyframeRequested = true; }
+
+	/**
+	 * Splits a World into stripes and starts a worker for each. Nothing
+	 * of the World is kept, so it can be dropped afterwards, and it must
+	 * not be run
+	 * @param world - newly created or loaded World
+	 * @param numShards - number of workers, at most one per shard of
+	 * World.SHARD_ROWS rows
+	 * @throws IOException if a worker could not be started
+	 */
+	public ShardedWorld(World world, int numShards) throws IOException {
+		time = world.getTime();
+		turn = world.getTurn();
+		totalOwnerChanges = world.getTotalOwnerChanges();
+		seed = world.getSeed();
+		TileGrid grid = world.getTileGrid();
+		width = grid.getWidth();
+		height = grid.getHeight();
+		numChunks = world.getChunkMap().getNumChunks();
+		numAwakeChunks = world.getChunkMap().getNumAwake();
+
+		//whole shards, balanced between the stripes
+		int numShardRows = (height + World.SHARD_ROWS - 1) / World.SHARD_ROWS;
+		int numStripes = Math.min(numShards, numShardRows);
+		stripeRows = new int[numStripes + 1];
+		for (int i = 0; i < numStripes; i++) {
+			stripeRows[i] = i * numShardRows / numStripes * World.SHARD_ROWS;
+		}
+		stripeRows[numStripes] = height;
+
+		colorsById = new Color[world.getNumCivilizationIds()];
+		civilizations.register(null);
+		for (int id = 1; id < colorsById.length; id++) {
+			ShardCivilization civ = new ShardCivilization(world.getCivilization(id));
+			civilizations.register(civ);
+			colorsById[id] = civ.getColor();
+		}
+		for (int i = 0; i < grid.getSize(); i++) {
+			if (grid.getOwnerId(i) != ShardProtocol.NATURE) {
+				civilizations.get(grid.getOwnerId(i)).addTile();
+			}
+		}
+		for (int id = 1; id < colorsById.length; id++) {
+			if (world.getCivilizationRegistry().isLive(id)) {
+				civilizations.addLive(id);
+				recordCapitalMove(id, -1, civilizations.get(id).getCapital());
+				//saved without a tile, eliminated on the first turn
+				if (civilizations.get(id).getTerritorySize() == 0) {
+					civilizations.reportEmptied(id);
+				}
+			}
+		}
+
+		startWorkers(grid);
+		publishSnapshot(grid.getOwnerIds().clone());
+	}
+
+	/**
+	 * Starts a worker process for each stripe and hands it its rows
+	 * @param grid - grid of the World being split
+	 * @throws IOException
+	 */
+	private void startWorkers(TileGrid grid) throws IOException {
+		int numStripes = stripeRows.length - 1;
+		workers = new Process[numStripes];
+		sockets = new Socket[numStripes];
+		ins = new DataInputStream[numStripes];
+		outs = new DataOutputStream[numStripes];
+		int[] ports = new int[numStripes];
+
+		String java = System.getProperty("java.home") + File.separator + "bin" +
+				File.separator + "java";
+		try (ServerSocket server = new ServerSocket(0, numStripes,
+				InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			for (int i = 0; i < numStripes; i++) {
+				workers[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+						ShardWorker.class.getName(), "" + server.getLocalPort()).inheritIO().start();
+			}
+			//workers take the stripes in the order they connect
+			for (int i = 0; i < numStripes; i++) {
+				sockets[i] = server.accept();
+				sockets[i].setTcpNoDelay(true);
+				ins[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream()));
+				outs[i] = new DataOutputStream(new BufferedOutputStream(
+						sockets[i].getOutputStream()));
+				ports[i] = ins[i].readInt();
+			}
+		}
+
+		for (int i = 0; i < numStripes; i++) {
+			DataOutputStream out = outs[i];
+			out.writeByte(ShardProtocol.INIT);
+			out.writeInt(i);
+			out.writeInt(numStripes);
+			for (int row : stripeRows) {
+				out.writeInt(row);
+			}
+			out.writeInt(width);
+			out.writeLong(seed);
+			out.writeInt(civilizations.getNumIds());
+			out.writeInt(-1);
+			for (int id = 1; id < civilizations.getNumIds(); id++) {
+				out.writeInt(civilizations.get(id).getCapital());
+			}
+			for (int port : ports) {
+				out.writeInt(port);
+			}
+			for (int tile = Math.max(stripeRows[i] - 2, 0) * width;
+					tile < Math.min(stripeRows[i + 1] + 2, height) * width; tile++) {
+				out.writeByte(grid.getTypeOrdinal(tile));
+			}
+			for (int tile = Math.max(stripeRows[i] - 1, 0) * width;
+					tile < Math.min(stripeRows[i + 1] + 1, height) * width; tile++) {
+				out.writeInt(grid.getOwnerId(tile));
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Stops every worker and waits for them to exit
+	 * @throws IOException
+	 */
+	public void shutdown() throws IOException {
+		for (int i = 0; i < workers.length; i++) {
+			outs[i].writeByte(ShardProtocol.SHUTDOWN);
+			outs[i].flush();
+			sockets[i].close();
+		}
+		for (Process worker : workers) {
+			try {
+				worker.waitFor();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Owner of every tile, gathered from the workers
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized int[] getOwners() throws IOException {
+		for (DataOutputStream out : outs) {
+			out.writeByte(ShardProtocol.OWNERS);
+			out.flush();
+		}
+		int[] owners = new int[width * height];
+		readOwners(owners);
+		return owners;
+	}
+
+	private void readOwners(int[] owners) throws IOException {
+		for (int i = 0; i < workers.length; i++) {
+			for (int tile = stripeRows[i] * width; tile < stripeRows[i + 1] * width; tile++) {
+				owners[tile] = ins[i].readInt();
+			}
+		}
+	}
+
+	/**
+	 * Grid with the tile types of the World, gathered from the workers
+	 * the first time it is asked for. Owners are not kept in it
+	 * @return
+	 */
+	public synchronized TileGrid getTileGrid() {
+		if (displayGrid != null) {
+			return displayGrid;
+		}
+		TileGrid grid = new TileGrid(width, height, ShardProtocol.NATURE);
+		try {
+			for (DataOutputStream out : outs) {
+				out.writeByte(ShardProtocol.TYPES);
+				out.flush();
+			}
+			for (int i = 0; i < workers.length; i++) {
+				for (int tile = stripeRows[i] * width; tile < stripeRows[i + 1] * width; tile++) {
+					grid.setTypeOrdinal(tile, ins[i].readByte());
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the tile types: " + e.getMessage());
+		}
+		displayGrid = grid;
+		return displayGrid;
+	}
+
+	/**
+	 * Runs a number of turns on the calling thread, as fast as possible
+	 * @param numTurns
+	 * @throws IOException if a worker failed
+	 */
+	public void runTurns(long numTurns) throws IOException {
+		for (long i = 0; i < numTurns; i++) {
+			runSingleTurn();
+		}
+	}
+
+	/**
+	 * Runs turns as the clock allows, see SimulationClock
+	 */
+	public void run() {
+		try {
+			while (true) {
+				int numTurns = clock.awaitFrame();
+				for (int i = 0; i < numTurns && clock.hasTimeLeft(); i++) {
+					runSingleTurn();
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Sharded world stopped: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs a turn and publishes its snapshot. The time the workers take
+	 * to run the turn is profiled as TAKE_TURNS, merging their captures
+	 * as RESOLVE_MOVES
+	 * @throws IOException
+	 */
+	private synchronized void runSingleTurn() throws IOException {
+		profiler.begin(turn + 1);
+		updateCivilizations();
+		profiler.endPhase(TurnProfiler.UPDATE_CIVILIZATIONS);
+
+		boolean keyframe = keyframeRequested;
+		keyframeRequested = false;
+		for (DataOutputStream out : outs) {
+			out.writeByte(ShardProtocol.TURN);
+			out.writeLong(turn);
+			out.writeBoolean(keyframe);
+			out.flush();
+		}
+		//the first byte of the answer of every worker ends the turn
+		for (DataInputStream in : ins) {
+			in.mark(1);
+			in.readByte();
+			in.reset();
+		}
+		profiler.endPhase(TurnProfiler.TAKE_TURNS);
+
+		//every worker picked every move, the moves are read from the first
+		int numMoves = 0;
+		int contestedTiles = 0;
+		numAwakeChunks = 0;
+		for (int stripe = 0; stripe < workers.length; stripe++) {
+			numMoves = ins[stripe].readInt();
+			contestedTiles += ins[stripe].readInt();
+			numAwakeChunks += ins[stripe].readInt();
+			readCaptures(ins[stripe]);
+		}
+		int[] owners = null;
+		if (keyframe) {
+			owners = new int[width * height];
+			readOwners(owners);
+		}
+		for (int i = 0; i < numMovedCapitals; i++) {
+			ShardCivilization civ = civilizations.get(movedCapitals[i * 2]);
+			recordCapitalMove(movedCapitals[i * 2], civ.getCapital(), movedCapitals[i * 2 + 1]);
+			civ.setCapital(movedCapitals[i * 2 + 1]);
+		}
+		numMovedCapitals = 0;
+		profiler.endPhase(TurnProfiler.RESOLVE_MOVES);
+
+		time += World.TIME_INTERVAL;
+		turn++;
+		int ownerChanges = numChangedTiles;
+		publishSnapshot(owners);
+		profiler.endPhase(TurnProfiler.PUBLISH_SNAPSHOT);
+		profiler.endTurn(turn, numMoves, contestedTiles, 0, ownerChanges, numAwakeChunks);
+	}
+
+	/**
+	 * Reads the captures of a stripe, in tile order, and the capitals
+	 * moved into it
+	 * @param in
+	 * @throws IOException
+	 */
+	private void readCaptures(DataInputStream in) throws IOException {
+		int numCaptures = in.readInt();
+		for (int i = 0; i < numCaptures; i++) {
+			int tile = in.readInt();
+			int oldOwner = in.readInt();
+			int owner = in.readInt();
+			recordOwnerChange(tile, oldOwner, owner);
+			civilizations.get(owner).addTile();
+			if (oldOwner != ShardProtocol.NATURE) {
+				ShardCivilization loser = civilizations.get(oldOwner);
+				loser.removeTile();
+				if (loser.getTerritorySize() == 0) {
+					civilizations.reportEmptied(oldOwner);
+				}
+			}
+		}
+		int numMoved = in.readInt();
+		for (int i = 0; i < numMoved; i++) {
+			if ((numMovedCapitals + 1) * 2 > movedCapitals.length) {
+				movedCapitals = Arrays.copyOf(movedCapitals, movedCapitals.length * 2);
+			}
+			movedCapitals[numMovedCapitals * 2] = in.readInt();
+			movedCapitals[numMovedCapitals * 2 + 1] = in.readInt();
+			numMovedCapitals++;
+		}
+	}
+
+	/**
+	 * Eliminates the civilizations whose territory became empty and
+	 * stayed empty until the end of the turn, like World does. Only the
+	 * civilizations reported by readCaptures are checked
+	 */
+	private void updateCivilizations() {
+		civilizations.sortEmptied();
+		for (int i = 0; i < civilizations.getNumEmptied(); i++) {
+			int id = civilizations.getEmptied(i);
+			ShardCivilization civ = civilizations.get(id);
+			if (civilizations.isLive(id) && civ.getTerritorySize() == 0) {
+				civilizations.eliminate(id);
+				if ((numEliminations + 1) * 2 > eliminations.length) {
+					eliminations = Arrays.copyOf(eliminations, eliminations.length * 2);
+				}
+				eliminations[numEliminations * 2] = id;
+				eliminations[numEliminations * 2 + 1] = civ.getCapital();
+				numEliminations++;
+				System.out.println("\nTurn: " + (int) time + " - Civilization: " +
+				civ.getName() + " has been defeated!");
+			}
+		}
+		civilizations.clearEmptied();
+	}
+
+	private void recordCapitalMove(int id, int oldCapital, int newCapital) {
+		if ((numCapitalMoves + 1) * 3 > capitalMoves.length) {
+			capitalMoves = Arrays.copyOf(capitalMoves, capitalMoves.length * 2);
+		}
+		capitalMoves[numCapitalMoves * 3] = id;
+		capitalMoves[numCapitalMoves * 3 + 1] = oldCapital;
+		capitalMoves[numCapitalMoves * 3 + 2] = newCapital;
+		numCapitalMoves++;
+	}
+
+	private void recordOwnerChange(int tile, int oldOwner, int newOwner) {
+		if (numChangedTiles == changedTiles.length) {
+			changedTiles = Arrays.copyOf(changedTiles, numChangedTiles * 2);
+			changedOldOwners = Arrays.copyOf(changedOldOwners, numChangedTiles * 2);
+			changedOwners = Arrays.copyOf(changedOwners, numChangedTiles * 2);
+		}
+		changedTiles[numChangedTiles] = tile;
+		changedOldOwners[numChangedTiles] = oldOwner;
+		changedOwners[numChangedTiles++] = newOwner;
+	}
+
+	/**
+	 * Publishes the state at the end of a turn as an immutable snapshot,
+	 * see World.publishSnapshot
+	 * @param keyframe - owner of every tile, or null
+	 */
+	private void publishSnapshot(int[] keyframe) {
+		//live civilizations are published in id order
+		int[] civIds = new int[civilizations.getNumLive()];
+		int[] capitals = new int[civIds.length];
+		int numCivs = 0;
+		for (int id = 1; id < civilizations.getNumIds(); id++) {
+			if (civilizations.isLive(id)) {
+				civIds[numCivs] = id;
+				capitals[numCivs++] = civilizations.get(id).getCapital();
+			}
+		}
+
+		int[] tiles = Arrays.copyOf(changedTiles, numChangedTiles);
+		int[] oldOwners = Arrays.copyOf(changedOldOwners, numChangedTiles);
+		int[] owners = Arrays.copyOf(changedOwners, numChangedTiles);
+		totalOwnerChanges += numChangedTiles;
+		numChangedTiles = 0;
+		int[] moves = Arrays.copyOf(capitalMoves, numCapitalMoves * 3);
+		int[] eliminated = Arrays.copyOf(eliminations, numEliminations * 2);
+		numCapitalMoves = 0;
+		numEliminations = 0;
+
+		WorldSnapshot snapshot = new WorldSnapshot(turn, time, civIds, capitals,
+				colorsById, tiles, oldOwners, owners, moves, eliminated, keyframe);
+		if (latestSnapshot != null) {
+			latestSnapshot.setNext(snapshot);
+		}
+		latestSnapshot = snapshot;
+	}
+}
@@ -0,0 +1,241 @@
+package statistics;
+
+import java.util.Arrays;
+
+import entity.Civilization;
+import helper.IntIntHashMap;
+import world.CivilizationRegistry;
+import world.Tile;
+import world.TileGrid;
+
+/**
+ * Statistics of every civilization, kept in flat arrays indexed by id
+ * and updated as tiles change owner, so they never need a scan of the
+ * grid:<br>
+ * 	territory size<br>
+ * 	number of tiles of every tile type<br>
+ * 	border length, the edges between its tiles and tiles of another
+ * 	owner<br>
+ * 	wars, the number of other civilizations it shares a border with<br>
+ * <br>
+ * Every change costs a few array updates for the tile and each of its
+ * neighbors. At the end of every turn the leading civilizations are
+ * published as an immutable StatisticsSnapshot, which costs a pass over
+ * the live civilizations, like the WorldSnapshot does. Only used by
+ * the simulation thread, except for getLatestSnapshot.
+ * @author Matthew Zane
+ *
+ */
+public class CivilizationStatistics {
+	/**
+	 * Number of civilizations in every StatisticsSnapshot
+	 */
+	public static final int LEADERBOARD_SIZE = 10;
+
+	/**
+	 * Wars are only counted between civilizations with ids below this,
+	 * so every pair of them has a key in an IntIntHashMap
+	 */
+	public static final int MAX_WAR_ID = 1 << 16;
+
+	private static final int NATURE = 0;
+
+	private TileGrid grid;
+	private int numTypes = Tile.TileType.values().length;
+
+	//indexed by id, or by id * numTypes + type ordinal
+	private int[] territorySizes = new int[0];
+	private int[] typeCounts = new int[0];
+	private int[] borderLengths = new int[0];
+	private int[] wars = new int[0];
+
+	//shared border edges of every pair of civilizations at war, see pairKey
+	private IntIntHashMap sharedBorders = new IntIntHashMap();
+
+	private int[] neighborBuffer = new int[4];
+
+	//ids of the leaderboard, reused every turn
+	private int[] leaders = new int[LEADERBOARD_SIZE];
+
+	private volatile StatisticsSnapshot latestSnapshot;
+
+	public int getTerritorySize(int id) { return territorySizes[id]; }
+	public int getTypeCount(int id, int typeOrdinal) { return typeCounts[id * numTypes + typeOrdinal]; }
+	public int getBorderLength(int id) { return borderLengths[id]; }
+	public int getWars(int id) { return wars[id]; }
+
+	/**
+	 * Most recently published snapshot, null before the first one.
+	 * Safe to call from any thread.
+	 * @return
+	 */
+	public StatisticsSnapshot getLatestSnapshot() { return latestSnapshot; }
+
+	/**
+	 * @param gridIn - grid whose owners are counted, see countAll
+	 */
+	public CivilizationStatistics(TileGrid gridIn) {
+		grid = gridIn;
+	}
+
+	/**
+	 * Makes room for the statistics of every id below numIds
+	 * @param numIds
+	 */
+	public void ensureIds(int numIds) {
+		if (territorySizes.length >= numIds) {
+			return;
+		}
+		int capacity = Math.max(numIds, territorySizes.length * 2);
+		territorySizes = Arrays.copyOf(territorySizes, capacity);
+		typeCounts = Arrays.copyOf(typeCounts, capacity * numTypes);
+		borderLengths = Arrays.copyOf(borderLengths, capacity);
+		wars = Arrays.copyOf(wars, capacity);
+	}
+
+	/**
+	 * Counts every statistic from scratch, when the owners of the grid
+	 * were set without changeOwner
+	 */
+	public void countAll() {
+		Arrays.fill(territorySizes, 0);
+		Arrays.fill(typeCounts, 0);
+		Arrays.fill(borderLengths, 0);
+		Arrays.fill(wars, 0);
+		sharedBorders.clear();
+		for (int i = 0; i < grid.getSize(); i++) {
+			int owner = grid.getOwnerId(i);
+			territorySizes[owner]++;
+			typeCounts[owner * numTypes + grid.getTypeOrdinal(i)]++;
+
+			//every edge is counted from the tile with the lower index
+			int numNeighbors = grid.getNeighbors(i, neighborBuffer);
+			for (int j = 0; j < numNeighbors; j++) {
+				int neighborOwner = grid.getOwnerId(neighborBuffer[j]);
+				if (neighborBuffer[j] > i && neighborOwner != owner) {
+					addEdge(owner, neighborOwner);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves a tile from one owner to another. Called after the owner
+	 * was changed in the grid
+	 * @param index
+	 * @param from - previous owner
+	 * @param to - new owner
+	 */
+	public void changeOwner(int index, int from, int to) {
+		if (from == to) {
+			return;
+		}
+		int type = grid.getTypeOrdinal(index);
+		territorySizes[from]--;
+		typeCounts[from * numTypes + type]--;
+		territorySizes[to]++;
+		typeCounts[to * numTypes + type]++;
+
+		int numNeighbors = grid.getNeighbors(index, neighborBuffer);
+		for (int i = 0; i < numNeighbors; i++) {
+			int neighborOwner = grid.getOwnerId(neighborBuffer[i]);
+			if (neighborOwner != from) {
+				removeEdge(from, neighborOwner);
+			}
+			if (neighborOwner != to) {
+				addEdge(to, neighborOwner);
+			}
+		}
+	}
+
+	private void addEdge(int a, int b) {
+		borderLengths[a]++;
+		borderLengths[b]++;
+		if (a != NATURE && b != NATURE && a < MAX_WAR_ID && b < MAX_WAR_ID &&
+				sharedBorders.addTo(pairKey(a, b), 1) == 1) {
+			wars[a]++;
+			wars[b]++;
+		}
+	}
+
+	private void removeEdge(int a, int b) {
+		borderLengths[a]--;
+		borderLengths[b]--;
+		if (a != NATURE && b != NATURE && a < MAX_WAR_ID && b < MAX_WAR_ID) {
+			int key = pairKey(a, b);
+			if (sharedBorders.addTo(key, -1) == 0) {
+				sharedBorders.remove(key);
+				wars[a]--;
+				wars[b]--;
+			}
+		}
+	}
+
+	/**
+	 * Key of an unordered pair of different ids below MAX_WAR_ID,
+	 * counting the pairs in order of their higher id
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static int pairKey(int a, int b) {
+		int low = Math.min(a, b);
+		int high = Math.max(a, b);
+		return (int) ((long) high * (high - 1) / 2) + low;
+	}
+
+	/**
+	 * Publishes the LEADERBOARD_SIZE largest live civilizations, by
+	 * territory size and then id
+	 * @param turn
+	 * @param civilizations
+	 */
+	public void publish(long turn, CivilizationRegistry<Civilization> civilizations) {
+		int numLeaders = 0;
+		for (int i = 0; i < civilizations.getNumLive(); i++) {
+			int id = civilizations.getLiveId(i);
+			if (numLeaders == LEADERBOARD_SIZE && !isAhead(id, leaders[numLeaders - 1])) {
+				continue;
+			}
+			//insertion into the leaders, dropping the last one if full
+			int position = Math.min(numLeaders, LEADERBOARD_SIZE - 1);
+			while (position > 0 && isAhead(id, leaders[position - 1])) {
+				leaders[position] = leaders[position - 1];
+				position--;
+			}
+			leaders[position] = id;
+			numLeaders = Math.min(numLeaders + 1, LEADERBOARD_SIZE);
+		}
+
+		String[] names = new String[numLeaders];
+		int[] colors = new int[numLeaders];
+		int[] rows = new int[numLeaders * StatisticsSnapshot.COLUMNS];
+		for (int i = 0; i < numLeaders; i++) {
+			int id = leaders[i];
+			Civilization civ = civilizations.get(id);
+			names[i] = civ.getName();
+			colors[i] = civ.getColor().getRGB();
+			int row = i * StatisticsSnapshot.COLUMNS;
+			rows[row + StatisticsSnapshot.ID] = id;
+			rows[row + StatisticsSnapshot.TERRITORY] = territorySizes[id];
+			rows[row + StatisticsSnapshot.PLAINS] =
+					typeCounts[id * numTypes + Tile.TileType.PLAINS.ordinal()];
+			rows[row + StatisticsSnapshot.DESERT] =
+					typeCounts[id * numTypes + Tile.TileType.DESERT.ordinal()];
+			rows[row + StatisticsSnapshot.BORDER] = borderLengths[id];
+			rows[row + StatisticsSnapshot.WARS] = wars[id];
+		}
+		latestSnapshot = new StatisticsSnapshot(turn, civilizations.getNumLive(),
+				names, colors, rows);
+	}
+
+	/**
+	 * @param a
+	 * @param b
+	 * @return whether civilization a ranks above civilization b
+	 */
+	private boolean isAhead(int a, int b) {
+		return territorySizes[a] > territorySizes[b] ||
+				(territorySizes[a] == territorySizes[b] && a < b);
+	}
+}
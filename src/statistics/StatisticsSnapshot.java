@@ -0,0 +1,72 @@
+package statistics;
+
+import java.awt.Color;
+
+/**
+ * Immutable leaderboard published by CivilizationStatistics at the end
+ * of a turn, read by the display without locking. Holds the statistics
+ * of the largest live civilizations, largest first.
+ * @author Matthew Zane
+ *
+ */
+public class StatisticsSnapshot {
+	//columns of every row of the statistics
+	static final int ID = 0;
+	static final int TERRITORY = 1;
+	static final int PLAINS = 2;
+	static final int DESERT = 3;
+	static final int BORDER = 4;
+	static final int WARS = 5;
+	static final int COLUMNS = 6;
+
+	private long turn;
+	private int numCivilizations;
+
+	//by rank
+	private String[] names;
+	private int[] colors;
+	private int[] rows;
+
+	public long getTurn() { return turn; }
+
+	/**
+	 * @return number of live civilizations, not only the ranked ones
+	 */
+	public int getNumCivilizations() { return numCivilizations; }
+
+	/**
+	 * @return number of ranked civilizations
+	 */
+	public int getNumRanked() { return names.length; }
+
+	public int getId(int rank) { return rows[rank * COLUMNS + ID]; }
+	public String getName(int rank) { return names[rank]; }
+	public Color getColor(int rank) { return new Color(colors[rank], true); }
+	public int getTerritorySize(int rank) { return rows[rank * COLUMNS + TERRITORY]; }
+	public int getPlains(int rank) { return rows[rank * COLUMNS + PLAINS]; }
+	public int getDesert(int rank) { return rows[rank * COLUMNS + DESERT]; }
+
+	/**
+	 * @param rank
+	 * @return edges between the territory and tiles of another owner
+	 */
+	public int getBorderLength(int rank) { return rows[rank * COLUMNS + BORDER]; }
+
+	/**
+	 * @param rank
+	 * @return other civilizations the civilization shares a border with
+	 */
+	public int getWars(int rank) { return rows[rank * COLUMNS + WARS]; }
+
+	/**
+	 * Arrays are not copied, so they must not be modified afterwards
+	 */
+	StatisticsSnapshot(long turnIn, int numCivilizationsIn, String[] namesIn,
+			int[] colorsIn, int[] rowsIn) {
+		turn = turnIn;
+		numCivilizations = numCivilizationsIn;
+		names = namesIn;
+		colors = colorsIn;
+		rows = rowsIn;
+	}
+}
@@ -1,76 +1,48 @@
 package world;
 
-import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 public class Biome {
 	private Tile.TileType biomeType;
-	private ArrayList<Tile> tiles = new ArrayList<Tile>();
-	
-	private ArrayList<Tile> unconveredNeighbors = new ArrayList<Tile>();
-	
+	private int startingTile;
+	private int numTiles = 0;
+
 	private World world;
-	
+
+	private SplittableRandom random;
+
 	public Tile.TileType getType() { return biomeType; }
-	public ArrayList<Tile> getTiles() { return tiles; }
-	
-	public ArrayList<Tile> getUncoveredNeighbors() { return unconveredNeighbors; }
-	
-	
-	public Biome(Tile.TileType tileTypeIn, World worldIn) {
+	public int getStartingTile() { return startingTile; }
+	public int getNumTiles() { return numTiles; }
+
+	void setNumTiles(int numTilesIn) { numTiles = numTilesIn; }
+
+	/**
+	 * Covers a random uncovered tile of the World, from which the
+	 * BiomeGenerator grows the biome
+	 * @param tileTypeIn
+	 * @param worldIn
+	 * @param randomIn
+	 */
+	public Biome(Tile.TileType tileTypeIn, World worldIn, SplittableRandom randomIn) {
 		biomeType = tileTypeIn;
 		world = worldIn;
+		random = randomIn;
 		findStartingLocation();
 	}
-	
+
 	private void findStartingLocation() {
+		TileGrid grid = world.getTileGrid();
 		boolean foundStartingLocation = false;
 		while (!foundStartingLocation) {
-			int x = (int) (Math.random() * (world.getGrid()[0].length - 1));
-			int y = (int) (Math.random() * (world.getGrid().length - 1));
-			foundStartingLocation = coverTile(world.getGrid()[x][y]);
-		}
-	}
-	
-	public boolean coverTile(Tile target) {
-		if (target.isCovered()) {
-			return false;
-		}
-		else {
-			tiles.add(target);
-			target.setType(biomeType);
-			updateNeighbors(target);
-			return true;
-		}
-	}
-	
-	private void updateNeighbors(Tile newTile) {
-		if (unconveredNeighbors.size() != 0) {
-			unconveredNeighbors.remove(newTile);
-		}
-		
-		for (Tile temp : newTile.getNeighbors()) {
-			if (!temp.isCovered() && !unconveredNeighbors.contains(temp)) {
-				unconveredNeighbors.add(temp);
-			}
-		}
-		
-		//update other biomes uncovered Neighbors list
-		ArrayList<Biome> otherBiomes = 
-				(ArrayList<Biome>) ((ArrayList<Biome>) world.getBiomes()).clone();
-		otherBiomes.remove(this);
-		for (Biome temp : otherBiomes) {
-			temp.getUncoveredNeighbors().remove(newTile);
-		}
-	}
-	
-	public void takeTurn() {
-		if (unconveredNeighbors.size() != 0) {
-			boolean coveredNewTile = false;
-			while (!coveredNewTile) {
-				coveredNewTile = coverTile(unconveredNeighbors.get(
-						(int)(Math.random() * (unconveredNeighbors.size() - 1))));
+			int x = (int) (random.nextDouble() * (world.getWidth() - 1));
+			int y = (int) (random.nextDouble() * (world.getHeight() - 1));
+			int index = grid.index(x, y);
+			if (!grid.isCovered(index)) {
+				grid.setType(index, biomeType);
+				startingTile = index;
+				foundStartingLocation = true;
 			}
 		}
-
 	}
 }
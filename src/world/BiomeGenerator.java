@@ -0,0 +1,210 @@
+package world;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import helper.RandomGenerator;
+
+/**
+ * Grows biomes from their starting tiles until every tile of the
+ * TileGrid is covered. Growth happens in rounds: every round, each
+ * uncovered tile next to a biome has a fixed chance of being covered,
+ * and if it is, it joins the biome of a random covered neighbor.<br>
+ * <br>
+ * Rather than retrying every such tile each round, the round a tile is
+ * covered in is drawn once, when it first touches a biome, and the tile
+ * is put in the bucket of that round. Every tile is therefore visited a
+ * constant number of times. The tiles of a round are decided in parallel
+ * against the state at the start of the round, with random bits derived
+ * from the seed and the tile, so the map only depends on the seed.
+ * @author Matthew Zane
+ *
+ */
+public class BiomeGenerator {
+	//chance that a tile next to a biome is covered in a round.
+	//Lower chances give rounder, less diamond shaped biomes
+	private static final double GROWTH_CHANCE = 0.25;
+
+	//number of round buckets. A tile waits at most NUM_BUCKETS - 2
+	//rounds, so it is never put in the bucket being covered
+	private static final int NUM_BUCKETS = 64;
+
+	//tiles decided by each task
+	private static final int TILES_PER_TASK = 4096;
+
+	private static final int UNCOVERED = -1;
+	private static final int WAITING = -2;
+
+	private TileGrid grid;
+	private List<Biome> biomes;
+	private RandomGenerator random;
+	private ForkJoinPool pool;
+
+	//biome covering each tile, UNCOVERED or WAITING if uncovered
+	private int[] biomeIds;
+
+	//waiting tiles by the round they are covered in, modulo NUM_BUCKETS
+	private int[][] buckets = new int[NUM_BUCKETS][16];
+	private int[] bucketSizes = new int[NUM_BUCKETS];
+	private int numWaiting = 0;
+
+	//biome each tile of the current round joins
+	private int[] choices = new int[16];
+
+	private int round = 0;
+
+	public BiomeGenerator(TileGrid gridIn, List<Biome> biomesIn, RandomGenerator randomIn,
+			ForkJoinPool poolIn) {
+		grid = gridIn;
+		biomes = biomesIn;
+		random = randomIn;
+		pool = poolIn;
+	}
+
+	/**
+	 * Covers every tile of the grid with one of the biomes, whose
+	 * starting tiles must already be covered
+	 */
+	public void expandBiomes() {
+		biomeIds = new int[grid.getSize()];
+		Arrays.fill(biomeIds, UNCOVERED);
+		for (int i = 0; i < biomes.size(); i++) {
+			biomeIds[biomes.get(i).getStartingTile()] = i;
+		}
+
+		int[] neighbors = new int[4];
+		for (int i = 0; i < biomes.size(); i++) {
+			scheduleNeighbors(biomes.get(i).getStartingTile(), neighbors);
+		}
+
+		while (numWaiting > 0) {
+			runSingleRound(neighbors);
+		}
+
+		int[] numTiles = new int[biomes.size()];
+		for (int i = 0; i < biomeIds.length; i++) {
+			numTiles[biomeIds[i]]++;
+		}
+		for (int i = 0; i < biomes.size(); i++) {
+			biomes.get(i).setNumTiles(numTiles[i]);
+		}
+	}
+
+	private void runSingleRound(int[] neighbors) {
+		int bucket = round % NUM_BUCKETS;
+		int[] tiles = buckets[bucket];
+		int numTiles = bucketSizes[bucket];
+		if (choices.length < numTiles) {
+			choices = new int[tiles.length];
+		}
+
+		//decide phase: only reads the state at the start of the round
+		if (numTiles > TILES_PER_TASK) {
+			pool.invoke(new ChoiceTask(tiles, 0, numTiles));
+		}
+		else {
+			chooseBiomes(tiles, 0, numTiles, neighbors);
+		}
+
+		//apply phase. Tiles of this round are not UNCOVERED, so they
+		//are never scheduled again
+		bucketSizes[bucket] = 0;
+		numWaiting -= numTiles;
+		round++;
+		for (int i = 0; i < numTiles; i++) {
+			biomeIds[tiles[i]] = choices[i];
+			grid.setType(tiles[i], biomes.get(choices[i]).getType());
+			scheduleNeighbors(tiles[i], neighbors);
+		}
+	}
+
+	/**
+	 * Decides which biome covers each tile of a range
+	 * @param tiles
+	 * @param start
+	 * @param end
+	 * @param neighbors - buffer for the neighbors of a tile
+	 */
+	private void chooseBiomes(int[] tiles, int start, int end, int[] neighbors) {
+		for (int i = start; i < end; i++) {
+			int tile = tiles[i];
+
+			//waiting tiles always have at least one covered neighbor
+			int numNeighbors = grid.getNeighbors(tile, neighbors);
+			int numCovered = 0;
+			for (int j = 0; j < numNeighbors; j++) {
+				if (biomeIds[neighbors[j]] >= 0) {
+					neighbors[numCovered++] = neighbors[j];
+				}
+			}
+			long hash = random.biomeGrowthHash(tile);
+			choices[i] = biomeIds[neighbors[(int) ((hash >>> 53) % numCovered)]];
+		}
+	}
+
+	/**
+	 * Puts the uncovered neighbors of a tile, which touch a biome from
+	 * the current round on, in the bucket of the round they are covered in
+	 * @param tile
+	 * @param neighbors - buffer for the neighbors of the tile
+	 */
+	private void scheduleNeighbors(int tile, int[] neighbors) {
+		int numNeighbors = grid.getNeighbors(tile, neighbors);
+		for (int i = 0; i < numNeighbors; i++) {
+			int neighbor = neighbors[i];
+			if (biomeIds[neighbor] == UNCOVERED) {
+				biomeIds[neighbor] = WAITING;
+				int bucket = (round + getWaitingRounds(neighbor)) % NUM_BUCKETS;
+				if (bucketSizes[bucket] == buckets[bucket].length) {
+					buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+				}
+				buckets[bucket][bucketSizes[bucket]++] = neighbor;
+				numWaiting++;
+			}
+		}
+	}
+
+	/**
+	 * Number of rounds a tile fails to be covered, geometrically
+	 * distributed with a success chance of GROWTH_CHANCE per round
+	 * @param tile
+	 * @return
+	 */
+	private int getWaitingRounds(int tile) {
+		//uniform in (0, 1]
+		double uniform = ((random.biomeGrowthHash(tile) & ((1L << 53) - 1)) + 1) /
+				(double) (1L << 53);
+		double rounds = Math.log(uniform) / Math.log(1 - GROWTH_CHANCE);
+		return (int) Math.min(rounds, NUM_BUCKETS - 2);
+	}
+
+	/**
+	 * Decides a range of the tiles of a round, splitting the range in
+	 * half until it is small enough
+	 */
+	private class ChoiceTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] tiles;
+		private int start;
+		private int end;
+
+		public ChoiceTask(int[] tilesIn, int startIn, int endIn) {
+			tiles = tilesIn;
+			start = startIn;
+			end = endIn;
+		}
+
+		protected void compute() {
+			if (end - start > TILES_PER_TASK) {
+				int middle = (start + end) / 2;
+				invokeAll(new ChoiceTask(tiles, start, middle),
+						new ChoiceTask(tiles, middle, end));
+				return;
+			}
+			chooseBiomes(tiles, start, end, new int[4]);
+		}
+	}
+}
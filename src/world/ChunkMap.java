@@ -0,0 +1,83 @@
+package world;
+
+/**
+ * Splits the TileGrid into square chunks of CHUNK_SIZE x CHUNK_SIZE
+ * tiles and counts where the World is active. Tiles only change owner
+ * when a civilization moves into them, and civilizations only move into
+ * their frontier, so a chunk without frontier tiles cannot change and
+ * is asleep. A capture adds its neighbors to the frontier, which wakes
+ * the chunks next to it, and a chunk falls asleep again once the last
+ * frontier tile in it is taken or given up.<br>
+ * <br>
+ * The turn, the snapshots and the statistics already only touch the
+ * tiles that change and their neighbors, so nothing has to skip asleep
+ * chunks. The number of awake chunks is shown as a measure of the
+ * active area, and contested tiles are resolved in shards of a row of
+ * chunks. The counts are kept up to date as frontier tiles come and
+ * go, so nothing here loops over the whole grid.
+ * Only used by the simulation thread.
+ * @author Matthew Zane
+ *
+ */
+public class ChunkMap {
+	public static final int CHUNK_SIZE = 64;
+
+	private int width;
+	private int chunksWide;
+	private int chunksHigh;
+
+	//indexed by chunk
+	private int[] frontierTiles;
+	private int numAwake = 0;
+
+	public int getChunksWide() { return chunksWide; }
+	public int getChunksHigh() { return chunksHigh; }
+	public int getNumChunks() { return frontierTiles.length; }
+	public int getNumAwake() { return numAwake; }
+
+	/**
+	 * @param chunk
+	 * @return tiles of the chunk in the frontier of a civilization,
+	 * counted once for every civilization
+	 */
+	public int getFrontierTiles(int chunk) { return frontierTiles[chunk]; }
+
+	/**
+	 * @param widthIn - width of the grid in tiles
+	 * @param heightIn - height of the grid in tiles
+	 */
+	public ChunkMap(int widthIn, int heightIn) {
+		width = widthIn;
+		chunksWide = (widthIn + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunksHigh = (heightIn + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		frontierTiles = new int[chunksWide * chunksHigh];
+	}
+
+	/**
+	 * @param index - index of a tile in the TileGrid
+	 * @return chunk the tile is in
+	 */
+	public int getChunk(int index) {
+		return (index / width / CHUNK_SIZE) * chunksWide + index % width / CHUNK_SIZE;
+	}
+
+	/**
+	 * Called when a tile joins the frontier of a civilization
+	 * @param index
+	 */
+	public void addFrontierTile(int index) {
+		if (frontierTiles[getChunk(index)]++ == 0) {
+			numAwake++;
+		}
+	}
+
+	/**
+	 * Called when a tile leaves the frontier of a civilization
+	 * @param index
+	 */
+	public void removeFrontierTile(int index) {
+		if (--frontierTiles[getChunk(index)] == 0) {
+			numAwake--;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package world;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hands out the ids civilizations are known by in the TileGrid and keeps
+ * the live civilizations packed in an array. Ids are compact, starting
+ * at 0 for Nature, and are never handed out twice, since saves, event
+ * logs and replays refer to civilizations by id. Data about every
+ * civilization can be kept in flat arrays indexed by id.<br>
+ * <br>
+ * A civilization is eliminated by moving the last live civilization
+ * into its place, so the live civilizations are not kept in id order.
+ * Civilizations report when their territory becomes empty, so finding
+ * the defeated ones does not need a scan of every civilization.
+ * Only used by the simulation thread.<br>
+ * <br>
+ * Holds any kind of civilization, the World keeps its Civilizations in
+ * one and a sharding.ShardedWorld what it knows of them.
+ * @author Matthew Zane
+ *
+ * @param <C> - type of the civilizations
+ */
+public class CivilizationRegistry<C> {
+	//every civilization ever registered, indexed by id
+	private Object[] civsById = new Object[16];
+	private int numIds = 0;
+
+	//ids of the live civilizations, packed, and the position of every
+	//id in it, -1 if the civilization is not live
+	private int[] live = new int[16];
+	private int[] positions = new int[16];
+	private int numLive = 0;
+
+	//ids of the civilizations whose territory became empty
+	private int[] emptied = new int[16];
+	private int numEmptied = 0;
+
+	private List<C> liveView = new LiveList();
+
+	public int getNumIds() { return numIds; }
+	public int getNumLive() { return numLive; }
+
+	@SuppressWarnings("unchecked")
+	public C get(int id) { return (C) civsById[id]; }
+
+	/**
+	 * @param position - from 0 to getNumLive() - 1
+	 * @return
+	 */
+	public C getLive(int position) { return get(live[position]); }
+	public int getLiveId(int position) { return live[position]; }
+
+	public boolean isLive(int id) { return positions[id] >= 0; }
+
+	/**
+	 * Read only view of the live civilizations, changes with them
+	 * @return
+	 */
+	public List<C> getLiveList() { return liveView; }
+
+	/**
+	 * Hands out the next id, the civilization is not live until
+	 * addLive is called
+	 * @param civ
+	 * @return id of the civilization
+	 */
+	public int register(C civ) {
+		if (numIds == civsById.length) {
+			civsById = Arrays.copyOf(civsById, numIds * 2);
+			positions = Arrays.copyOf(positions, numIds * 2);
+		}
+		civsById[numIds] = civ;
+		positions[numIds] = -1;
+		return numIds++;
+	}
+
+	public void addLive(int id) {
+		if (numLive == live.length) {
+			live = Arrays.copyOf(live, numLive * 2);
+		}
+		positions[id] = numLive;
+		live[numLive++] = id;
+	}
+
+	/**
+	 * Removes a live civilization by moving the last live civilization
+	 * into its place
+	 * @param id
+	 */
+	public void eliminate(int id) {
+		int position = positions[id];
+		int last = live[--numLive];
+		live[position] = last;
+		positions[last] = position;
+		positions[id] = -1;
+	}
+
+	/**
+	 * Called when the territory of a civilization becomes empty. It may
+	 * win a tile back before the end of the turn, so it is only checked
+	 * when the World eliminates the defeated civilizations
+	 * @param id
+	 */
+	public void reportEmptied(int id) {
+		if (numEmptied == emptied.length) {
+			emptied = Arrays.copyOf(emptied, numEmptied * 2);
+		}
+		emptied[numEmptied++] = id;
+	}
+
+	/**
+	 * Number of ids reported since the last clearEmptied. A
+	 * civilization may be reported more than once
+	 * @return
+	 */
+	public int getNumEmptied() { return numEmptied; }
+	public int getEmptied(int i) { return emptied[i]; }
+	public void clearEmptied() { numEmptied = 0; }
+
+	/**
+	 * Puts the reported ids in id order
+	 */
+	public void sortEmptied() {
+		Arrays.sort(emptied, 0, numEmptied);
+	}
+
+	/**
+	 * Live civilizations as a List, in the order they are packed in
+	 */
+	private class LiveList extends AbstractList<C> {
+		public C get(int index) {
+			if (index >= numLive) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numLive);
+			}
+			return getLive(index);
+		}
+
+		public int size() { return numLive; }
+	}
+}
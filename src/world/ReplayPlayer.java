@@ -0,0 +1,509 @@
+package world;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import helper.EventLogWriter;
+import helper.FileParser;
+
+/**
+ * Plays back an event log written by helper.EventLogWriter, publishing
+ * snapshots the display follows as if a World was running. No
+ * civilization logic is run: every turn is read from the log, forward
+ * or in reverse, at any number of turns per second. Seeking starts from
+ * the closest keyframe or the current turn, whichever is closer.<br>
+ * <br>
+ * How to use:<br>
+ * 	ReplayPlayer player = new ReplayPlayer(file);<br>
+ * 	player.setSpeed(100);<br>
+ * 	new Display(player).init();<br>
+ * 	player.start();
+ * @author Matthew Zane
+ *
+ */
+public class ReplayPlayer extends Thread implements SnapshotSource {
+	//time between checks of how many turns are due
+	private static final long STEP_WAIT = TimeUnit.MILLISECONDS.toNanos(2);
+
+	//longest time the player catches up on after falling behind
+	private static final double MAX_BACKLOG = 0.1;
+
+	//seeks of at most this many turns from the current turn publish
+	//every turn instead of a single keyframe
+	private static final int MAX_STEPPED_SEEK = 16;
+
+	private static final long NO_SEEK = Long.MIN_VALUE;
+
+	private RandomAccessFile file;
+	private long seed;
+
+	//tile types, the owners of the grid are the owners as of the
+	//current turn and only touched by the player thread
+	private TileGrid grid;
+	private int[] owners;
+
+	//colors of every civilization in the log, indexed by id
+	private Color[] colors = new Color[1];
+
+	//offset of the turn record of every turn after the first
+	private long firstTurn;
+	private long lastTurn;
+	private long[] turnOffsets = new long[1024];
+
+	private long[] keyframeTurns = new long[16];
+	private long[] keyframeOffsets = new long[16];
+	private int numKeyframes = 0;
+
+	//state as of the current turn, only touched by the player thread
+	private long turn;
+	private double time;
+	private int[] capitalsById;
+	private byte[] record = new byte[1024];
+
+	private volatile double speed = 0;
+	private volatile boolean paused = false;
+	private AtomicLong seekTarget = new AtomicLong(NO_SEEK);
+
+	private volatile WorldSnapshot latestSnapshot;
+	private volatile boolean keyframeRequested = false;
+
+	public long getSeed() { return seed; }
+	public long getFirstTurn() { return firstTurn; }
+	public long getLastTurn() { return lastTurn; }
+
+	/**
+	 * @return turns played per second, negative when playing in reverse
+	 */
+	public double getSpeed() { return speed; }
+	public void setSpeed(double speedIn) { speed = speedIn; }
+	public boolean isPaused() { return paused; }
+	public void setPaused(boolean pausedIn) { paused = pausedIn; }
+
+	public TileGrid getTileGrid() { return grid; }
+	public int getWidth() { return grid.getWidth(); }
+	public int getHeight() { return grid.getHeight(); }
+	public WorldSnapshot getLatestSnapshot() { return latestSnapshot; }
+	public void requestKeyframe() { keyframeRequested = true; }
+
+	/**
+	 * Moves playback to a turn, clamped to the turns in the log. Safe to
+	 * call from any thread
+	 * @param turnIn
+	 */
+	public void seek(long turnIn) {
+		seekTarget.set(Math.max(firstTurn, Math.min(turnIn, lastTurn)));
+	}
+
+	/**
+	 * Indexes the log and publishes its first turn as a keyframe
+	 * @param fileIn
+	 * @throws IOException if the file is not an event log or has no
+	 * keyframe
+	 */
+	public ReplayPlayer(File fileIn) throws IOException {
+		super("ReplayPlayer");
+		setDaemon(true);
+		indexLog(fileIn);
+		file = new RandomAccessFile(fileIn, "r");
+		capitalsById = new int[colors.length];
+		try {
+			loadKeyframe(0);
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt event log " + fileIn + ": " + e, e);
+		}
+		publishSnapshot(null, null, null, null, null, true);
+	}
+
+	/**
+	 * Reads the header and the civilization records and finds the
+	 * offset of every turn and keyframe record. A record cut off at the
+	 * end, by a run that did not close its log, is ignored
+	 * @param fileIn
+	 * @throws IOException
+	 */
+	private void indexLog(File fileIn) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(fileIn), 1 << 16));
+		try {
+			if (in.readInt() != EventLogWriter.MAGIC) {
+				throw new IOException("Not an event log");
+			}
+			int version = in.readInt();
+			if (version != EventLogWriter.VERSION) {
+				throw new IOException("Unsupported event log version " + version);
+			}
+			seed = in.readLong();
+			int width = in.readInt();
+			int height = in.readInt();
+			grid = new TileGrid(width, height, 0);
+			owners = grid.getOwnerIds();
+			byte[] types = new byte[grid.getSize()];
+			in.readFully(types);
+			for (int i = 0; i < types.length; i++) {
+				grid.setTypeOrdinal(i, types[i]);
+			}
+
+			long offset = 24 + types.length;
+			long length = fileIn.length();
+			while (offset + 5 <= length) {
+				byte kind = in.readByte();
+				int size = in.readInt();
+				if (offset + 5 + size > length) {
+					break;
+				}
+				indexRecord(in, kind, size, offset);
+				offset += 5 + size;
+			}
+		} catch (EOFException e) {
+			throw new IOException("Event log is truncated", e);
+		} finally {
+			in.close();
+		}
+		if (numKeyframes == 0) {
+			throw new IOException("Event log has no keyframe");
+		}
+	}
+
+	private void indexRecord(DataInputStream in, byte kind, int size, long offset)
+			throws IOException {
+		int read = 0;
+		if (kind == EventLogWriter.CIVILIZATION) {
+			int id = in.readInt();
+			if (id >= colors.length) {
+				colors = Arrays.copyOf(colors, id + 1);
+			}
+			colors[id] = new Color(in.readInt(), true);
+			read = 8;
+		}
+		else if (kind == EventLogWriter.KEYFRAME) {
+			long keyframeTurn = in.readLong();
+			read = 8;
+			if (numKeyframes == 0) {
+				firstTurn = keyframeTurn;
+				lastTurn = keyframeTurn;
+			}
+			if (numKeyframes == keyframeTurns.length) {
+				keyframeTurns = Arrays.copyOf(keyframeTurns, numKeyframes * 2);
+				keyframeOffsets = Arrays.copyOf(keyframeOffsets, numKeyframes * 2);
+			}
+			keyframeTurns[numKeyframes] = keyframeTurn;
+			keyframeOffsets[numKeyframes++] = offset;
+		}
+		else if (kind == EventLogWriter.TURN) {
+			long recordTurn = in.readLong();
+			read = 8;
+			if (numKeyframes == 0 || recordTurn != lastTurn + 1) {
+				throw new IOException("Event log is corrupt at turn " + recordTurn);
+			}
+			int i = (int) (recordTurn - firstTurn);
+			if (i == turnOffsets.length) {
+				turnOffsets = Arrays.copyOf(turnOffsets, i * 2);
+			}
+			turnOffsets[i] = offset;
+			lastTurn = recordTurn;
+		}
+		while (read < size) {
+			int skipped = in.skipBytes(size - read);
+			if (skipped == 0) {
+				throw new EOFException();
+			}
+			read += skipped;
+		}
+	}
+
+	/**
+	 * Plays turns at the current speed and handles seeks
+	 */
+	public void run() {
+		try {
+			double dueTurns = 0;
+			long lastStep = System.nanoTime();
+			while (true) {
+				long target = seekTarget.getAndSet(NO_SEEK);
+				if (target != NO_SEEK) {
+					moveTo(target);
+					dueTurns = 0;
+				}
+
+				long now = System.nanoTime();
+				double turnsPerSecond = paused ? 0 : speed;
+				double maxTurns = Math.abs(turnsPerSecond) * MAX_BACKLOG + 1;
+				dueTurns += turnsPerSecond * (now - lastStep) / 1e9;
+				dueTurns = Math.max(-maxTurns, Math.min(dueTurns, maxTurns));
+				lastStep = now;
+
+				while (dueTurns >= 1 && turn < lastTurn) {
+					stepForward(true);
+					dueTurns--;
+				}
+				while (dueTurns <= -1 && turn > firstTurn) {
+					stepBackward(true);
+					dueTurns++;
+				}
+				//turns can't be saved up at either end of the log
+				if ((dueTurns > 0 && turn == lastTurn) || (dueTurns < 0 && turn == firstTurn)) {
+					dueTurns = 0;
+				}
+
+				if (keyframeRequested) {
+					publishSnapshot(null, null, null, null, null, true);
+				}
+				LockSupport.parkNanos(STEP_WAIT);
+			}
+		} catch (IOException e) {
+			System.out.println("There was an error: " + e.getMessage());
+		} catch (RuntimeException e) {
+			System.out.println("There was an error: corrupt event log, " + e);
+		}
+	}
+
+	/**
+	 * Moves to a turn from the current turn or from the closest keyframe
+	 * before it, whichever has fewer turns to step through
+	 * @param target
+	 * @throws IOException
+	 */
+	private void moveTo(long target) throws IOException {
+		int keyframe = numKeyframes - 1;
+		while (keyframe > 0 && keyframeTurns[keyframe] > target) {
+			keyframe--;
+		}
+		long fromKeyframe = target - keyframeTurns[keyframe];
+		long fromCurrent = Math.abs(target - turn);
+
+		if (fromCurrent <= MAX_STEPPED_SEEK) {
+			while (turn < target) {
+				stepForward(true);
+			}
+			while (turn > target) {
+				stepBackward(true);
+			}
+			return;
+		}
+		if (fromKeyframe < fromCurrent) {
+			loadKeyframe(keyframe);
+		}
+		while (turn < target) {
+			stepForward(false);
+		}
+		while (turn > target) {
+			stepBackward(false);
+		}
+		publishSnapshot(null, null, null, null, null, true);
+	}
+
+	private void loadKeyframe(int keyframe) throws IOException {
+		ByteBuffer in = readRecord(keyframeOffsets[keyframe]);
+		turn = in.getLong();
+		time = in.getDouble();
+		Arrays.fill(capitalsById, -1);
+		int numCivs = in.getInt();
+		for (int i = 0; i < numCivs; i++) {
+			int id = in.getInt();
+			capitalsById[id] = in.getInt();
+		}
+		FileParser.readOwners(in, owners, colors.length);
+	}
+
+	/**
+	 * Applies the turn record of the next turn
+	 * @param publish - whether to publish the turn as a snapshot
+	 * @throws IOException
+	 */
+	private void stepForward(boolean publish) throws IOException {
+		ByteBuffer in = readRecord(turnOffsets[(int) (turn + 1 - firstTurn)]);
+		turn = in.getLong();
+		time = in.getDouble();
+
+		int numChanges = in.getInt();
+		int[] tiles = publish ? new int[numChanges] : null;
+		int[] oldOwners = publish ? new int[numChanges] : null;
+		int[] newOwners = publish ? new int[numChanges] : null;
+		for (int i = 0; i < numChanges; i++) {
+			int tile = in.getInt();
+			int oldOwner = in.getInt();
+			int newOwner = in.getInt();
+			owners[tile] = newOwner;
+			if (publish) {
+				tiles[i] = tile;
+				oldOwners[i] = oldOwner;
+				newOwners[i] = newOwner;
+			}
+		}
+
+		int numMoves = in.getInt();
+		int[] moves = publish ? new int[numMoves * 3] : null;
+		for (int i = 0; i < numMoves; i++) {
+			int id = in.getInt();
+			int oldCapital = in.getInt();
+			capitalsById[id] = in.getInt();
+			if (publish) {
+				moves[i * 3] = id;
+				moves[i * 3 + 1] = oldCapital;
+				moves[i * 3 + 2] = capitalsById[id];
+			}
+		}
+		int numEliminations = in.getInt();
+		int[] eliminations = publish ? new int[numEliminations * 2] : null;
+		for (int i = 0; i < numEliminations; i++) {
+			int id = in.getInt();
+			capitalsById[id] = -1;
+			int lastCapital = in.getInt();
+			if (publish) {
+				eliminations[i * 2] = id;
+				eliminations[i * 2 + 1] = lastCapital;
+			}
+		}
+
+		if (publish) {
+			publishSnapshot(tiles, oldOwners, newOwners, moves, eliminations, false);
+		}
+	}
+
+	/**
+	 * Undoes the turn record of the current turn
+	 * @param publish - whether to publish the turn as a snapshot
+	 * @throws IOException
+	 */
+	private void stepBackward(boolean publish) throws IOException {
+		ByteBuffer in = readRecord(turnOffsets[(int) (turn - firstTurn)]);
+		turn = in.getLong() - 1;
+		time = in.getDouble() - World.TIME_INTERVAL;
+
+		int numChanges = in.getInt();
+		int[] tiles = publish ? new int[numChanges] : null;
+		int[] oldOwners = publish ? new int[numChanges] : null;
+		int[] newOwners = publish ? new int[numChanges] : null;
+		for (int i = 0; i < numChanges; i++) {
+			int tile = in.getInt();
+			int oldOwner = in.getInt();
+			int newOwner = in.getInt();
+			owners[tile] = oldOwner;
+			if (publish) {
+				tiles[i] = tile;
+				oldOwners[i] = newOwner;
+				newOwners[i] = oldOwner;
+			}
+		}
+
+		//undone, a civilization that appeared is eliminated and an
+		//eliminated one appears again
+		int numMoves = in.getInt();
+		int[] moves = publish ? new int[numMoves * 3] : null;
+		int[] eliminations = publish ? new int[numMoves * 2] : null;
+		int numUndoneMoves = 0;
+		int numUndoneEliminations = 0;
+		for (int i = 0; i < numMoves; i++) {
+			int id = in.getInt();
+			capitalsById[id] = in.getInt();
+			int newCapital = in.getInt();
+			if (publish && capitalsById[id] < 0) {
+				eliminations[numUndoneEliminations * 2] = id;
+				eliminations[numUndoneEliminations * 2 + 1] = newCapital;
+				numUndoneEliminations++;
+			}
+			else if (publish) {
+				moves[numUndoneMoves * 3] = id;
+				moves[numUndoneMoves * 3 + 1] = newCapital;
+				moves[numUndoneMoves * 3 + 2] = capitalsById[id];
+				numUndoneMoves++;
+			}
+		}
+		int numEliminations = in.getInt();
+		if (publish) {
+			moves = Arrays.copyOf(moves, (numUndoneMoves + numEliminations) * 3);
+		}
+		for (int i = 0; i < numEliminations; i++) {
+			int id = in.getInt();
+			capitalsById[id] = in.getInt();
+			if (publish) {
+				moves[numUndoneMoves * 3] = id;
+				moves[numUndoneMoves * 3 + 1] = -1;
+				moves[numUndoneMoves * 3 + 2] = capitalsById[id];
+				numUndoneMoves++;
+			}
+		}
+
+		if (publish) {
+			publishSnapshot(tiles, oldOwners, newOwners, moves, 
+					Arrays.copyOf(eliminations, numUndoneEliminations * 2), false);
+		}
+	}
+
+	/**
+	 * Reads the payload of a record into the record buffer
+	 * @param offset - offset of the record
+	 * @return
+	 * @throws IOException
+	 */
+	private ByteBuffer readRecord(long offset) throws IOException {
+		file.seek(offset + 1);
+		int size = file.readInt();
+		if (record.length < size) {
+			record = new byte[Math.max(size, record.length * 2)];
+		}
+		file.readFully(record, 0, size);
+		return ByteBuffer.wrap(record, 0, size);
+	}
+
+	/**
+	 * Publishes the current turn. Keyframes hold the owner of every
+	 * tile, other snapshots the changes since the previous one, which
+	 * are the changes of the turn in reverse when stepping backward
+	 * @param tiles
+	 * @param oldOwners
+	 * @param newOwners
+	 * @param moves - capital moves, see WorldSnapshot
+	 * @param eliminations - eliminations, see WorldSnapshot
+	 * @param keyframe
+	 */
+	private void publishSnapshot(int[] tiles, int[] oldOwners, int[] newOwners,
+			int[] moves, int[] eliminations, boolean keyframe) {
+		int numCivs = 0;
+		for (int id = 1; id < capitalsById.length; id++) {
+			if (capitalsById[id] >= 0) {
+				numCivs++;
+			}
+		}
+		int[] civIds = new int[numCivs];
+		int[] capitals = new int[numCivs];
+		int i = 0;
+		for (int id = 1; id < capitalsById.length; id++) {
+			if (capitalsById[id] >= 0) {
+				civIds[i] = id;
+				capitals[i++] = capitalsById[id];
+			}
+		}
+
+		if (tiles == null) {
+			tiles = new int[0];
+			oldOwners = tiles;
+			newOwners = tiles;
+			moves = tiles;
+			eliminations = tiles;
+		}
+		int[] keyframeOwners = null;
+		if (keyframe || keyframeRequested) {
+			keyframeRequested = false;
+			keyframeOwners = owners.clone();
+		}
+
+		WorldSnapshot snapshot = new WorldSnapshot(turn, time, civIds, capitals, colors,
+				tiles, oldOwners, newOwners, moves, eliminations, keyframeOwners);
+		if (latestSnapshot != null) {
+			latestSnapshot.setNext(snapshot);
+		}
+		latestSnapshot = snapshot;
+	}
+}
@@ -0,0 +1,152 @@
+package world;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when a World running on its own thread runs its turns. Turns
+ * are run in frames as long as those of the display, and a frame never
+ * spends more than the turn budget running turns, so the display keeps
+ * up whatever the speed. Modes:<br>
+ * 	PAUSED	no turns, except the ones asked for with step<br>
+ * 	NORMAL	NORMAL_SPEED turns per second<br>
+ * 	FAST	FAST_FACTOR times NORMAL_SPEED<br>
+ * 	MAX		as many turns as fit in the budget of every frame<br>
+ * <br>
+ * Turns that do not fit in the budget are dropped rather than saved
+ * up, so a slow World runs fewer turns per second instead of falling
+ * behind. The mode can be changed from any thread.<br>
+ * <br>
+ * How to use, on the simulation thread:<br>
+ * 	int numTurns = clock.awaitFrame();<br>
+ * 	for (int i = 0; i &lt; numTurns &amp;&amp; clock.hasTimeLeft(); i++) {<br>
+ * 		runSingleTurn();<br>
+ * 	}
+ * @author Matthew Zane
+ *
+ */
+public class SimulationClock {
+	public enum Mode { PAUSED, NORMAL, FAST, MAX }
+
+	/**
+	 * Turns per second in NORMAL mode
+	 */
+	public static final double NORMAL_SPEED = 10;
+
+	public static final double FAST_FACTOR = 10;
+
+	public static final int DEFAULT_FPS = 60;
+	public static final long DEFAULT_TURN_BUDGET = 12;
+
+	private volatile Mode mode = Mode.MAX;
+	private AtomicInteger pendingSteps = new AtomicInteger(0);
+
+	//in nanoseconds
+	private long frameInterval;
+	private long turnBudget;
+
+	//only used by the simulation thread
+	private long frameStart = System.nanoTime();
+	private long nextFrame = frameStart;
+	private double dueTurns = 0;
+
+	public Mode getMode() { return mode; }
+	public void setMode(Mode modeIn) { mode = modeIn; }
+
+	public long getTurnBudgetMillis() { return TimeUnit.NANOSECONDS.toMillis(turnBudget); }
+
+	public SimulationClock() {
+		this(DEFAULT_FPS, DEFAULT_TURN_BUDGET);
+	}
+
+	/**
+	 * @param fps - frames per second of the display
+	 * @param turnBudgetMillis - longest time spent running turns in
+	 * a frame, in milliseconds
+	 */
+	public SimulationClock(int fps, long turnBudgetMillis) {
+		if (fps < 1) {
+			throw new IllegalArgumentException("Frames per second must be at least 1");
+		}
+		if (turnBudgetMillis < 1) {
+			throw new IllegalArgumentException("Turn budget must be at least 1 ms");
+		}
+		frameInterval = 1000000000L / fps;
+		turnBudget = TimeUnit.MILLISECONDS.toNanos(turnBudgetMillis);
+	}
+
+	/**
+	 * Pauses and runs a single turn
+	 */
+	public void step() {
+		mode = Mode.PAUSED;
+		pendingSteps.incrementAndGet();
+	}
+
+	/**
+	 * Turns per second the current mode asks for, 0 when paused and
+	 * infinite at MAX
+	 * @return
+	 */
+	public double getSpeed() {
+		switch (mode) {
+		case NORMAL:
+			return NORMAL_SPEED;
+		case FAST:
+			return NORMAL_SPEED * FAST_FACTOR;
+		case MAX:
+			return Double.POSITIVE_INFINITY;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Waits until the next frame with turns to run. Called by the
+	 * simulation thread
+	 * @return number of turns to run in the frame, Integer.MAX_VALUE
+	 * to run turns until hasTimeLeft is false
+	 */
+	public int awaitFrame() {
+		while (true) {
+			long now = System.nanoTime();
+			if (now < nextFrame) {
+				LockSupport.parkNanos(nextFrame - now);
+				continue;
+			}
+			double elapsed = (now - frameStart) / 1e9;
+			frameStart = now;
+			//a late frame starts a new schedule rather than catching up
+			nextFrame = Math.max(nextFrame + frameInterval, now);
+
+			int steps = pendingSteps.getAndSet(0);
+			if (steps > 0) {
+				dueTurns = 0;
+				return steps;
+			}
+
+			double speed = getSpeed();
+			if (speed == Double.POSITIVE_INFINITY) {
+				dueTurns = 0;
+				return Integer.MAX_VALUE;
+			}
+			//at most a frame of turns is saved up, see hasTimeLeft
+			dueTurns = Math.min(dueTurns + speed * elapsed, speed * frameInterval / 1e9 + 1);
+			int numTurns = (int) dueTurns;
+			if (numTurns > 0) {
+				dueTurns -= numTurns;
+				return numTurns;
+			}
+		}
+	}
+
+	/**
+	 * Whether the current frame is still within its turn budget. The
+	 * first turn of a frame always is
+	 * @return
+	 */
+	public boolean hasTimeLeft() {
+		return System.nanoTime() - frameStart < turnBudget;
+	}
+}
@@ -0,0 +1,33 @@
+package world;
+
+/**
+ * Publishes a chain of WorldSnapshots for the display to follow. A
+ * running World is one, a ReplayPlayer playing back an event log is
+ * another.
+ * @author Matthew Zane
+ *
+ */
+public interface SnapshotSource {
+
+	/**
+	 * Grid whose tile types are drawn. Owners must be read from the
+	 * snapshots, not from the grid
+	 * @return
+	 */
+	public TileGrid getTileGrid();
+
+	public int getWidth();
+	public int getHeight();
+
+	/**
+	 * Most recently published snapshot. Safe to call from any thread.
+	 * @return
+	 */
+	public WorldSnapshot getLatestSnapshot();
+
+	/**
+	 * Asks for the next published snapshot to be a keyframe. Safe to
+	 * call from any thread.
+	 */
+	public void requestKeyframe();
+}
@@ -7,83 +7,111 @@ import java.util.ArrayList;
 import entity.Civilization;
 import entity.Nature;
 
+/**
+ * Lightweight view of a single tile stored in the World's TileGrid.
+ * Two views are equal when they refer to the same tile index, so
+ * views can be created freely and used as keys in sets and maps.
+ */
 public class Tile implements Cloneable {
 	public enum TileType {
-		PLAINS(1, "Plains", new Color(102, 206, 112)), 
+		PLAINS(1, "Plains", new Color(102, 206, 112)),
 		DESERT(0, "Desert", new Color(239, 215, 138));
-		
+
 		private int value;
-		
+
 		private String description;
 		private Color color;
-		
+
 		public int getValue() { return value; }
 		public String getDescription() { return description; }
 		public Color getColor() { return color; }
-		
+
 		private TileType(int valueIn, String descriptionIn, Color colorIn) {
 			value = valueIn;
 			description = descriptionIn;
 			color = colorIn;
 		}
 	}
-	
-	private TileType tileType;
-	private Point location;
-	
-	private Civilization owner;
-	private ArrayList<Tile> neighbors = new ArrayList<Tile>();
-	
-	public TileType getType() { return tileType; }
-	public Point getLocation() { return location; }
-	
-	public Civilization getOwner() { return owner; }
-	public ArrayList<Tile> getNeighbors() { return neighbors; }
-	
-	public void setType(TileType tileTypeIn) { tileType = tileTypeIn; }
-	
-	public void setOwner(Civilization ownerIn) { owner = ownerIn; }
-	
-	public Tile(Point locationIn, Civilization ownerIn) {
-		location = locationIn;
-		owner = ownerIn;
+
+	private World world;
+	private int index;
+
+	public int getIndex() { return index; }
+	public int getX() { return world.getTileGrid().getX(index); }
+	public int getY() { return world.getTileGrid().getY(index); }
+
+	public TileType getType() { return world.getTileGrid().getType(index); }
+	public Point getLocation() { return new Point(getX(), getY()); }
+
+	public Civilization getOwner() {
+		return world.getCivilization(world.getTileGrid().getOwnerId(index));
+	}
+
+	/**
+	 * Builds a list of views of the neighboring tiles
+	 * @return
+	 */
+	public ArrayList<Tile> getNeighbors() {
+		int[] neighborIndices = new int[4];
+		int count = world.getTileGrid().getNeighbors(index, neighborIndices);
+		ArrayList<Tile> neighbors = new ArrayList<Tile>(count);
+		for (int i = 0; i < count; i++) {
+			neighbors.add(world.getTile(neighborIndices[i]));
+		}
+		return neighbors;
+	}
+
+	public void setType(TileType tileTypeIn) { world.getTileGrid().setType(index, tileTypeIn); }
+
+	public void setOwner(Civilization ownerIn) {
+		world.getTileGrid().setOwnerId(index, ownerIn.getId());
+	}
+
+	public Tile(World worldIn, int indexIn) {
+		world = worldIn;
+		index = indexIn;
 	}
-	
-	public boolean isOwned() { return !(owner instanceof Nature); }
-	public boolean isCovered() { return tileType != null; }
-	
+
+	public boolean isOwned() { return !(getOwner() instanceof Nature); }
+	public boolean isCovered() { return world.getTileGrid().isCovered(index); }
+
 	public boolean isNeighbor(Tile neighbor) {
-		for (Tile temp : neighbors) {
-			if (temp == neighbor) {
+		for (Tile temp : getNeighbors()) {
+			if (temp.equals(neighbor)) {
 				return true;
 			}
 		}
 		return false;
 	}
-	
+
 	public boolean hasOpenNeighbors() {
-		for (Tile temp : neighbors) {
+		for (Tile temp : getNeighbors()) {
 			if (!temp.isOwned()) {
 				return true;
 			}
 		}
 		return false;
 	}
-	
-	public boolean isBorderTile() {
-		for (Tile neighbor : neighbors) {
-			if (neighbor.getOwner() != owner) {
-				return true;
-			}
+
+	public boolean isBorderTile() { return world.getTileGrid().isBorder(index); }
+
+	public boolean equals(Object other) {
+		if (!(other instanceof Tile)) {
+			return false;
 		}
-		return false;
+		Tile otherTile = (Tile) other;
+		return otherTile.index == index && otherTile.world == world;
 	}
-	
+
+	public int hashCode() {
+		return index;
+	}
+
 	public Tile clone() throws CloneNotSupportedException {
 		return (Tile) super.clone();
 	}
-	
+
 	public String toString() {
-		return "(" + (int)location.getX() + ", " + (int)location.getY() + ")";
+		return "(" + getX() + ", " + getY() + ")";
 	}
 }
@@ -0,0 +1,293 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of tile indices, split like a Roaring bitmap into
+ * containers of 2^16 consecutive indices. A container holding few
+ * tiles is a sorted array of the low 16 bits of its indices, one that
+ * holds many is a bitmap with a bit for every index, whichever is
+ * smaller. The container of an index is found directly from its high
+ * bits, so contains is a binary search over at most MAX_ARRAY_SIZE
+ * values or a single bit test, and size is kept as a count.<br>
+ * <br>
+ * Counts of the tiles in every group of GROUP_CONTAINERS containers
+ * and in every block of a bitmap container are kept as tiles are added
+ * and removed, so select skips whole groups and blocks and takes the
+ * same few steps for a territory of any size.<br>
+ * <br>
+ * Iteration is in ascending index order, which never depends on the
+ * order tiles were added in:<br>
+ * 	for (int i = bitmap.next(0); i >= 0; i = bitmap.next(i + 1))
+ * @author Matthew Zane
+ *
+ */
+public class TileBitmap {
+	private static final int CONTAINER_BITS = 16;
+	private static final int LOW_MASK = (1 << CONTAINER_BITS) - 1;
+
+	//longs of a bitmap container
+	private static final int BITMAP_WORDS = (1 << CONTAINER_BITS) / 64;
+
+	//bits of a block of a bitmap container, and blocks of a container
+	private static final int BLOCK_BITS = 12;
+	private static final int BITMAP_BLOCKS = 1 << (CONTAINER_BITS - BLOCK_BITS);
+	private static final int BLOCK_WORDS = BITMAP_WORDS / BITMAP_BLOCKS;
+
+	//containers counted together by select
+	private static final int GROUP_BITS = 5;
+	private static final int GROUP_CONTAINERS = 1 << GROUP_BITS;
+
+	//above this many tiles an array container takes more memory than a
+	//bitmap and is converted into one
+	private static final int MAX_ARRAY_SIZE = 4096;
+
+	//a bitmap is converted back below this many tiles, which is lower
+	//than MAX_ARRAY_SIZE so a container is not converted back and forth
+	private static final int MIN_BITMAP_SIZE = 2048;
+
+	//every container is either an array, a bitmap or empty (both null)
+	private char[][] arrays = new char[0][];
+	private long[][] bitmaps = new long[0][];
+	private int[] cardinalities = new int[0];
+	private int size = 0;
+
+	//tiles in each group of containers and in each block of a bitmap
+	private int[] groupCardinalities = new int[0];
+	private char[][] blockCardinalities = new char[0][];
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+
+	public boolean contains(int index) {
+		int container = index >>> CONTAINER_BITS;
+		if (container >= cardinalities.length) {
+			return false;
+		}
+		char low = (char) (index & LOW_MASK);
+		if (bitmaps[container] != null) {
+			return (bitmaps[container][low >>> 6] & (1L << low)) != 0;
+		}
+		return arrays[container] != null &&
+				Arrays.binarySearch(arrays[container], 0, cardinalities[container], low) >= 0;
+	}
+
+	/**
+	 * @param index
+	 * @return false if the index was already in the set
+	 */
+	public boolean add(int index) {
+		int container = index >>> CONTAINER_BITS;
+		if (container >= cardinalities.length) {
+			int numContainers = Math.max(container + 1, cardinalities.length * 2);
+			arrays = Arrays.copyOf(arrays, numContainers);
+			bitmaps = Arrays.copyOf(bitmaps, numContainers);
+			cardinalities = Arrays.copyOf(cardinalities, numContainers);
+			blockCardinalities = Arrays.copyOf(blockCardinalities, numContainers);
+			groupCardinalities = Arrays.copyOf(groupCardinalities,
+					(numContainers + GROUP_CONTAINERS - 1) >>> GROUP_BITS);
+		}
+		char low = (char) (index & LOW_MASK);
+
+		long[] bitmap = bitmaps[container];
+		if (bitmap != null) {
+			long bit = 1L << low;
+			if ((bitmap[low >>> 6] & bit) != 0) {
+				return false;
+			}
+			bitmap[low >>> 6] |= bit;
+			blockCardinalities[container][low >>> BLOCK_BITS]++;
+		}
+		else {
+			char[] array = arrays[container];
+			int cardinality = cardinalities[container];
+			int position = array == null ? -1 : Arrays.binarySearch(array, 0, cardinality, low);
+			if (position >= 0) {
+				return false;
+			}
+			position = -position - 1;
+			if (cardinality == MAX_ARRAY_SIZE) {
+				toBitmap(container);
+				bitmaps[container][low >>> 6] |= 1L << low;
+				blockCardinalities[container][low >>> BLOCK_BITS]++;
+			}
+			else {
+				if (array == null) {
+					array = new char[4];
+					arrays[container] = array;
+				}
+				else if (cardinality == array.length) {
+					array = Arrays.copyOf(array, cardinality * 2);
+					arrays[container] = array;
+				}
+				System.arraycopy(array, position, array, position + 1, cardinality - position);
+				array[position] = low;
+			}
+		}
+		cardinalities[container]++;
+		groupCardinalities[container >>> GROUP_BITS]++;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @param index
+	 * @return false if the index was not in the set
+	 */
+	public boolean remove(int index) {
+		int container = index >>> CONTAINER_BITS;
+		if (container >= cardinalities.length) {
+			return false;
+		}
+		char low = (char) (index & LOW_MASK);
+
+		long[] bitmap = bitmaps[container];
+		if (bitmap != null) {
+			long bit = 1L << low;
+			if ((bitmap[low >>> 6] & bit) == 0) {
+				return false;
+			}
+			bitmap[low >>> 6] &= ~bit;
+			blockCardinalities[container][low >>> BLOCK_BITS]--;
+			cardinalities[container]--;
+			if (cardinalities[container] < MIN_BITMAP_SIZE) {
+				toArray(container);
+			}
+		}
+		else {
+			char[] array = arrays[container];
+			int cardinality = cardinalities[container];
+			int position = array == null ? -1 : Arrays.binarySearch(array, 0, cardinality, low);
+			if (position < 0) {
+				return false;
+			}
+			System.arraycopy(array, position + 1, array, position, cardinality - position - 1);
+			cardinalities[container]--;
+			if (cardinalities[container] == 0) {
+				arrays[container] = null;
+			}
+		}
+		groupCardinalities[container >>> GROUP_BITS]--;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Smallest index in the set that is at least from
+	 * @param from
+	 * @return -1 if there is none
+	 */
+	public int next(int from) {
+		if (from < 0) {
+			from = 0;
+		}
+		for (int container = from >>> CONTAINER_BITS; container < cardinalities.length;
+				container++) {
+			int low = container == from >>> CONTAINER_BITS ? from & LOW_MASK : 0;
+			int base = container << CONTAINER_BITS;
+
+			long[] bitmap = bitmaps[container];
+			if (bitmap != null) {
+				int word = low >>> 6;
+				long bits = bitmap[word] & (-1L << low);
+				while (true) {
+					if (bits != 0) {
+						return base + word * 64 + Long.numberOfTrailingZeros(bits);
+					}
+					if (++word == BITMAP_WORDS) {
+						break;
+					}
+					bits = bitmap[word];
+				}
+			}
+			else if (arrays[container] != null) {
+				int position = Arrays.binarySearch(arrays[container], 0,
+						cardinalities[container], (char) low);
+				if (position < 0) {
+					position = -position - 1;
+				}
+				if (position < cardinalities[container]) {
+					return base + arrays[container][position];
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Index with the given number of smaller indices in the set
+	 * @param rank - from 0 to size() - 1
+	 * @return
+	 */
+	public int select(int rank) {
+		if (rank < 0 || rank >= size) {
+			throw new IndexOutOfBoundsException("Rank " + rank + " of " + size);
+		}
+		int group = 0;
+		while (rank >= groupCardinalities[group]) {
+			rank -= groupCardinalities[group++];
+		}
+		int container = group << GROUP_BITS;
+		while (rank >= cardinalities[container]) {
+			rank -= cardinalities[container++];
+		}
+		int base = container << CONTAINER_BITS;
+
+		long[] bitmap = bitmaps[container];
+		if (bitmap == null) {
+			return base + arrays[container][rank];
+		}
+		char[] blocks = blockCardinalities[container];
+		int block = 0;
+		while (rank >= blocks[block]) {
+			rank -= blocks[block++];
+		}
+		int word = block * BLOCK_WORDS;
+		while (rank >= Long.bitCount(bitmap[word])) {
+			rank -= Long.bitCount(bitmap[word++]);
+		}
+		long bits = bitmap[word];
+		for (int i = 0; i < rank; i++) {
+			bits &= bits - 1;
+		}
+		return base + word * 64 + Long.numberOfTrailingZeros(bits);
+	}
+
+	public void clear() {
+		arrays = new char[0][];
+		bitmaps = new long[0][];
+		cardinalities = new int[0];
+		groupCardinalities = new int[0];
+		blockCardinalities = new char[0][];
+		size = 0;
+	}
+
+	private void toBitmap(int container) {
+		long[] bitmap = new long[BITMAP_WORDS];
+		char[] array = arrays[container];
+		char[] blocks = new char[BITMAP_BLOCKS];
+		for (int i = 0; i < cardinalities[container]; i++) {
+			bitmap[array[i] >>> 6] |= 1L << array[i];
+			blocks[array[i] >>> BLOCK_BITS]++;
+		}
+		bitmaps[container] = bitmap;
+		blockCardinalities[container] = blocks;
+		arrays[container] = null;
+	}
+
+	private void toArray(int container) {
+		char[] array = new char[Math.max(4, cardinalities[container])];
+		long[] bitmap = bitmaps[container];
+		int count = 0;
+		for (int word = 0; word < BITMAP_WORDS; word++) {
+			long bits = bitmap[word];
+			while (bits != 0) {
+				array[count++] = (char) (word * 64 + Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+		arrays[container] = array;
+		bitmaps[container] = null;
+		blockCardinalities[container] = null;
+	}
+}
@@ -0,0 +1,238 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * Packed storage for every tile in the World. Each tile is identified
+ * by its index (y * width + x) and its state is kept in primitive
+ * arrays instead of one object per tile. Neighbors are computed from
+ * the index rather than stored.
+ * @author Matthew Zane
+ * @version 1.1
+ * @since 2017-09-15
+ */
+public class TileGrid {
+	/**
+	 * Type ordinal of a tile that has not been covered by a Biome yet
+	 */
+	public static final byte UNCOVERED = -1;
+
+	/**
+	 * Flag set on the tile that is currently a civilization's capital
+	 */
+	public static final byte FLAG_CAPITAL = 1;
+
+	/**
+	 * Flag set on tiles whose owner changed during the current turn
+	 */
+	public static final byte FLAG_CHANGED = 2;
+
+	private static final Tile.TileType[] TILE_TYPES = Tile.TileType.values();
+
+	private int width;
+	private int height;
+
+	private byte[] types;
+	private int[] owners;
+	private byte[] flags;
+
+	//number of neighbors of every tile that have the same owner as it
+	private byte[] sameOwnerNeighbors;
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getSize() { return types.length; }
+
+	/**
+	 * Creates a grid where every tile is uncovered and owned by
+	 * the owner with the given id
+	 * @param widthIn
+	 * @param heightIn
+	 * @param ownerIdIn
+	 */
+	public TileGrid(int widthIn, int heightIn, int ownerIdIn) {
+		width = widthIn;
+		height = heightIn;
+		types = new byte[width * height];
+		owners = new int[width * height];
+		flags = new byte[width * height];
+		Arrays.fill(types, UNCOVERED);
+		if (ownerIdIn != 0) {
+			Arrays.fill(owners, ownerIdIn);
+		}
+		sameOwnerNeighbors = new byte[width * height];
+		countSameOwnerNeighbors();
+	}
+
+	public int index(int x, int y) { return y * width + x; }
+	public int getX(int index) { return index % width; }
+	public int getY(int index) { return index / width; }
+
+	public boolean isCovered(int index) { return types[index] != UNCOVERED; }
+
+	public byte getTypeOrdinal(int index) { return types[index]; }
+
+	public Tile.TileType getType(int index) {
+		byte ordinal = types[index];
+		return ordinal == UNCOVERED ? null : TILE_TYPES[ordinal];
+	}
+
+	public void setTypeOrdinal(int index, byte ordinal) { types[index] = ordinal; }
+
+	public void setType(int index, Tile.TileType tileTypeIn) {
+		types[index] = tileTypeIn == null ? UNCOVERED : (byte) tileTypeIn.ordinal();
+	}
+
+	public int getOwnerId(int index) { return owners[index]; }
+
+	/**
+	 * Owner of every tile, by index. Not copied, for bulk reads and
+	 * writes such as saving and loading. Bulk writes have to be followed
+	 * by countSameOwnerNeighbors
+	 * @return
+	 */
+	public int[] getOwnerIds() { return owners; }
+
+	/**
+	 * Changes the owner of a tile and updates the same owner neighbor
+	 * count of the tile and its neighbors
+	 * @param index
+	 * @param ownerIdIn
+	 */
+	public void setOwnerId(int index, int ownerIdIn) {
+		int oldOwnerId = owners[index];
+		if (oldOwnerId == ownerIdIn) {
+			return;
+		}
+		owners[index] = ownerIdIn;
+
+		int x = index % width;
+		int count = 0;
+		if (x > 0) {
+			count += updateSameOwnerNeighbors(index - 1, oldOwnerId, ownerIdIn);
+		}
+		if (x < width - 1) {
+			count += updateSameOwnerNeighbors(index + 1, oldOwnerId, ownerIdIn);
+		}
+		if (index >= width) {
+			count += updateSameOwnerNeighbors(index - width, oldOwnerId, ownerIdIn);
+		}
+		if (index < types.length - width) {
+			count += updateSameOwnerNeighbors(index + width, oldOwnerId, ownerIdIn);
+		}
+		sameOwnerNeighbors[index] = (byte) count;
+	}
+
+	/**
+	 * Updates the count of a neighbor of a tile that changed owner
+	 * @param neighbor
+	 * @param oldOwnerId - owner the tile had
+	 * @param newOwnerId - owner the tile has now
+	 * @return 1 if the neighbor has the new owner, otherwise 0
+	 */
+	private int updateSameOwnerNeighbors(int neighbor, int oldOwnerId, int newOwnerId) {
+		int owner = owners[neighbor];
+		if (owner == oldOwnerId) {
+			sameOwnerNeighbors[neighbor]--;
+		}
+		else if (owner == newOwnerId) {
+			sameOwnerNeighbors[neighbor]++;
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Number of neighbors of a tile with the same owner as it
+	 * @param index
+	 * @return
+	 */
+	public int getSameOwnerNeighbors(int index) { return sameOwnerNeighbors[index]; }
+
+	/**
+	 * Whether a tile has a neighbor with a different owner
+	 * @param index
+	 * @return
+	 */
+	public boolean isBorder(int index) {
+		return sameOwnerNeighbors[index] < getNeighborCount(index);
+	}
+
+	/**
+	 * Recounts the same owner neighbors of every tile, after owners
+	 * were written through getOwnerIds
+	 */
+	public void countSameOwnerNeighbors() {
+		int[] neighbors = new int[4];
+		for (int i = 0; i < owners.length; i++) {
+			int numNeighbors = getNeighbors(i, neighbors);
+			int count = 0;
+			for (int j = 0; j < numNeighbors; j++) {
+				if (owners[neighbors[j]] == owners[i]) {
+					count++;
+				}
+			}
+			sameOwnerNeighbors[i] = (byte) count;
+		}
+	}
+
+	public boolean hasFlag(int index, byte flag) { return (flags[index] & flag) != 0; }
+
+	public void setFlag(int index, byte flag, boolean value) {
+		if (value) {
+			flags[index] |= flag;
+		}
+		else {
+			flags[index] &= ~flag;
+		}
+	}
+
+	/**
+	 * Writes the indices of the neighbors of a tile into out, in the
+	 * order left, right, up, down, skipping neighbors off the grid.
+	 * @param index
+	 * @param out - array of at least length 4
+	 * @return number of neighbors written
+	 */
+	public int getNeighbors(int index, int[] out) {
+		int x = index % width;
+		int count = 0;
+		if (x > 0) {
+			out[count++] = index - 1;
+		}
+		if (x < width - 1) {
+			out[count++] = index + 1;
+		}
+		if (index >= width) {
+			out[count++] = index - width;
+		}
+		if (index < types.length - width) {
+			out[count++] = index + width;
+		}
+		return count;
+	}
+
+	/**
+	 * Number of neighbors a tile has, 2 in corners, 3 along edges and 4
+	 * everywhere else
+	 * @param index
+	 * @return
+	 */
+	public int getNeighborCount(int index) {
+		int x = index % width;
+		int count = 4;
+		if (x == 0) {
+			count--;
+		}
+		if (x == width - 1) {
+			count--;
+		}
+		if (index < width) {
+			count--;
+		}
+		if (index >= types.length - width) {
+			count--;
+		}
+		return count;
+	}
+}
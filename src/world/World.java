@@ -2,265 +2,787 @@ package world;
 
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Point;
-import java.awt.Rectangle;
-import java.net.Authenticator.RequestorType;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import display.WorldPanel;
 import entity.*;
-import helper.Move;
+import helper.IntIntHashMap;
 import helper.RandomGenerator;
+import helper.ReseedableRandom;
+import profiling.TurnProfiler;
+import statistics.CivilizationStatistics;
 import world.Tile.TileType;
 
-public class World extends Thread {
+public class World extends Thread implements SnapshotSource {
 	/**
 	 * Shortest possible time length in the world in days (s)
 	 */
 	public static final double TIME_INTERVAL = 1;
 
+	/**
+	 * Number of rows of tiles in each shard of contested tiles, a row
+	 * of chunks
+	 */
+	public static final int SHARD_ROWS = ChunkMap.CHUNK_SIZE;
+
 	private double time = 0;
+	private long turn = 0;
+
+	private RandomGenerator random;
+
+	/**
+	 * Most civilizations whose moves are picked by a single task
+	 */
+	private static final int CIVILIZATIONS_PER_TASK = 16;
+
+	//picks moves and resolves contested tiles in parallel
+	private ForkJoinPool resolverPool = 
+			new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 	
 	private Nature nature; 
 	
-	//square shaped. Inner arraylists are horizontal
-	private Tile[][] grid;
+	//packed tile storage, indexed by y * width + x
+	private TileGrid grid;
+
+	//where on the grid the World is active
+	private ChunkMap chunks;
 	
 	private List<Biome> biomes = new ArrayList<Biome>();
-	private List<Civilization> civs = new ArrayList<Civilization>();
+
+	//ids of every civilization ever created and the live ones. Nature
+	//has id 0 and is never live
+	private CivilizationRegistry<Civilization> civilizations = 
+			new CivilizationRegistry<Civilization>();
+
+	//back buffer of the snapshots: tiles whose owner changed this turn
+	//and their owner at the start of the turn
+	private int[] changedTiles = new int[1024];
+	private int[] changedOldOwners = new int[1024];
+	private int numChangedTiles = 0;
+	private long totalOwnerChanges = 0;
+
+	//colors of every civilization, indexed by id. Replaced, not modified
+	private Color[] colorsById = new Color[0];
+
+	private volatile WorldSnapshot latestSnapshot;
+	private volatile boolean keyframeRequested = false;
+
+	//paces the turns when the World runs on its own thread
+	private SimulationClock clock = new SimulationClock();
+
+	//times the phases of every turn
+	private TurnProfiler profiler = new TurnProfiler();
+
+	//kept up to date as tiles change owner
+	private CivilizationStatistics statistics;
+	private int contestedTiles = 0;
+	//tiles read by Civilization.calculateTileValue this turn
+	private long tilesScanned = 0;
+
+	//buffers of the turn pipeline, reused every turn so a turn does not
+	//allocate once they are big enough. Moves are kept in civilization
+	//order as the id of the civilization and the tile it moves into
+	private int[] moveCivIds = new int[0];
+	private int[] moveTargets = new int[0];
+	private int numMoves = 0;
+
+	//first move into every contested tile, and the next move into the 
+	//same tile by move, -1 after the last one
+	private IntIntHashMap firstMoves = new IntIntHashMap();
+	private int[] nextMoves = new int[0];
+
+	//contested tiles in tile order, the winner of each and where the 
+	//tiles of every shard start, with one more entry for the end
+	private int[] contested = new int[0];
+	private int[] winners = new int[0];
+	private int[] shardStarts;
+
+	//ids of the civilizations whose capital was captured this turn
+	private int[] lostCapitals = new int[16];
+	private int numLostCapitals = 0;
+
+	//capitals moved and civilizations eliminated since the last
+	//snapshot, as published in it, see WorldSnapshot
+	private int[] capitalMoves = new int[48];
+	private int numCapitalMoves = 0;
+	private int[] eliminations = new int[32];
+	private int numEliminations = 0;
+
+	//task trees, rebuilt only when the number of civilizations changes
+	private MovePicker movePicker;
+	private ShardResolver shardResolver;
 
 	public double getTime() { return time; }
+	public long getTurn() { return turn; }
+
+	/**
+	 * Number of times a tile changed owner, counted once per tile per turn
+	 * @return
+	 */
+	public long getTotalOwnerChanges() { return totalOwnerChanges; }
+	public long getSeed() { return random.getSeed(); }
+	public RandomGenerator getRandomGenerator() { return random; }
+	public TurnProfiler getProfiler() { return profiler; }
+	public SimulationClock getClock() { return clock; }
+	public CivilizationStatistics getStatistics() { return statistics; }
+	public void setClock(SimulationClock clockIn) { clock = clockIn; }
+
+	/**
+	 * Moves picked by takeTurns, see getMoveCivId and getMoveTarget
+	 * @return
+	 */
+	public int getNumMoves() { return numMoves; }
+	public int getMoveCivId(int move) { return moveCivIds[move]; }
+	public int getMoveTarget(int move) { return moveTargets[move]; }
+
+	/**
+	 * Sets the number of threads used to pick and resolve moves. Does
+	 * not change the outcome of a turn.
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		resolverPool.shutdown();
+		resolverPool = new ForkJoinPool(threadCount);
+	}
 	
 	public Nature getNature() { return nature; }
 	
-	public Tile[][] getGrid() { return grid; }
+	public TileGrid getTileGrid() { return grid; }
+	public ChunkMap getChunkMap() { return chunks; }
+
+	public int getWidth() { return grid.getWidth(); }
+	public int getHeight() { return grid.getHeight(); }
+
+	public Tile getTile(int index) { return new Tile(this, index); }
+	public Tile getTile(int x, int y) { return new Tile(this, grid.index(x, y)); }
+
+	public Civilization getCivilization(int id) { return civilizations.get(id); }
+	public CivilizationRegistry<Civilization> getCivilizationRegistry() { return civilizations; }
+
+	/**
+	 * Number of civilizations ever created, including Nature and
+	 * defeated civilizations. Ids range from 0 to this number - 1
+	 * @return
+	 */
+	public int getNumCivilizationIds() { return civilizations.getNumIds(); }
+
+	/**
+	 * Most recently published snapshot. Safe to call from any thread.
+	 * @return
+	 */
+	public WorldSnapshot getLatestSnapshot() { return latestSnapshot; }
+
+	/**
+	 * Asks for the next published snapshot to be a keyframe, for
+	 * readers that start following the snapshots after the World
+	 * has started running. Safe to call from any thread.
+	 */
+	public void requestKeyframe() { keyframeRequested = true; }
+
+	/**
+	 * Counts the tiles read to score a frontier tile, for profiling.
+	 * Frontiers are only scored by the simulation thread
+	 * @param numTiles
+	 */
+	public void countTilesScanned(int numTiles) {
+		tilesScanned += numTiles;
+	}
+
+	/**
+	 * Records that the owner of a tile is about to change during this
+	 * turn. Has to be called before the owner is changed, so the owner
+	 * the tile had at the start of the turn is known
+	 * @param index
+	 */
+	public void recordOwnerChange(int index) {
+		if (grid.hasFlag(index, TileGrid.FLAG_CHANGED)) {
+			return;
+		}
+		grid.setFlag(index, TileGrid.FLAG_CHANGED, true);
+		if (numChangedTiles == changedTiles.length) {
+			changedTiles = Arrays.copyOf(changedTiles, numChangedTiles * 2);
+			changedOldOwners = Arrays.copyOf(changedOldOwners, numChangedTiles * 2);
+		}
+		changedOldOwners[numChangedTiles] = grid.getOwnerId(index);
+		changedTiles[numChangedTiles++] = index;
+	}
+
+	/**
+	 * Publishes the state at the end of a turn as an immutable snapshot
+	 * and starts a new set of changes
+	 */
+	private void publishSnapshot() {
+		//live civilizations are published in id order
+		int[] civIds = new int[civilizations.getNumLive()];
+		int[] capitals = new int[civIds.length];
+		int numCivs = 0;
+		for (int id = 1; id < civilizations.getNumIds(); id++) {
+			if (civilizations.isLive(id)) {
+				civIds[numCivs] = id;
+				capitals[numCivs++] = civilizations.get(id).getCapital().getIndex();
+			}
+		}
+
+		int[] tiles = Arrays.copyOf(changedTiles, numChangedTiles);
+		int[] oldOwners = Arrays.copyOf(changedOldOwners, numChangedTiles);
+		int[] owners = new int[numChangedTiles];
+		for (int i = 0; i < numChangedTiles; i++) {
+			owners[i] = grid.getOwnerId(tiles[i]);
+			grid.setFlag(tiles[i], TileGrid.FLAG_CHANGED, false);
+		}
+		totalOwnerChanges += numChangedTiles;
+		numChangedTiles = 0;
+
+		int[] moves = Arrays.copyOf(capitalMoves, numCapitalMoves * 3);
+		int[] eliminated = Arrays.copyOf(eliminations, numEliminations * 2);
+		numCapitalMoves = 0;
+		numEliminations = 0;
+
+		int[] keyframe = null;
+		if (keyframeRequested || latestSnapshot == null) {
+			keyframeRequested = false;
+			keyframe = grid.getOwnerIds().clone();
+		}
+
+		WorldSnapshot snapshot = new WorldSnapshot(turn, time, civIds, capitals, 
+				colorsById, tiles, oldOwners, owners, moves, eliminated, keyframe);
+		if (latestSnapshot != null) {
+			latestSnapshot.setNext(snapshot);
+		}
+		latestSnapshot = snapshot;
+		statistics.publish(turn, civilizations);
+	}
 
 	public List<Biome> getBiomes() { return biomes; }
-	public List<Civilization> getCivilizations() { return civs; }
+
+	/**
+	 * Read only view of the live civilizations, not in id order, see
+	 * CivilizationRegistry
+	 * @return
+	 */
+	public List<Civilization> getCivilizations() { return civilizations.getLiveList(); }
 
 	public World(Dimension gridSize, int numCivs) {
+		this(gridSize, numCivs, new Random().nextLong());
+	}
+
+	public World(Dimension gridSize, int numCivs, long seedIn) {
+		random = new RandomGenerator(seedIn);
+
 		System.out.println("Instantiating Grid...");
 		instantiateGrid(gridSize);
 
-		System.out.println("Instantiating Tile Neighbors...");
-		instantiateTileNeighbors(gridSize);		
-
 		System.out.println("Intantiating Tile Types...");
 		instantiateTileTypes();
+		//every tile is Nature's until the civilizations are placed
+		statistics.countAll();
 
 		System.out.println("Instantiating Civilizations...");
 		instantiateCivilizations(numCivs);
+		publishSnapshot();
 
 		System.out.println("Done!");
 	}
 
-	private void instantiateGrid(Dimension gridSize) {
+	/**
+	 * Creates a World from a saved state, see helper.FileParser. The
+	 * saved civilizations have to be recreated in id order and the
+	 * World finished with restoreTerritories before it is run
+	 * @param gridIn - tile types and owners
+	 * @param seedIn
+	 * @param turnIn
+	 * @param timeIn
+	 * @param totalOwnerChangesIn
+	 */
+	public World(TileGrid gridIn, long seedIn, long turnIn, double timeIn, 
+			long totalOwnerChangesIn) {
+		random = new RandomGenerator(seedIn);
+		turn = turnIn;
+		time = timeIn;
+		totalOwnerChanges = totalOwnerChangesIn;
 		nature = new Nature(this);
-		grid = new Tile[(int) gridSize.getWidth()][(int) gridSize.getHeight()];
-		for (int y = 0; y < gridSize.getHeight(); y++) {
-			for (int x = 0; x < gridSize.getWidth(); x++) {
-				grid[x][y] = new Tile(new Point(x, y), nature);
-				nature.getTerritory().add(grid[x][y]);
-			}
-		}
+		grid = gridIn;
+		chunks = new ChunkMap(grid.getWidth(), grid.getHeight());
+		statistics = new CivilizationStatistics(grid);
+		statistics.ensureIds(civilizations.getNumIds());
 	}
 
-	private void instantiateTileNeighbors(Dimension gridSize) {
-		for (int y = 0; y < gridSize.getHeight(); y++) {
-			for (int x = 0; x < gridSize.getWidth(); x++) {
-				ArrayList<Tile> neighbors = grid[x][y].getNeighbors();
-				try {
-					neighbors.add(grid[x - 1][y]);
-				} catch (ArrayIndexOutOfBoundsException e) {}
-				try {
-					neighbors.add(grid[x + 1][y]);
-				} catch (ArrayIndexOutOfBoundsException e) {}
-				try {
-					neighbors.add(grid[x][y - 1]);
-				} catch (ArrayIndexOutOfBoundsException e) {}
-				try {
-					neighbors.add(grid[x][y + 1]);
-				} catch (ArrayIndexOutOfBoundsException e) {}
+	/**
+	 * Adds every tile to the territory of its owner, restores the
+	 * borders of every civilization and publishes the first snapshot
+	 * @param frontiers - saved frontier of each civilization, by id
+	 */
+	public void restoreTerritories(int[][] frontiers) {
+		grid.countSameOwnerNeighbors();
+		statistics.countAll();
+		for (int i = 0; i < grid.getSize(); i++) {
+			civilizations.get(grid.getOwnerId(i)).addTerritory(i);
+		}
+		for (int id = 1; id < civilizations.getNumIds(); id++) {
+			civilizations.get(id).restoreBorders(frontiers[id]);
+			//saved without a tile, eliminated on the first turn
+			if (civilizations.isLive(id) && civilizations.get(id).getTerritorySize() == 0) {
+				civilizations.reportEmptied(id);
 			}
 		}
+		publishSnapshot();
 	}
 
-	private void instantiateTileTypes() {
-		TileType[] tileTypes = Tile.TileType.values();
-		int numTiles = grid[0].length * grid.length;
-		int numBiomes = (int) Math.round(Math.sqrt(numTiles) / 5);
-		for (int i = 0; i < numBiomes; i++) {
-			biomes.add(new Biome(
-					tileTypes[(int) (Math.random() * (tileTypes.length))], this));
+	private void instantiateGrid(Dimension gridSize) {
+		nature = new Nature(this);
+		grid = new TileGrid((int) gridSize.getWidth(), (int) gridSize.getHeight(), 
+				nature.getId());
+		nature.setTerritorySize(grid.getSize());
+		chunks = new ChunkMap(grid.getWidth(), grid.getHeight());
+		statistics = new CivilizationStatistics(grid);
+		statistics.ensureIds(civilizations.getNumIds());
+	}
+
+	/**
+	 * Hands out the id a civilization is known by in the TileGrid
+	 * @param civ
+	 * @return
+	 */
+	public int registerCivilization(Civilization civ) {
+		int id = civilizations.register(civ);
+		//Nature is registered before the grid and the statistics exist
+		if (statistics != null) {
+			statistics.ensureIds(civilizations.getNumIds());
 		}
+		colorsById = Arrays.copyOf(colorsById, civilizations.getNumIds());
+		colorsById[id] = civ.getColor();
+		return id;
+	}
 
-		expandBiomes();
+	/**
+	 * Adds a registered civilization to the live ones, which take a
+	 * turn every turn
+	 * @param civ
+	 */
+	public void addLiveCivilization(Civilization civ) {
+		civilizations.addLive(civ.getId());
+		recordCapitalMove(civ.getId(), -1, civ.getCapital().getIndex());
 	}
 
-	private void expandBiomes() {
-		while(!isFullWithBiomes()) {
-			runSingleBiomeTurn();
+	private void recordCapitalMove(int id, int oldCapital, int newCapital) {
+		if ((numCapitalMoves + 1) * 3 > capitalMoves.length) {
+			capitalMoves = Arrays.copyOf(capitalMoves, capitalMoves.length * 2);
 		}
+		capitalMoves[numCapitalMoves * 3] = id;
+		capitalMoves[numCapitalMoves * 3 + 1] = oldCapital;
+		capitalMoves[numCapitalMoves * 3 + 2] = newCapital;
+		numCapitalMoves++;
+	}
+
+	/**
+	 * Called by a civilization whose territory just became empty, it
+	 * is eliminated at the start of the next turn unless it wins a
+	 * tile back before then
+	 * @param id
+	 */
+	public void reportEmptyTerritory(int id) {
+		civilizations.reportEmptied(id);
 	}
 
-	private void runSingleBiomeTurn() {
-		for (Biome temp : biomes) {
-			temp.takeTurn();
+	/**
+	 * Called by a civilization whose capital was just captured, it
+	 * moves its capital once every capture of the turn is committed
+	 * @param id
+	 */
+	public void reportCapitalLost(int id) {
+		if (numLostCapitals == lostCapitals.length) {
+			lostCapitals = Arrays.copyOf(lostCapitals, numLostCapitals * 2);
 		}
+		lostCapitals[numLostCapitals++] = id;
 	}
 
-	private boolean isFullWithBiomes() {
-		for (int y = 0; y < grid.length; y++) {
-			for (int x = 0; x < grid[0].length; x++) {
-				if (!grid[x][y].isCovered()) {
-					return false;
-				}
-			}
+	private void instantiateTileTypes() {
+		TileType[] tileTypes = Tile.TileType.values();
+		SplittableRandom typeRandom = random.forBiomeTypes();
+		int numTiles = grid.getSize();
+		//at least one biome, or small maps would never be covered
+		int numBiomes = (int) Math.max(1, Math.round(Math.sqrt(numTiles) / 5));
+		for (int i = 0; i < numBiomes; i++) {
+			biomes.add(new Biome(tileTypes[typeRandom.nextInt(tileTypes.length)], 
+					this, random.forBiome(i)));
 		}
-		return true;
+
+		new BiomeGenerator(grid, biomes, random, resolverPool).expandBiomes();
 	}
 
 	private void instantiateCivilizations(int numCivs) {
+		SplittableRandom colorRandom = random.forCivilizationColors();
 		for (int i = 0; i < numCivs; i++) {
 			//TODO change how name and color are chosen
-			Color color = RandomGenerator.randColor();
+			Color color = RandomGenerator.randColor(colorRandom);
 			color = new Color(color.getRed(), color.getGreen(), color.getBlue(), 60);
-			civs.add(new Civilization("" + i, color, this));
+			addLiveCivilization(new Civilization("" + i, color, this));
+		}
+	}
+
+	/**
+	 * Runs a number of turns on the calling thread, as fast as possible
+	 * @param numTurns
+	 */
+	public void runTurns(long numTurns) {
+		for (long i = 0; i < numTurns; i++) {
+			runSingleTurn();
 		}
 	}
 
+	/**
+	 * Runs turns as the clock allows, see SimulationClock
+	 */
 	public void run() {
 		while(true) {
-			runSingleTurn();
-			time += TIME_INTERVAL;
-			try {
-				Thread.sleep(0);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			int numTurns = clock.awaitFrame();
+			for (int i = 0; i < numTurns && clock.hasTimeLeft(); i++) {
+				runSingleTurn();
 			}
 		}
 	}
 
-	private void runSingleTurn() {
-		updateCivilizations();
+	/**
+	 * Picks the move of every civilization. Picking a move only reads
+	 * the frontier of the civilization and draws from its own random
+	 * stream, so moves are picked in parallel into the move buffers, 
+	 * one for every live civilization. resolveMoves puts the attackers
+	 * of every tile in id order, which keeps the outcome independent of
+	 * the thread count and of the order of the live civilizations.
+	 */
+	public void takeTurns() {
 		//System.out.println("\nTurn " + (int) time);
 		//register civ moves
-		ArrayList<Move> moves = new ArrayList<Move>();
-		for (Civilization temp : civs) {
-			
-			Move move = temp.takeTurn();
-			if (move != null) {
-				moves.add(move);
+		int numCivs = civilizations.getNumLive();
+		if (moveTargets.length < numCivs) {
+			moveCivIds = new int[numCivs * 2];
+			moveTargets = new int[numCivs * 2];
+			nextMoves = new int[numCivs * 2];
+		}
+		if (movePicker == null || movePicker.end != numCivs) {
+			movePicker = new MovePicker(0, numCivs);
+		}
+		movePicker.reset();
+		resolverPool.invoke(movePicker);
+
+		//civilizations without a move are left out, keeping the order
+		numMoves = 0;
+		for (int i = 0; i < numCivs; i++) {
+			if (moveTargets[i] >= 0) {
+				moveCivIds[numMoves] = moveCivIds[i];
+				moveTargets[numMoves++] = moveTargets[i];
 			}
-			
 		}
 
 		//TODO: give nature a better part
-		/**Move move = nature.takeTurn();
-		if (move != null) {
-			moves.add(move);
+		/**int target = nature.takeTurn();
+		if (target >= 0) {
+			...
 		}*/
+	}
+
+	/**
+	 * Picks the moves of a range of civilizations, splitting the range
+	 * in half until it is small enough. The tree of tasks is built once
+	 * and reset before every turn
+	 */
+	private class MovePicker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int start;
+		private int end;
+		private MovePicker left;
+		private MovePicker right;
+
+		public MovePicker(int startIn, int endIn) {
+			start = startIn;
+			end = endIn;
+			if (end - start > CIVILIZATIONS_PER_TASK) {
+				int middle = (start + end) / 2;
+				left = new MovePicker(start, middle);
+				right = new MovePicker(middle, end);
+			}
+		}
+
+		public void reset() {
+			reinitialize();
+			if (left != null) {
+				left.reset();
+				right.reset();
+			}
+		}
+
+		protected void compute() {
+			if (left != null) {
+				invokeAll(left, right);
+				return;
+			}
+			for (int i = start; i < end; i++) {
+				//defeated civilizations have no frontier to move into
+				Civilization civ = civilizations.getLive(i);
+				moveCivIds[i] = civ.getId();
+				moveTargets[i] = civ.getTerritorySize() > 0 ? civ.takeTurn() : -1;
+			}
+		}
+	}
 
-		resolveMoves(moves);
+	/**
+	 * Runs a turn and publishes its snapshot, timing every phase
+	 */
+	private void runSingleTurn() {
+		profiler.begin(turn + 1);
+		updateCivilizations();
+		profiler.endPhase(TurnProfiler.UPDATE_CIVILIZATIONS);
+		takeTurns();
+		profiler.endPhase(TurnProfiler.TAKE_TURNS);
+		resolveMoves();
+		profiler.endPhase(TurnProfiler.RESOLVE_MOVES);
+		time += TIME_INTERVAL;
+		turn++;
+		int ownerChanges = numChangedTiles;
+		publishSnapshot();
+		profiler.endPhase(TurnProfiler.PUBLISH_SNAPSHOT);
+
+		profiler.endTurn(turn, numMoves, contestedTiles, 
+				tilesScanned, ownerChanges, chunks.getNumAwake());
+		tilesScanned = 0;
 	}
 
 	/**
 	 * conflict when two or more civs try to settle the same tile.
 	 * resolved by combat
 	 * When two or more civs attack a tile, the attacker together fight the
-	 * defender, then if the defender loses, the attacker fight eachother
-	 * @param moves
+	 * defender, then if the defender loses, the attacker fight eachother.
+	 * Contested tiles are grouped into shards of SHARD_ROWS rows which are
+	 * resolved in parallel against the state at the start of the turn, 
+	 * each with its own seeded random stream. Captures are then committed
+	 * in tile order, so the outcome does not depend on the thread count,
+	 * and civilizations that lost their capital move it afterwards.
+	 * Resolves the moves picked by the last call to takeTurns
 	 */
-	public void resolveMoves(ArrayList<Move> moves) {
-		Map<Tile, List<Civilization>> map = new HashMap<Tile, List<Civilization>>();
-
-		for (Move move : moves) {
-			List<Civilization> civs = map.get(move.getTarget());
-			if (civs == null) {
-				civs = new ArrayList<Civilization>();
-				map.put(move.getTarget(), civs);
+	public void resolveMoves() {
+		//chain the moves into every tile, in id order
+		firstMoves.clear();
+		if (contested.length < numMoves) {
+			contested = new int[numMoves * 2];
+			winners = new int[numMoves * 2];
+		}
+		contestedTiles = 0;
+		for (int i = 0; i < numMoves; i++) {
+			int target = moveTargets[i];
+			int first = firstMoves.get(target);
+			if (first == IntIntHashMap.NO_VALUE) {
+				firstMoves.put(target, i);
+				nextMoves[i] = -1;
+				contested[contestedTiles++] = target;
+			}
+			else if (moveCivIds[i] < moveCivIds[first]) {
+				firstMoves.put(target, i);
+				nextMoves[i] = first;
+			}
+			else {
+				//few civilizations attack the same tile, so the chains are short
+				int previous = first;
+				while (nextMoves[previous] >= 0 && moveCivIds[nextMoves[previous]] < moveCivIds[i]) {
+					previous = nextMoves[previous];
+				}
+				nextMoves[i] = nextMoves[previous];
+				nextMoves[previous] = i;
 			}
-			civs.add(move.getCiv());
 		}
 
-		for (Tile key : map.keySet()) {
-			resolveAttack(key, (ArrayList<Civilization>)map.get(key));
+		//group contested tiles by shard
+		Arrays.sort(contested, 0, contestedTiles);
+		int numShards = (grid.getHeight() + SHARD_ROWS - 1) / SHARD_ROWS;
+		if (shardResolver == null) {
+			shardStarts = new int[numShards + 1];
+			shardResolver = new ShardResolver(0, numShards);
+		}
+		int shard = 0;
+		for (int i = 0; i < contestedTiles; i++) {
+			int tileShard = contested[i] / grid.getWidth() / SHARD_ROWS;
+			while (shard <= tileShard) {
+				shardStarts[shard++] = i;
+			}
+		}
+		while (shard <= numShards) {
+			shardStarts[shard++] = contestedTiles;
 		}
-	}
 
-	public void resolveAttack(Tile target, ArrayList<Civilization> attackers) {
-		ArrayList<Civilization> fighters = (ArrayList<Civilization>) attackers.clone();
-		fighters.add(target.getOwner());
-		Civilization winner = resolveCombat(target, fighters);
+		//resolve phase: only reads world state
+		shardResolver.reset();
+		resolverPool.invoke(shardResolver);
 
-		if (winner != target.getOwner()) {
-			//System.out.println("Civ " + winner + " captured " + target + " from " + target.getOwner());
-			winner.acquireTile(target);
+		//commit phase: apply ownership changes in tile order
+		for (int i = 0; i < contestedTiles; i++) {
+			if (winners[i] != grid.getOwnerId(contested[i])) {
+				//System.out.println("Civ " + winners[i] + " captured " + contested[i] + " from " + grid.getOwnerId(contested[i]));
+				civilizations.get(winners[i]).acquireTile(contested[i]);
+			}
 		}
-		else {
-			//System.out.println("Civ " + winner + " successfully defended " + target);
+
+		//a capital is captured at most once a turn, so every id is once
+		//in the list, and every civilization has its own random stream
+		for (int i = 0; i < numLostCapitals; i++) {
+			Civilization civ = civilizations.get(lostCapitals[i]);
+			int oldCapital = civ.getCapital().getIndex();
+			civ.moveNewCapital();
+			//stays on the captured tile if nothing is left to move to
+			if (civ.getCapital().getIndex() != oldCapital) {
+				recordCapitalMove(civ.getId(), oldCapital, civ.getCapital().getIndex());
+			}
 		}
+		numLostCapitals = 0;
 	}
 
 	/**
-	 * Recursively resolves combat between 2 or more civs
-	 * @param fightersIn
-	 * @return
+	 * Decides who wins the target tile without changing ownership
+	 * @param target - index of the tile
+	 * @param attackerIds - ids of the attackers, in id order
+	 * @param numAttackers
+	 * @param strengths - buffer for the strength of every fighter, at
+	 * least numAttackers + 1 long
+	 * @param random - random stream of the shard the target is in
+	 * @return id of the winner
 	 */
-	private Civilization resolveCombat(Tile target, ArrayList<Civilization> fightersIn) {
-		ArrayList<Civilization> fighters = (ArrayList<Civilization>) fightersIn.clone();
-		//return if only 1 left
-		if (fighters.size() == 1) {
-			return fighters.get(0);
+	public int resolveAttack(int target, int[] attackerIds, int numAttackers, 
+			int[] strengths, ReseedableRandom random) {
+		for (int i = 0; i < numAttackers; i++) {
+			strengths[i] = civilizations.get(attackerIds[i]).getStrength(target);
 		}
+		int owner = grid.getOwnerId(target);
+		strengths[numAttackers] = civilizations.get(owner).getStrength(target);
 
-		//else: next fighter becomes "defender"
-		Civilization defender = fighters.get(0);
-		int defenderStrength = defender.getStrength(target);
+		int winner = resolveCombat(strengths, numAttackers + 1, random);
+		return winner < numAttackers ? attackerIds[winner] : owner;
+	}
 
+	/**
+	 * Resolves combat between 2 or more civs. The first fighter left
+	 * is the "defender" and fights all the others together, until a
+	 * defender wins or one fighter is left
+	 * @param strengths - strength of every fighter against the target,
+	 * the attackers and the owner of the target last
+	 * @param numFighters
+	 * @param random
+	 * @return position of the winner in strengths
+	 */
+	public static int resolveCombat(int[] strengths, int numFighters, ReseedableRandom random) {
+		//strength of every fighter still in the fight, the defender 
+		//is taken out of it each round
 		int attackersStrength = 0;
-		for (int i = 1; i < fighters.size(); i++) {
-			attackersStrength += fighters.get(i).getStrength(target);
+		for (int i = 0; i < numFighters; i++) {
+			attackersStrength += strengths[i];
 		}
 
-		//attackers vs. defender
-		int rand = (int)(Math.random() * (defenderStrength + attackersStrength) + 1);
+		for (int defender = 0; defender < numFighters - 1; defender++) {
+			int defenderStrength = strengths[defender];
+			attackersStrength -= defenderStrength;
+
+			//attackers vs. defender
+			int rand = (int)(random.nextDouble() * (defenderStrength + attackersStrength) + 1);
 
-		//case: attackers victorious, so remove defender from list
-		if (rand > defenderStrength) {
-			fighters.remove(defender);
-			return resolveCombat(target, fighters);
+			//case: defender victorious, else it is removed from the fight
+			if (rand <= defenderStrength) {
+				return defender;
+			}
 		}
-		//else: return defender as victorious
-		return defender;
+		return numFighters - 1;
 	}
 
-	private void updateCivilizations() {
-		List<Civilization> defeatedCivs = new ArrayList<Civilization>();
-		for (Civilization civ : civs) {
-			if (civ.getTerritory().size() == 0) {
-				defeatedCivs.add(civ);
+	/**
+	 * Resolves the contested tiles of a range of shards, splitting the
+	 * range in half until a single shard is left. The tree of tasks is
+	 * built once and reset before every turn
+	 */
+	private class ShardResolver extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int start;
+		private int end;
+		private ShardResolver left;
+		private ShardResolver right;
+
+		//used by a single shard
+		private ReseedableRandom shardRandom;
+		private int[] attackerIds = new int[4];
+		private int[] strengths = new int[5];
+
+		public ShardResolver(int startIn, int endIn) {
+			start = startIn;
+			end = endIn;
+			if (end - start > 1) {
+				int middle = (start + end) / 2;
+				left = new ShardResolver(start, middle);
+				right = new ShardResolver(middle, end);
 			}
 			else {
-				
+				shardRandom = new ReseedableRandom(0);
 			}
 		}
-		
-		for (Civilization defeatedCiv : defeatedCivs) {
-			civs.remove(defeatedCiv);
-			System.out.println("\nTurn: " + (int) time + " - Civilization: " + 
-			defeatedCiv.getName() + " has been defeated!");
+
+		public void reset() {
+			reinitialize();
+			if (left != null) {
+				left.reset();
+				right.reset();
+			}
+		}
+
+		protected void compute() {
+			if (left != null) {
+				invokeAll(left, right);
+				return;
+			}
+			if (shardStarts[start] == shardStarts[start + 1]) {
+				return;
+			}
+
+			shardRandom.setSeed(random.shardSeed(start, turn));
+			for (int i = shardStarts[start]; i < shardStarts[start + 1]; i++) {
+				int numAttackers = 0;
+				for (int move = firstMoves.get(contested[i]); move >= 0; move = nextMoves[move]) {
+					if (numAttackers == attackerIds.length) {
+						attackerIds = Arrays.copyOf(attackerIds, numAttackers * 2);
+						strengths = new int[numAttackers * 2 + 1];
+					}
+					attackerIds[numAttackers++] = moveCivIds[move];
+				}
+				winners[i] = resolveAttack(contested[i], attackerIds, numAttackers, 
+						strengths, shardRandom);
+			}
 		}
 	}
 
-	public Rectangle getBounds() {
-		return new Rectangle(0, 0, WorldPanel.getGridScale() * grid[0].length, 
-				WorldPanel.getGridScale() * grid.length);
+	/**
+	 * Eliminates the civilizations whose territory became empty and
+	 * stayed empty until the end of the turn. Only the civilizations
+	 * that reported an empty territory are checked
+	 */
+	private void updateCivilizations() {
+		civilizations.sortEmptied();
+		for (int i = 0; i < civilizations.getNumEmptied(); i++) {
+			int id = civilizations.getEmptied(i);
+			Civilization civ = civilizations.get(id);
+			if (civilizations.isLive(id) && civ.getTerritorySize() == 0) {
+				civilizations.eliminate(id);
+				if ((numEliminations + 1) * 2 > eliminations.length) {
+					eliminations = Arrays.copyOf(eliminations, eliminations.length * 2);
+				}
+				eliminations[numEliminations * 2] = id;
+				eliminations[numEliminations * 2 + 1] = civ.getCapital().getIndex();
+				numEliminations++;
+				System.out.println("\nTurn: " + (int) time + " - Civilization: " + 
+				civ.getName() + " has been defeated!");
+			}
+		}
+		civilizations.clearEmptied();
 	}
 }
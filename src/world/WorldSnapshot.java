@@ -0,0 +1,123 @@
+package world;
+
+import java.awt.Color;
+
+/**
+ * Immutable state of the World published by the simulation at the end
+ * of a turn, read by the renderer without locking. Snapshots form a
+ * chain: each one holds the tiles whose owner changed since the
+ * previous one, and a reader keeps its own copy of the owner of every
+ * tile up to date by following getNext(). Keyframes additionally hold
+ * the owner of every tile, so a reader can start from any keyframe.
+ * Snapshots also hold the capitals moved and the civilizations
+ * eliminated since the previous one, recorded as they happen, so a
+ * reader does not have to compare the capitals of every civilization.
+ * @author Matthew Zane
+ *
+ */
+public class WorldSnapshot {
+	private long turn;
+	private double time;
+
+	//live civilizations
+	private int[] civIds;
+	private int[] capitals;
+
+	//colors of every civilization ever created, indexed by id
+	private Color[] colors;
+
+	//tiles whose owner changed since the previous snapshot, with
+	//their owner before and after the change
+	private int[] changedTiles;
+	private int[] changedOldOwners;
+	private int[] changedOwners;
+
+	//capitals moved since the previous snapshot, as the id, old and
+	//new capital of each. A civilization that appears moves from -1
+	private int[] capitalMoves;
+
+	//civilizations eliminated since the previous snapshot, as the id
+	//and last capital of each
+	private int[] eliminations;
+
+	//owner of every tile, only set on keyframes
+	private int[] owners;
+
+	//written once, by the simulation, when the next snapshot is published
+	private volatile WorldSnapshot next;
+
+	public long getTurn() { return turn; }
+	public double getTime() { return time; }
+
+	public int getNumCivilizations() { return civIds.length; }
+	public int getCivilizationId(int i) { return civIds[i]; }
+	public int getCapital(int i) { return capitals[i]; }
+
+	/**
+	 * Number of civilizations ever created, including Nature. Ids
+	 * range from 0 to this number - 1
+	 * @return
+	 */
+	public int getNumCivilizationIds() { return colors.length; }
+
+	/**
+	 * @param id - civilization id
+	 * @return color of the civilization, null for Nature
+	 */
+	public Color getColor(int id) { return colors[id]; }
+
+	public int getNumChanges() { return changedTiles.length; }
+	public int getChangedTile(int i) { return changedTiles[i]; }
+	public int getChangedOldOwner(int i) { return changedOldOwners[i]; }
+	public int getChangedOwner(int i) { return changedOwners[i]; }
+
+	public int getNumCapitalMoves() { return capitalMoves.length / 3; }
+	public int getMovedCivilizationId(int i) { return capitalMoves[i * 3]; }
+	public int getOldCapital(int i) { return capitalMoves[i * 3 + 1]; }
+	public int getNewCapital(int i) { return capitalMoves[i * 3 + 2]; }
+
+	public int getNumEliminations() { return eliminations.length / 2; }
+	public int getEliminatedId(int i) { return eliminations[i * 2]; }
+	public int getEliminatedCapital(int i) { return eliminations[i * 2 + 1]; }
+
+	public boolean isKeyframe() { return owners != null; }
+
+	/**
+	 * Copies the owner of every tile into out. Only valid on keyframes
+	 * @param out
+	 */
+	public void copyOwners(int[] out) {
+		System.arraycopy(owners, 0, out, 0, owners.length);
+	}
+
+	public WorldSnapshot getNext() { return next; }
+
+	/**
+	 * Arrays are not copied, so they must not be modified afterwards
+	 */
+	public WorldSnapshot(long turnIn, double timeIn, int[] civIdsIn, int[] capitalsIn,
+			Color[] colorsIn, int[] changedTilesIn, int[] changedOldOwnersIn, 
+			int[] changedOwnersIn, int[] capitalMovesIn, int[] eliminationsIn, 
+			int[] ownersIn) {
+		turn = turnIn;
+		time = timeIn;
+		civIds = civIdsIn;
+		capitals = capitalsIn;
+		colors = colorsIn;
+		changedTiles = changedTilesIn;
+		changedOldOwners = changedOldOwnersIn;
+		changedOwners = changedOwnersIn;
+		capitalMoves = capitalMovesIn;
+		eliminations = eliminationsIn;
+		owners = ownersIn;
+	}
+
+	/**
+	 * Links the snapshot that follows this one. Only called by the
+	 * source that published both
+	 * @param nextIn
+	 */
+	public void setNext(WorldSnapshot nextIn) {
+		next = nextIn;
+	}
+}
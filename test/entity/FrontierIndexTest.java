@@ -0,0 +1,199 @@
+package entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import helper.ReseedableRandom;
+
+/**
+ * Checks that FrontierIndex moves tiles between buckets as their value
+ * and partition change, and that it picks the most valuable tiles by
+ * their position in tile order.
+ * @author Matthew Zane
+ *
+ */
+public class FrontierIndexTest {
+
+	@Test
+	public void reindexOnPut() {
+		FrontierIndex frontier = new FrontierIndex();
+		frontier.put(10, FrontierIndex.UNOWNED, 1);
+		frontier.put(11, FrontierIndex.UNOWNED, 2);
+		frontier.put(12, FrontierIndex.OWNED, 2);
+		assertEquals(2, frontier.getGreatestValue(FrontierIndex.UNOWNED));
+		assertEquals(1, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+
+		//up to the top bucket
+		frontier.put(10, FrontierIndex.UNOWNED, 2);
+		assertEquals(2, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+
+		//down below the others, then out of the partition
+		frontier.put(11, FrontierIndex.UNOWNED, -5);
+		assertEquals(1, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+		assertEquals(10, frontier.selectMostValuableTile(FrontierIndex.UNOWNED, 0));
+		frontier.put(11, FrontierIndex.OWNED, 3);
+		assertEquals(1, frontier.size(FrontierIndex.UNOWNED));
+		assertEquals(2, frontier.size(FrontierIndex.OWNED));
+		assertEquals(3, frontier.getGreatestValue(FrontierIndex.OWNED));
+		assertEquals(FrontierIndex.OWNED, frontier.getPartition(11));
+		assertEquals(3, frontier.getValue(11));
+		assertEquals(3, frontier.size());
+	}
+
+	@Test
+	public void contactsKeptOnPut() {
+		FrontierIndex frontier = new FrontierIndex();
+		frontier.put(4, FrontierIndex.UNOWNED, 0);
+		frontier.setContacts(4, 2);
+		frontier.put(4, FrontierIndex.OWNED, 1);
+		assertEquals(2, frontier.getContacts(4));
+
+		frontier.remove(4);
+		assertFalse(frontier.contains(4));
+		assertEquals(0, frontier.getContacts(4));
+		assertEquals(-1, frontier.getPartition(4));
+
+		//the entry is reused without the old contacts
+		frontier.put(5, FrontierIndex.UNOWNED, 0);
+		assertEquals(0, frontier.getContacts(5));
+	}
+
+	@Test
+	public void removeFromTopBucket() {
+		FrontierIndex frontier = new FrontierIndex();
+		for (int tile = 0; tile < 20; tile++) {
+			frontier.put(tile, FrontierIndex.UNOWNED, tile % 2 == 0 ? 3 : 1);
+		}
+		for (int tile = 0; tile < 20; tile += 2) {
+			frontier.remove(tile);
+			assertTrue(frontier.countMostValuableTiles(FrontierIndex.UNOWNED) > 0);
+		}
+		assertEquals(1, frontier.getGreatestValue(FrontierIndex.UNOWNED));
+		assertEquals(10, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+		for (int tile = 1; tile < 20; tile += 2) {
+			frontier.remove(tile);
+		}
+		assertEquals(0, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+		assertEquals(-1, frontier.findMostValuableTile(FrontierIndex.UNOWNED, new ReseedableRandom(1)));
+	}
+
+	@Test
+	public void valueAboveMaximum() {
+		FrontierIndex frontier = new FrontierIndex();
+		frontier.put(1, FrontierIndex.OWNED, FrontierIndex.MAX_VALUE);
+		try {
+			frontier.put(2, FrontierIndex.OWNED, FrontierIndex.MAX_VALUE + 1);
+			fail("Put a value above " + FrontierIndex.MAX_VALUE);
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		assertFalse(frontier.contains(2));
+		assertEquals(FrontierIndex.MAX_VALUE, frontier.getGreatestValue(FrontierIndex.OWNED));
+	}
+
+	/**
+	 * The same tiles put in different orders, and moved around in
+	 * between, pick the same tile for every rank
+	 */
+	@Test
+	public void selectInTileOrder() {
+		List<Integer> tiles = new ArrayList<Integer>();
+		for (int tile = 0; tile < 300; tile++) {
+			tiles.add(tile * 7);
+		}
+		for (int seed = 0; seed < 5; seed++) {
+			Collections.shuffle(tiles, new Random(seed));
+			FrontierIndex frontier = new FrontierIndex();
+			for (int tile : tiles) {
+				frontier.put(tile, FrontierIndex.OWNED, 0);
+				frontier.put(tile, FrontierIndex.UNOWNED, -1);
+			}
+			for (int tile : tiles) {
+				if (tile % 3 == 0) {
+					frontier.put(tile, FrontierIndex.UNOWNED, 2);
+				}
+			}
+			assertEquals(100, frontier.countMostValuableTiles(FrontierIndex.UNOWNED));
+			for (int rank = 0; rank < 100; rank++) {
+				assertEquals(rank * 21, frontier.selectMostValuableTile(FrontierIndex.UNOWNED, rank));
+			}
+		}
+	}
+
+	/**
+	 * Random puts and removes compared with a map of the expected value
+	 * of every tile, checking the top bucket and the partition sizes
+	 */
+	@Test
+	public void randomReindexing() {
+		SplittableRandom random = new SplittableRandom(5);
+		FrontierIndex frontier = new FrontierIndex();
+		List<TreeMap<Integer, Integer>> expected = new ArrayList<TreeMap<Integer, Integer>>();
+		expected.add(new TreeMap<Integer, Integer>());
+		expected.add(new TreeMap<Integer, Integer>());
+		for (int i = 0; i < 20000; i++) {
+			int tile = random.nextInt(500);
+			expected.get(0).remove(tile);
+			expected.get(1).remove(tile);
+			if (random.nextInt(4) == 0) {
+				frontier.remove(tile);
+			}
+			else {
+				int partition = random.nextInt(2);
+				int value = FrontierIndex.MAX_VALUE - random.nextInt(12);
+				frontier.put(tile, partition, value);
+				expected.get(partition).put(tile, value);
+			}
+
+			for (int partition = 0; partition < 2; partition++) {
+				assertEquals(expected.get(partition).size(), frontier.size(partition));
+				assertMostValuable(expected.get(partition), frontier, partition);
+			}
+		}
+
+		int[] tiles = new int[frontier.size()];
+		assertEquals(tiles.length, frontier.getTiles(tiles));
+		Arrays.sort(tiles);
+		List<Integer> expectedTiles = new ArrayList<Integer>(expected.get(0).keySet());
+		expectedTiles.addAll(expected.get(1).keySet());
+		Collections.sort(expectedTiles);
+		for (int j = 0; j < tiles.length; j++) {
+			assertEquals((int) expectedTiles.get(j), tiles[j]);
+		}
+	}
+
+	/**
+	 * Checks the most valuable tiles of a partition, in tile order
+	 * @param expected - value of every tile in the partition, by tile
+	 * @param frontier
+	 * @param partition
+	 */
+	private static void assertMostValuable(TreeMap<Integer, Integer> expected,
+			FrontierIndex frontier, int partition) {
+		if (expected.isEmpty()) {
+			assertEquals(0, frontier.countMostValuableTiles(partition));
+			return;
+		}
+		int greatest = Collections.max(expected.values());
+		assertEquals(greatest, frontier.getGreatestValue(partition));
+		int rank = 0;
+		for (int tile : expected.keySet()) {
+			if (expected.get(tile) == greatest) {
+				assertEquals(tile, frontier.selectMostValuableTile(partition, rank++));
+			}
+		}
+		assertEquals(rank, frontier.countMostValuableTiles(partition));
+	}
+}
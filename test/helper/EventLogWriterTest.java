@@ -0,0 +1,130 @@
+package helper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import world.ReplayPlayer;
+import world.World;
+import world.WorldSnapshot;
+
+/**
+ * Checks the capital moves and eliminations recorded in the snapshots
+ * of a World against the capitals the snapshots publish, and that an
+ * event log written from them replays the same capitals, stepping
+ * forward and backward.
+ * @author Matthew Zane
+ *
+ */
+public class EventLogWriterTest {
+	//longest wait for the replay to reach a turn, in milliseconds
+	private static final long SEEK_TIMEOUT = 10000;
+
+	@TempDir
+	File directory;
+
+	/**
+	 * Small and crowded, so capitals are captured and civilizations
+	 * eliminated
+	 */
+	private static World createWorld() {
+		return new World(new Dimension(60, 50), 40, 13);
+	}
+
+	@Test
+	public void eventsFollowCapitals() {
+		World world = createWorld();
+		WorldSnapshot snapshot = world.getLatestSnapshot();
+		int[] capitalsById = getCapitalsById(snapshot, world.getNumCivilizationIds());
+		int numMoves = 0;
+		int numEliminations = 0;
+		for (int i = 0; i < 1500; i++) {
+			world.runTurns(1);
+			snapshot = snapshot.getNext();
+			for (int move = 0; move < snapshot.getNumCapitalMoves(); move++) {
+				int id = snapshot.getMovedCivilizationId(move);
+				assertEquals(capitalsById[id], snapshot.getOldCapital(move));
+				capitalsById[id] = snapshot.getNewCapital(move);
+				numMoves++;
+			}
+			for (int eliminated = 0; eliminated < snapshot.getNumEliminations(); eliminated++) {
+				int id = snapshot.getEliminatedId(eliminated);
+				assertEquals(capitalsById[id], snapshot.getEliminatedCapital(eliminated));
+				capitalsById[id] = -1;
+				numEliminations++;
+			}
+			assertArrayEquals(getCapitalsById(snapshot, capitalsById.length), capitalsById,
+					"Capitals at turn " + snapshot.getTurn());
+		}
+		assertTrue(numMoves > 0);
+		assertTrue(numEliminations > 0);
+	}
+
+	/**
+	 * Runs past the first keyframe after the start of the log, then
+	 * seeks the replay to turns on both sides of it and back
+	 */
+	@Test
+	public void replayedCapitals() throws IOException, InterruptedException {
+		World world = createWorld();
+		File file = new File(directory, "run.log");
+		EventLogWriter log = new EventLogWriter(world, file);
+		log.start();
+		List<int[]> capitalsByTurn = new ArrayList<int[]>();
+		WorldSnapshot snapshot = world.getLatestSnapshot();
+		capitalsByTurn.add(getCapitalsById(snapshot, world.getNumCivilizationIds()));
+		for (int i = 0; i < 1200; i++) {
+			world.runTurns(1);
+			snapshot = snapshot.getNext();
+			capitalsByTurn.add(getCapitalsById(snapshot, world.getNumCivilizationIds()));
+		}
+		log.close();
+
+		ReplayPlayer replay = new ReplayPlayer(file);
+		replay.setPaused(true);
+		replay.start();
+		long[] turns = {700, 1100, 1050, 1200, 990, 20, 1000, 0};
+		for (long turn : turns) {
+			replay.seek(turn);
+			WorldSnapshot replayed = awaitTurn(replay, turn);
+			assertArrayEquals(capitalsByTurn.get((int) turn),
+					getCapitalsById(replayed, capitalsByTurn.get(0).length), "Capitals at turn " + turn);
+		}
+	}
+
+	private static WorldSnapshot awaitTurn(ReplayPlayer replay, long turn) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + SEEK_TIMEOUT;
+		WorldSnapshot snapshot = replay.getLatestSnapshot();
+		while (snapshot.getTurn() != turn || !snapshot.isKeyframe()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Replay did not reach turn " + turn);
+			Thread.sleep(5);
+			snapshot = replay.getLatestSnapshot();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param snapshot
+	 * @param numIds
+	 * @return capital of every live civilization of the snapshot by id,
+	 * -1 for the others
+	 */
+	private static int[] getCapitalsById(WorldSnapshot snapshot, int numIds) {
+		int[] capitalsById = new int[numIds];
+		Arrays.fill(capitalsById, -1);
+		for (int i = 0; i < snapshot.getNumCivilizations(); i++) {
+			capitalsById[snapshot.getCivilizationId(i)] = snapshot.getCapital(i);
+		}
+		return capitalsById;
+	}
+}
@@ -0,0 +1,132 @@
+package helper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import entity.Civilization;
+import world.Tile;
+import world.TileGrid;
+import world.World;
+
+/**
+ * Saves a World in the middle of a run and checks that the loaded
+ * World is the same and stays the same as it keeps running, and that
+ * a save cut short anywhere is refused with an IOException.
+ * @author Matthew Zane
+ *
+ */
+public class FileParserTest {
+	@TempDir
+	File directory;
+
+	@Test
+	public void roundTripMidRun() throws IOException {
+		World world = new World(new Dimension(120, 100), 12, 42);
+		world.runTurns(400);
+		File file = new File(directory, "world.sav");
+		FileParser.saveWorld(world, file);
+		World loaded = FileParser.loadWorld(file);
+
+		assertEquals(world.getSeed(), loaded.getSeed());
+		assertEquals(world.getTurn(), loaded.getTurn());
+		assertEquals(world.getTime(), loaded.getTime());
+		assertEquals(world.getTotalOwnerChanges(), loaded.getTotalOwnerChanges());
+		assertSameState(world, loaded);
+
+		//later turns only depend on what was saved
+		for (int i = 0; i < 6; i++) {
+			world.runTurns(100);
+			loaded.runTurns(100);
+			assertSameState(world, loaded);
+		}
+	}
+
+	/**
+	 * Every shorter prefix of a save is refused
+	 */
+	@Test
+	public void truncatedFiles() throws IOException {
+		World world = new World(new Dimension(40, 30), 4, 7);
+		world.runTurns(50);
+		File file = new File(directory, "world.sav");
+		FileParser.saveWorld(world, file);
+		byte[] save = Files.readAllBytes(file.toPath());
+
+		File truncated = new File(directory, "truncated.sav");
+		for (int length = 0; length < save.length; length++) {
+			Files.write(truncated.toPath(), Arrays.copyOf(save, length));
+			try {
+				FileParser.loadWorld(truncated);
+				fail("Loaded a save cut at " + length + " of " + save.length + " bytes");
+			} catch (IOException e) {
+				//expected
+			}
+		}
+	}
+
+	/**
+	 * A save whose tile types hold an ordinal of no TileType, or an
+	 * uncovered tile, is refused
+	 */
+	@Test
+	public void corruptTileTypes() throws IOException {
+		World world = new World(new Dimension(40, 30), 4, 7);
+		world.runTurns(50);
+		File file = new File(directory, "world.sav");
+		FileParser.saveWorld(world, file);
+		byte[] save = Files.readAllBytes(file.toPath());
+
+		//header, then every civilization before the tile types
+		int typesStart = 13 * 4;
+		for (int id = 1; id < world.getNumCivilizationIds(); id++) {
+			Civilization civ = world.getCivilization(id);
+			typesStart += 17 + civ.getName().getBytes("UTF-8").length + 4 * civ.getFrontier().size();
+		}
+		assertEquals(world.getTileGrid().getTypeOrdinal(0), save[typesStart]);
+
+		File corrupt = new File(directory, "corrupt.sav");
+		byte[] ordinals = {(byte) Tile.TileType.values().length, TileGrid.UNCOVERED, Byte.MAX_VALUE};
+		for (byte ordinal : ordinals) {
+			byte[] changed = save.clone();
+			changed[typesStart + world.getTileGrid().getSize() / 2] = ordinal;
+			Files.write(corrupt.toPath(), changed);
+			try {
+				FileParser.loadWorld(corrupt);
+				fail("Loaded a save with tile type " + ordinal);
+			} catch (IOException e) {
+				//expected
+			}
+		}
+	}
+
+	private static void assertSameState(World expected, World actual) {
+		assertEquals(expected.getTurn(), actual.getTurn());
+		assertArrayEquals(expected.getTileGrid().getOwnerIds(), actual.getTileGrid().getOwnerIds(),
+				"Owners at turn " + expected.getTurn());
+		assertEquals(expected.getNumCivilizationIds(), actual.getNumCivilizationIds());
+		for (int id = 1; id < expected.getNumCivilizationIds(); id++) {
+			Civilization expectedCiv = expected.getCivilization(id);
+			Civilization actualCiv = actual.getCivilization(id);
+			assertEquals(expected.getCivilizationRegistry().isLive(id),
+					actual.getCivilizationRegistry().isLive(id));
+			assertEquals(expectedCiv.getName(), actualCiv.getName());
+			assertEquals(expectedCiv.getTerritorySize(), actualCiv.getTerritorySize());
+			assertEquals(getCapital(expectedCiv), getCapital(actualCiv),
+					"Capital of " + id + " at turn " + expected.getTurn());
+		}
+	}
+
+	private static int getCapital(Civilization civ) {
+		return civ.getCapital() == null ? -1 : civ.getCapital().getIndex();
+	}
+}
@@ -0,0 +1,165 @@
+package helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks IntIntHashMap, mostly removal, which shifts back the entries
+ * probed after the removed one, including chains that wrap around the
+ * end of the table.
+ * @author Matthew Zane
+ *
+ */
+public class IntIntHashMapTest {
+	//capacity of a new map, which holds up to 12 keys without growing
+	private static final int CAPACITY = 16;
+
+	@Test
+	public void putGetRemove() {
+		IntIntHashMap map = new IntIntHashMap();
+		assertTrue(map.isEmpty());
+		assertEquals(IntIntHashMap.NO_VALUE, map.put(5, 50));
+		assertEquals(50, map.put(5, 51));
+		assertEquals(1, map.size());
+		assertEquals(51, map.get(5));
+		assertEquals(IntIntHashMap.NO_VALUE, map.get(6));
+		assertEquals(3, map.addTo(6, 3));
+		assertEquals(1, map.addTo(6, -2));
+
+		assertEquals(51, map.remove(5));
+		assertEquals(IntIntHashMap.NO_VALUE, map.remove(5));
+		assertFalse(map.containsKey(5));
+		assertEquals(1, map.size());
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(6));
+	}
+
+	/**
+	 * Keys that all start probing at the last slot, so their chain
+	 * wraps around to the start of the table, followed by keys that
+	 * start in the slots the chain took. Every key is removed in turn,
+	 * from the start, middle and end of the chain
+	 */
+	@Test
+	public void removeFromWrappedChain() {
+		List<Integer> keys = new ArrayList<Integer>();
+		keys.addAll(findKeys(CAPACITY - 1, 4));
+		keys.addAll(findKeys(0, 2));
+		keys.addAll(findKeys(1, 2));
+		keys.addAll(findKeys(CAPACITY - 2, 2));
+
+		for (int removed = 0; removed < keys.size(); removed++) {
+			IntIntHashMap map = new IntIntHashMap();
+			for (int key : keys) {
+				map.put(key, key * 2);
+			}
+			assertEquals(keys.get(removed) * 2, map.remove(keys.get(removed)));
+			assertEquals(keys.size() - 1, map.size());
+			for (int key : keys) {
+				if (key == keys.get(removed)) {
+					assertFalse(map.containsKey(key));
+				}
+				else {
+					assertEquals(key * 2, map.get(key));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a chain one key at a time and adds the keys back
+	 */
+	@Test
+	public void emptyAndRefillChain() {
+		List<Integer> keys = new ArrayList<Integer>();
+		keys.addAll(findKeys(CAPACITY - 1, 3));
+		keys.addAll(findKeys(0, 3));
+		IntIntHashMap map = new IntIntHashMap();
+		for (int key : keys) {
+			map.put(key, key);
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			map.remove(keys.get(i));
+			for (int j = 0; j < keys.size(); j++) {
+				assertEquals(j > i, map.containsKey(keys.get(j)));
+			}
+		}
+		assertTrue(map.isEmpty());
+		for (int key : keys) {
+			map.put(key, -key);
+		}
+		for (int key : keys) {
+			assertEquals(-key, map.get(key));
+		}
+	}
+
+	/**
+	 * Random puts, adds and removes over few keys, compared with a
+	 * HashMap, while the map grows
+	 */
+	@Test
+	public void randomOperations() {
+		SplittableRandom random = new SplittableRandom(4);
+		IntIntHashMap map = new IntIntHashMap();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 200000; i++) {
+			int key = random.nextInt(i < 100000 ? 40 : 4000);
+			int value = random.nextInt(1000);
+			switch (random.nextInt(3)) {
+			case 0:
+				Integer previous = expected.put(key, value);
+				assertEquals(previous == null ? IntIntHashMap.NO_VALUE : previous, map.put(key, value));
+				break;
+			case 1:
+				Integer old = expected.get(key);
+				int sum = (old == null ? 0 : old) + value;
+				expected.put(key, sum);
+				assertEquals(sum, map.addTo(key, value));
+				break;
+			default:
+				Integer removed = expected.remove(key);
+				assertEquals(removed == null ? IntIntHashMap.NO_VALUE : removed, map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Keys whose probing starts at a slot of a new map
+	 * @param slot
+	 * @param count
+	 * @return
+	 */
+	private static List<Integer> findKeys(int slot, int count) {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int key = 0; keys.size() < count; key++) {
+			if (slot(key) == slot) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Same hash as IntIntHashMap, for a new map
+	 * @param key
+	 * @return
+	 */
+	private static int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (CAPACITY - 1);
+	}
+}
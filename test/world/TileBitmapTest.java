@@ -0,0 +1,160 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks TileBitmap against a TreeSet, in array containers, in bitmap
+ * containers and across the switch between them, which happens above
+ * 4096 tiles in a container and back below 2048.
+ * @author Matthew Zane
+ *
+ */
+public class TileBitmapTest {
+	//tiles in a container
+	private static final int CONTAINER_SIZE = 1 << 16;
+
+	@Test
+	public void addRemoveContains() {
+		TileBitmap bitmap = new TileBitmap();
+		assertTrue(bitmap.isEmpty());
+		assertTrue(bitmap.add(7));
+		assertTrue(bitmap.add(3));
+		assertFalse(bitmap.add(7));
+		assertEquals(2, bitmap.size());
+		assertTrue(bitmap.contains(3));
+		assertFalse(bitmap.contains(4));
+		assertFalse(bitmap.contains(CONTAINER_SIZE * 5));
+
+		assertTrue(bitmap.remove(3));
+		assertFalse(bitmap.remove(3));
+		assertFalse(bitmap.remove(CONTAINER_SIZE * 5));
+		assertEquals(1, bitmap.size());
+		assertFalse(bitmap.contains(3));
+		assertTrue(bitmap.contains(7));
+	}
+
+	/**
+	 * Fills a container past the array limit and empties it below the
+	 * bitmap limit, checking the set at every size around both
+	 */
+	@Test
+	public void containerSwitch() {
+		TileBitmap bitmap = new TileBitmap();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		List<Integer> tiles = new ArrayList<Integer>();
+		//a single container, starting past the first one
+		for (int i = 0; i < 6000; i++) {
+			tiles.add(CONTAINER_SIZE + i * 10);
+		}
+		Collections.shuffle(tiles, new Random(1));
+
+		for (int tile : tiles) {
+			assertTrue(bitmap.add(tile));
+			expected.add(tile);
+			if (isAroundLimit(expected.size())) {
+				assertSameSet(expected, bitmap);
+			}
+		}
+		for (int tile : tiles) {
+			assertTrue(bitmap.remove(tile));
+			expected.remove(tile);
+			if (isAroundLimit(expected.size())) {
+				assertSameSet(expected, bitmap);
+			}
+		}
+		assertTrue(bitmap.isEmpty());
+		assertEquals(-1, bitmap.next(0));
+	}
+
+	private static boolean isAroundLimit(int size) {
+		return Math.abs(size - 4096) <= 2 || Math.abs(size - 2048) <= 2 ||
+				size == 1 || size == 0;
+	}
+
+	/**
+	 * Tiles spread over more containers than are counted together by
+	 * select, some dense and some sparse
+	 */
+	@Test
+	public void manyContainers() {
+		SplittableRandom random = new SplittableRandom(2);
+		TileBitmap bitmap = new TileBitmap();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int container = 0; container < 70; container++) {
+			int count = container % 3 == 0 ? 5000 : random.nextInt(50);
+			for (int i = 0; i < count; i++) {
+				int tile = container * CONTAINER_SIZE + random.nextInt(CONTAINER_SIZE);
+				assertEquals(expected.add(tile), bitmap.add(tile));
+			}
+		}
+		assertSameSet(expected, bitmap);
+
+		List<Integer> tiles = new ArrayList<Integer>(expected);
+		Collections.shuffle(tiles, new Random(3));
+		for (int tile : tiles.subList(0, tiles.size() * 3 / 4)) {
+			assertTrue(bitmap.remove(tile));
+			expected.remove(tile);
+		}
+		assertSameSet(expected, bitmap);
+	}
+
+	@Test
+	public void selectOutOfRange() {
+		TileBitmap bitmap = new TileBitmap();
+		bitmap.add(1);
+		for (int rank : new int[] {-1, 1}) {
+			try {
+				bitmap.select(rank);
+				fail("Selected rank " + rank + " of 1");
+			} catch (IndexOutOfBoundsException e) {
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void clear() {
+		TileBitmap bitmap = new TileBitmap();
+		for (int i = 0; i < 5000; i++) {
+			bitmap.add(i);
+		}
+		bitmap.clear();
+		assertTrue(bitmap.isEmpty());
+		assertFalse(bitmap.contains(1));
+		assertTrue(bitmap.add(1));
+		assertEquals(1, bitmap.select(0));
+	}
+
+	/**
+	 * Checks size, contains, iteration with next, and that select and
+	 * the rank of every tile, its position in ascending order, agree
+	 * @param expected
+	 * @param bitmap
+	 */
+	private static void assertSameSet(TreeSet<Integer> expected, TileBitmap bitmap) {
+		assertEquals(expected.size(), bitmap.size());
+		int rank = 0;
+		int tile = bitmap.next(0);
+		for (int expectedTile : expected) {
+			assertEquals(expectedTile, tile);
+			assertEquals(expectedTile, bitmap.select(rank));
+			assertTrue(bitmap.contains(expectedTile));
+			assertEquals(expected.contains(expectedTile + 1), bitmap.contains(expectedTile + 1));
+			tile = bitmap.next(tile + 1);
+			rank++;
+		}
+		assertEquals(-1, tile);
+	}
+}
@@ -0,0 +1,42 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a World is decided by its seed alone: the same seed and
+ * size give the same World whether its moves are picked and its
+ * contested tiles resolved on one thread or on several.
+ * @author Matthew Zane
+ *
+ */
+public class WorldTest {
+
+	/**
+	 * Tall enough for several shards of contested tiles, with enough
+	 * civilizations for several tasks picking moves
+	 */
+	@Test
+	public void sameWorldForAnyThreadCount() {
+		World single = new World(new Dimension(150, 4 * World.SHARD_ROWS), 60, 9);
+		World parallel = new World(new Dimension(150, 4 * World.SHARD_ROWS), 60, 9);
+		single.setThreadCount(1);
+		parallel.setThreadCount(4);
+		for (int i = 0; i < single.getTileGrid().getSize(); i++) {
+			assertEquals(single.getTileGrid().getTypeOrdinal(i), parallel.getTileGrid().getTypeOrdinal(i));
+		}
+
+		for (int i = 0; i < 10; i++) {
+			single.runTurns(100);
+			parallel.runTurns(100);
+			assertArrayEquals(single.getTileGrid().getOwnerIds(), parallel.getTileGrid().getOwnerIds(),
+					"Owners at turn " + single.getTurn());
+			assertEquals(single.getCivilizations().size(), parallel.getCivilizations().size());
+			assertEquals(single.getTotalOwnerChanges(), parallel.getTotalOwnerChanges());
+		}
+	}
+}